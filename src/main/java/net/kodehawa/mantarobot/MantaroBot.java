@@ -27,6 +27,7 @@ import net.dv8tion.jda.core.entities.Guild;
 import net.kodehawa.mantarobot.commands.moderation.MuteTask;
 import net.kodehawa.mantarobot.commands.moderation.TempBanManager;
 import net.kodehawa.mantarobot.commands.music.MantaroAudioManager;
+import net.kodehawa.mantarobot.commands.utils.Reminder;
 import net.kodehawa.mantarobot.commands.utils.birthday.BirthdayCacher;
 import net.kodehawa.mantarobot.core.MantaroCore;
 import net.kodehawa.mantarobot.core.processor.DefaultCommandProcessor;
@@ -35,10 +36,12 @@ import net.kodehawa.mantarobot.core.shard.ShardedMantaro;
 import net.kodehawa.mantarobot.core.shard.jda.ShardedJDA;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.leaderboard.Leaderboards;
 import net.kodehawa.mantarobot.log.LogFilter;
 import net.kodehawa.mantarobot.log.LogUtils;
 import net.kodehawa.mantarobot.utils.CompactPrintStream;
 import net.kodehawa.mantarobot.utils.SentryHelper;
+import net.kodehawa.mantarobot.utils.TimerWheel;
 import net.kodehawa.mantarobot.utils.Utils;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -69,6 +72,9 @@ public class MantaroBot extends ShardedJDA {
     private static MantaroBot instance;
     @Getter
     private static TempBanManager tempBanManager;
+    //Shared by everything that has to happen at a given time: mute expirations, temporary bans and reminders.
+    @Getter
+    private static final TimerWheel timers = new TimerWheel("Mantaro-Timers", 100, 512);
     @Getter
     private final MantaroAudioManager audioManager;
     @Getter
@@ -135,13 +141,18 @@ public class MantaroBot extends ShardedJDA {
 
         long start = System.currentTimeMillis();
 
+        //Make sure the secondary indexes the database lookups rely on exist before anything queries them.
+        MantaroData.db().createIndexes();
+
         core.setCommandsPackage("net.kodehawa.mantarobot.commands")
                 .setOptionsPackage("net.kodehawa.mantarobot.options")
                 .startMainComponents(false);
 
         shardedMantaro = core.getShardedInstance();
         audioManager = new MantaroAudioManager();
-        tempBanManager = new TempBanManager(MantaroData.db().getMantaroData().getTempBans());
+        tempBanManager = new TempBanManager(MantaroData.db().getTempBans());
+        MuteTask.restore();
+        Reminder.restore();
         long end = System.currentTimeMillis();
 
         System.out.println("Finished loading basic components. Current status: " + MantaroCore.getLoadState());
@@ -152,8 +163,7 @@ public class MantaroBot extends ShardedJDA {
                         "Shards are still waking up!", DefaultCommandProcessor.REGISTRY.commands().size(), (end - start) / 1000));
 
         birthdayCacher = new BirthdayCacher();
-        final MuteTask muteTask = new MuteTask();
-        Async.task("Mute Handler", muteTask::handle, 1, TimeUnit.MINUTES);
+        Async.thread("Leaderboard Loader", Leaderboards::start);
     }
 
     public static void main(String[] args) {
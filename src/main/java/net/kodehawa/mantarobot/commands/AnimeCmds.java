@@ -36,6 +36,8 @@ import net.kodehawa.mantarobot.utils.DiscordUtils;
 import net.kodehawa.mantarobot.utils.SentryHelper;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
+import net.kodehawa.mantarobot.utils.http.ResponseCache;
 import okhttp3.*;
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONObject;
@@ -44,12 +46,16 @@ import java.awt.*;
 import java.net.URLEncoder;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Module
 public class AnimeCmds {
-    private final static OkHttpClient client = new OkHttpClient();
+    private static final String ANIME_ERROR = "%s**I swear I didn't drop your favorite anime!**\n We received a ``%s`` while trying to process the command.";
+    private static final String CHARACTER_ERROR = "%s**I swear I didn't d-drop your waifu, please forgive me!**\nI got ``%s`` while trying to process this command.";
+    private static final ResponseCache animeCache = new ResponseCache("anime", 12, 36, TimeUnit.HOURS, 1000);
+    private static final ResponseCache characterCache = new ResponseCache("character", 12, 36, TimeUnit.HOURS, 1000);
     public static String authToken;
 
     /**
@@ -69,7 +75,7 @@ public class AnimeCmds {
                     .post(body)
                     .build();
 
-            Response response = client.newCall(request).execute();
+            Response response = AsyncHttp.getClient().newCall(request).execute();
             JSONObject object = new JSONObject(response.body().string());
             authToken = object.getString("access_token");
             response.close();
@@ -86,36 +92,39 @@ public class AnimeCmds {
         cr.register("anime", new SimpleCommand(Category.FUN) {
             @Override
             public void call(GuildMessageReceivedEvent event, String content, String[] args) {
-                try {
-                    if(content.isEmpty()) {
-                        onHelp(event);
-                        return;
-                    }
+                if(content.isEmpty()) {
+                    onHelp(event);
+                    return;
+                }
 
+                try {
                     String connection = String.format("https://anilist.co/api/anime/search/%1s?access_token=%2s", URLEncoder.encode(content, "UTF-8"), authToken);
-                    String json = Utils.wgetResty(connection, event);
-                    AnimeData[] type = AnimeData.fromJson(json);
-
-                    if(type.length == 1) {
-                        animeData(event, type[0]);
-                        return;
-                    }
-
-                    DiscordUtils.selectList(event, type, anime -> String.format("**[%s (%s)](%s)**",
-                            anime.getTitleEnglish(), anime.getTitleJapanese(), "http://anilist.co/anime/" + anime.getId()),
-                            s -> baseEmbed(event, "Type the number of the anime you want to select.")
-                                    .setDescription(s)
-                                    .setThumbnail("https://anilist.co/img/logo_al.png")
-                                    .setFooter("Information provided by Anilist. Type &cancel to cancel.", event.getAuthor().getAvatarUrl())
-                                    .build(),
-                            anime -> animeData(event, anime));
-                } catch (JsonSyntaxException jsonException) {
-                    event.getChannel().sendMessage(EmoteReference.ERROR + "No results found...").queue();
-                } catch (NullPointerException nullException) {
-                    event.getChannel().sendMessage(EmoteReference.ERROR + "We got a wrong API result for this specific search. Maybe try another one?").queue();
-                } catch (Exception exception) {
-                    event.getChannel().sendMessage(String.format("%s**I swear I didn't drop your favorite anime!**\n We received a ``%s`` while trying to process the command.",
-                            EmoteReference.ERROR, exception.getClass().getSimpleName())).queue();
+                    animeCache.get(content, () -> AsyncHttp.getString(connection)).thenApply(AnimeData::fromJson).whenComplete((type, error) -> {
+                        if(error != null) {
+                            onSearchError(event, error, ANIME_ERROR);
+                            return;
+                        }
+
+                        try {
+                            if(type.length == 1) {
+                                animeData(event, type[0]);
+                                return;
+                            }
+
+                            DiscordUtils.selectList(event, type, anime -> String.format("**[%s (%s)](%s)**",
+                                    anime.getTitleEnglish(), anime.getTitleJapanese(), "http://anilist.co/anime/" + anime.getId()),
+                                    s -> baseEmbed(event, "Type the number of the anime you want to select.")
+                                            .setDescription(s)
+                                            .setThumbnail("https://anilist.co/img/logo_al.png")
+                                            .setFooter("Information provided by Anilist. Type &cancel to cancel.", event.getAuthor().getAvatarUrl())
+                                            .build(),
+                                    anime -> animeData(event, anime));
+                        } catch(Exception e) {
+                            onSearchError(event, e, ANIME_ERROR);
+                        }
+                    });
+                } catch(Exception e) {
+                    onSearchError(event, e, ANIME_ERROR);
                 }
             }
 
@@ -139,37 +148,40 @@ public class AnimeCmds {
         cr.register("character", new SimpleCommand(Category.FUN) {
             @Override
             public void call(GuildMessageReceivedEvent event, String content, String[] args) {
-                try {
-                    if(content.isEmpty()) {
-                        onHelp(event);
-                        return;
-                    }
+                if(content.isEmpty()) {
+                    onHelp(event);
+                    return;
+                }
 
+                try {
                     String url = String.format("https://anilist.co/api/character/search/%1s?access_token=%2s", URLEncoder.encode(content, "UTF-8"), authToken);
-                    String json = Utils.wgetResty(url, event);
-                    CharacterData[] character = CharacterData.fromJson(json);
-
-                    if(character.length == 1) {
-                        characterData(event, character[0]);
-                        return;
-                    }
-
-                    DiscordUtils.selectList(event, character, character1 -> String.format("**[%s %s](%s)**",
-                            character1.getLastName() == null ? "" : character1.getLastName(), character1.getFirstName(),
-                            "http://anilist.co/character/" + character1.getId()),
-                            s -> baseEmbed(event, "Type the number of the character you want to select.")
-                                    .setDescription(s)
-                                    .setThumbnail("https://anilist.co/img/logo_al.png")
-                                    .setFooter("Information provided by Anilist. Type &cancel to cancel.", event.getAuthor().getAvatarUrl())
-                                    .build(),
-                            character1 -> characterData(event, character1));
-                }  catch (JsonSyntaxException jsonException) {
-                    event.getChannel().sendMessage(EmoteReference.ERROR + "No results found...").queue();
-                } catch (NullPointerException nullException) {
-                    event.getChannel().sendMessage(EmoteReference.ERROR + "We got a wrong API result for this specific search. Maybe try another one?").queue();
-                } catch (Exception exception) {
-                    event.getChannel().sendMessage(String.format("%s**I swear I didn't d-drop your waifu, please forgive me!**\nI got ``%s`` while trying to process this command.",
-                            EmoteReference.ERROR, exception.getClass().getSimpleName())).queue();
+                    characterCache.get(content, () -> AsyncHttp.getString(url)).thenApply(CharacterData::fromJson).whenComplete((character, error) -> {
+                        if(error != null) {
+                            onSearchError(event, error, CHARACTER_ERROR);
+                            return;
+                        }
+
+                        try {
+                            if(character.length == 1) {
+                                characterData(event, character[0]);
+                                return;
+                            }
+
+                            DiscordUtils.selectList(event, character, character1 -> String.format("**[%s %s](%s)**",
+                                    character1.getLastName() == null ? "" : character1.getLastName(), character1.getFirstName(),
+                                    "http://anilist.co/character/" + character1.getId()),
+                                    s -> baseEmbed(event, "Type the number of the character you want to select.")
+                                            .setDescription(s)
+                                            .setThumbnail("https://anilist.co/img/logo_al.png")
+                                            .setFooter("Information provided by Anilist. Type &cancel to cancel.", event.getAuthor().getAvatarUrl())
+                                            .build(),
+                                    character1 -> characterData(event, character1));
+                        } catch(Exception e) {
+                            onSearchError(event, e, CHARACTER_ERROR);
+                        }
+                    });
+                } catch(Exception e) {
+                    onSearchError(event, e, CHARACTER_ERROR);
                 }
             }
 
@@ -188,6 +200,19 @@ public class AnimeCmds {
         cr.registerAlias("character", "char");
     }
 
+    private static void onSearchError(GuildMessageReceivedEvent event, Throwable error, String message) {
+        if(error instanceof CompletionException && error.getCause() != null)
+            error = error.getCause();
+
+        if(error instanceof JsonSyntaxException) {
+            event.getChannel().sendMessage(EmoteReference.ERROR + "No results found...").queue();
+        } else if(error instanceof NullPointerException) {
+            event.getChannel().sendMessage(EmoteReference.ERROR + "We got a wrong API result for this specific search. Maybe try another one?").queue();
+        } else {
+            event.getChannel().sendMessage(String.format(message, EmoteReference.ERROR, error.getClass().getSimpleName())).queue();
+        }
+    }
+
     private void animeData(GuildMessageReceivedEvent event, AnimeData type) {
         String ANIME_TITLE = type.getTitleEnglish();
         String RELEASE_DATE = StringUtils.substringBefore(type.getStartDate(), "T");
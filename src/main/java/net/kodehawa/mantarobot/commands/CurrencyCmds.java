@@ -18,9 +18,6 @@ package net.kodehawa.mantarobot.commands;
 
 import br.com.brjdevs.java.utils.texts.StringUtils;
 import com.google.common.eventbus.Subscribe;
-import com.rethinkdb.model.OptArgs;
-import com.rethinkdb.net.Connection;
-import com.rethinkdb.net.Cursor;
 import net.dv8tion.jda.core.EmbedBuilder;
 import net.dv8tion.jda.core.Permission;
 import net.dv8tion.jda.core.entities.Member;
@@ -41,6 +38,7 @@ import net.kodehawa.mantarobot.core.modules.commands.base.Command;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.Player;
 import net.kodehawa.mantarobot.db.entities.helpers.Inventory;
+import net.kodehawa.mantarobot.db.leaderboard.Leaderboards;
 import net.kodehawa.mantarobot.utils.DiscordUtils;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
@@ -53,7 +51,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static com.rethinkdb.RethinkDB.r;
 import static net.kodehawa.mantarobot.utils.Utils.handleDefaultRatelimit;
 
 @Module
@@ -654,9 +651,7 @@ public class CurrencyCmds {
         });
     }
 
-    //TODO find an efficient way to do this that doesn't require a shit ton of db reads.
-    //@Subscribe
-    @SuppressWarnings("unchecked")
+    @Subscribe
     public void rank(CommandRegistry registry) {
         registry.register("rank", new SimpleCommand(Category.CURRENCY) {
             @Override
@@ -667,32 +662,17 @@ public class CurrencyCmds {
                     return;
                 User user = m.getUser();
 
-                long moneyRank, levelRank, reputationRank, streakRank;
-                long count;
-                try(Connection conn = Utils.newDbConnection()) {
-                    moneyRank = ((Cursor<Long>) r.table("players").orderBy()
-                            .optArg("index", r.desc("money"))
-                            .offsetsOf(player -> player.g("id").eq(user.getId() + ":g"))
-                            .run(conn, OptArgs.of("read_mode", "outdated"))).next() + 1;
-
-                    levelRank = ((Cursor<Long>) r.table("players").orderBy()
-                            .optArg("index", r.desc("level"))
-                            .offsetsOf(player -> player.g("id").eq(user.getId() + ":g"))
-                            .run(conn, OptArgs.of("read_mode", "outdated"))).next() + 1;
-
-                    reputationRank = ((Cursor<Long>) r.table("players").orderBy()
-                            .optArg("index", r.desc("reputation"))
-                            .offsetsOf(player -> player.g("id").eq(user.getId() + ":g"))
-                            .run(conn, OptArgs.of("read_mode", "outdated"))).next() + 1;
-
-                    streakRank = ((Cursor<Long>) r.table("players").orderBy()
-                            .optArg("index", r.desc("userDailyStreak"))
-                            .offsetsOf(player -> player.g("id").eq(user.getId() + ":g"))
-                            .run(conn, OptArgs.of("read_mode", "outdated"))).next() + 1;
-
-                    count = r.table("players").count().run(conn);
+                if(!Leaderboards.isLoaded()) {
+                    event.getChannel().sendMessage(EmoteReference.STOPWATCH + "The leaderboards are still loading, try again in a bit!").queue();
+                    return;
                 }
 
+                long moneyRank = Leaderboards.rank(Leaderboards.Type.MONEY, user.getId());
+                long levelRank = Leaderboards.rank(Leaderboards.Type.LEVEL, user.getId());
+                long reputationRank = Leaderboards.rank(Leaderboards.Type.REPUTATION, user.getId());
+                long streakRank = Leaderboards.rank(Leaderboards.Type.STREAK, user.getId());
+                long count = Leaderboards.count();
+
                 event.getChannel().sendMessage(new EmbedBuilder()
                         .setTitle(user.getName() + "'s Leaderboard Rank")
                         .setDescription(
@@ -16,7 +16,8 @@
 
 package net.kodehawa.mantarobot.commands;
 
-import br.com.brjdevs.java.utils.async.Async;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.eventbus.Subscribe;
 import lombok.extern.slf4j.Slf4j;
 import net.dv8tion.jda.core.EmbedBuilder;
@@ -26,14 +27,13 @@ import net.dv8tion.jda.core.entities.MessageEmbed;
 import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.commands.currency.TextChannelGround;
-import net.kodehawa.mantarobot.commands.custom.ConditionalCustoms;
+import net.kodehawa.mantarobot.commands.custom.CustomCommandIndex;
+import net.kodehawa.mantarobot.commands.custom.CustomTemplate;
 import net.kodehawa.mantarobot.commands.custom.EmbedJSON;
 import net.kodehawa.mantarobot.commands.info.stats.manager.CategoryStatsManager;
 import net.kodehawa.mantarobot.commands.info.stats.manager.CommandStatsManager;
 import net.kodehawa.mantarobot.commands.info.stats.manager.CustomCommandStatsManager;
 import net.kodehawa.mantarobot.core.CommandRegistry;
-import net.kodehawa.mantarobot.core.MantaroCore;
-import net.kodehawa.mantarobot.core.listeners.events.PostLoadEvent;
 import net.kodehawa.mantarobot.core.listeners.operations.InteractiveOperations;
 import net.kodehawa.mantarobot.core.listeners.operations.core.Operation;
 import net.kodehawa.mantarobot.core.modules.Module;
@@ -53,14 +53,11 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import java.net.URL;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static br.com.brjdevs.java.utils.collections.CollectionUtils.random;
-import static net.kodehawa.mantarobot.commands.custom.Mapifier.dynamicResolve;
-import static net.kodehawa.mantarobot.commands.custom.Mapifier.map;
 import static net.kodehawa.mantarobot.commands.info.HelpUtils.forType;
 import static net.kodehawa.mantarobot.data.MantaroData.db;
 import static net.kodehawa.mantarobot.utils.StringUtils.SPLIT_PATTERN;
@@ -68,10 +65,12 @@ import static net.kodehawa.mantarobot.utils.StringUtils.SPLIT_PATTERN;
 @Slf4j
 @Module
 public class CustomCmds {
-    private static final Map<String, List<String>> customCommands = new ConcurrentHashMap<>();
+    //Responses parsed once, keyed by their raw text. Edited responses just stop being used and age out.
+    private static final Cache<String, CustomTemplate> templates = CacheBuilder.newBuilder().maximumSize(20000).build();
     private final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_]+"),
             INVALID_CHARACTERS_PATTERN = Pattern.compile("[^a-zA-Z0-9_]"),
             NAME_WILDCARD_PATTERN = Pattern.compile("[a-zA-Z0-9_*]+");
+    private final CustomCommandIndex index = new CustomCommandIndex(this::loadCustomCommands);
     private final net.kodehawa.mantarobot.core.modules.commands.base.Command customCommand = new AbstractCommand(null) {
         @Override
         public MessageEmbed help(GuildMessageReceivedEvent event) {
@@ -79,12 +78,12 @@ public class CustomCmds {
         }
 
         private void handle(String cmdName, GuildMessageReceivedEvent event) {
-            List<String> values = customCommands.get(event.getGuild().getId() + ":" + cmdName);
+            String[] values = index.get(event.getGuild().getIdLong(), cmdName);
             if(values == null) return;
 
-            String response = random(values);
+            String response = values[ThreadLocalRandom.current().nextInt(values.length)];
             try {
-                runCustom(response.replace("@everyone", "\u200Deveryone").replace("@here", "\u200Dhere"), event);
+                runCustom(template(response), event);
                 CustomCommandStatsManager.log(cmdName);
             } catch(Exception e) {
                 event.getChannel().sendMessage(EmoteReference.ERROR + "Error while running custom command... please check the response content and length (cannot be more than 2000 chars).").queue();
@@ -108,6 +107,9 @@ public class CustomCmds {
     public void custom(CommandRegistry cr) {
         String any = "[\\d\\D]*?";
 
+        //Custom commands aren't on the global command map, the registry asks the guild's index for names it doesn't know.
+        cr.setGuildCommands((guild, name) -> index.contains(guild.getIdLong(), name) ? customCommand : null);
+
         cr.register("custom", new SimpleCommand(Category.UTILS) {
             @Override
             public void call(GuildMessageReceivedEvent event, String content, String[] args) {
@@ -119,17 +121,7 @@ public class CustomCmds {
                 String action = args[0];
 
                 if(action.equals("list") || action.equals("ls")) {
-
-                    if(!MantaroCore.hasLoadedCompletely()) {
-                        event.getChannel().sendMessage("The bot hasn't been fully booted up yet... custom commands will be available shortly!").queue();
-                        return;
-                    }
-
-                    String filter = event.getGuild().getId() + ":";
-                    List<String> commands = customCommands.keySet().stream()
-                            .filter(s -> s.startsWith(filter))
-                            .map(s -> s.substring(filter.length()))
-                            .collect(Collectors.toList());
+                    List<String> commands = index.names(event.getGuild().getIdLong());
 
                     EmbedBuilder builder = new EmbedBuilder()
                             .setAuthor("Commands for this guild", null, event.getGuild().getIconUrl())
@@ -235,7 +227,7 @@ public class CustomCmds {
                     }
                     int size = customCommands.size();
                     customCommands.forEach(CustomCommand::deleteAsync);
-                    customCommands.forEach(c -> CustomCmds.customCommands.remove(c.getId()));
+                    index.clear(event.getGuild().getIdLong());
                     event.getChannel().sendMessage(EmoteReference.PENCIL + "Cleared **" + size + " Custom Commands**!")
                             .queue();
                     return;
@@ -286,9 +278,7 @@ public class CustomCmds {
                                         return Operation.RESET_TIMEOUT;
                                     }
 
-                                    if(DefaultCommandProcessor.REGISTRY.commands().containsKey(
-                                            saveTo) && !DefaultCommandProcessor.REGISTRY.commands().get(saveTo).equals(
-                                            customCommand)) {
+                                    if(DefaultCommandProcessor.REGISTRY.commands().containsKey(saveTo)) {
                                         event.getChannel().sendMessage(
                                                 EmoteReference.ERROR + "A command already exists with this name!").queue();
                                         return Operation.RESET_TIMEOUT;
@@ -305,10 +295,7 @@ public class CustomCmds {
                                         custom.saveAsync();
 
                                         //reflect at local
-                                        customCommands.put(custom.getId(), custom.getValues());
-
-                                        //add mini-hack
-                                        DefaultCommandProcessor.REGISTRY.commands().put(cmd, customCommand);
+                                        index.put(event.getGuild().getIdLong(), cmd, custom.getValues());
 
                                         event.getChannel().sendMessage(
                                                 EmoteReference.CORRECT + "Saved to command ``" + cmd + "``!").queue();
@@ -339,7 +326,7 @@ public class CustomCmds {
 
                 if(action.equals("eval")) {
                     try {
-                        runCustom(content.replace("eval ", ""), event);
+                        runCustom(CustomTemplate.parse(content.replace("eval ", "")), event);
                     } catch(Exception e) {
                         event.getChannel().sendMessage(EmoteReference.ERROR + "There was an error while evaluating your command!" +
                                 (e.getMessage() == null ? "" : " (E: " + e.getMessage() + ")")).queue();
@@ -365,11 +352,7 @@ public class CustomCmds {
                     custom.deleteAsync();
 
                     //reflect at local
-                    customCommands.remove(custom.getId());
-
-                    //clear commands if none
-                    if(customCommands.keySet().stream().noneMatch(s -> s.endsWith(":" + cmd)))
-                        DefaultCommandProcessor.REGISTRY.commands().remove(cmd);
+                    index.remove(event.getGuild().getIdLong(), cmd);
 
                     event.getChannel().sendMessage(EmoteReference.PENCIL + "Removed Custom Command ``" + cmd + "``!")
                             .queue();
@@ -386,8 +369,16 @@ public class CustomCmds {
                     Map<String, Guild> mapped = MantaroBot.getInstance().getMutualGuilds(event.getAuthor()).stream()
                             .collect(Collectors.toMap(ISnowflake::getId, g -> g));
 
-                    List<Pair<Guild, CustomCommand>> filtered = MantaroData.db()
-                            .getCustomCommandsByName(("*" + cmd + "*").replace("*", any)).stream()
+                    //Any command whose name contains the search (with wildcards) matches. Exact matches come from the name index
+                    //and get listed first, the rest still has to go through every command.
+                    Map<String, CustomCommand> found = new LinkedHashMap<>();
+                    if(!cmd.contains("*")) {
+                        MantaroData.db().getCustomCommandsByName(cmd).forEach(customCommand -> found.put(customCommand.getId(), customCommand));
+                    }
+
+                    MantaroData.db().getCustomCommandsMatching(("*" + cmd + "*").replace("*", any)).forEach(customCommand -> found.putIfAbsent(customCommand.getId(), customCommand));
+
+                    List<Pair<Guild, CustomCommand>> filtered = found.values().stream()
                             .map(customCommand -> {
                                 Guild guild = mapped.get(customCommand.getGuildId());
                                 return guild == null ? null : Pair.of(guild, customCommand);
@@ -418,7 +409,7 @@ public class CustomCmds {
                                 custom.saveAsync();
 
                                 //reflect at local
-                                customCommands.put(custom.getId(), custom.getValues());
+                                index.put(event.getGuild().getIdLong(), cmdName, custom.getValues());
 
                                 event.getChannel().sendMessage(String
                                         .format("Imported custom command ``%s`` from guild `%s` with responses ``%s``", cmdName,
@@ -472,7 +463,7 @@ public class CustomCmds {
                     custom.getValues().set(where - 1, vals[1]);
 
                     custom.saveAsync();
-                    customCommands.put(custom.getId(), custom.getValues());
+                    index.put(event.getGuild().getIdLong(), custom.getName(), custom.getValues());
 
                     event.getChannel().sendMessage(EmoteReference.CORRECT + "Edited response **#" + where + "** of the command `" + custom.getName() + "` correctly!").queue();
                     return;
@@ -484,7 +475,7 @@ public class CustomCmds {
                         return;
                     }
 
-                    if(DefaultCommandProcessor.REGISTRY.commands().containsKey(value) && !DefaultCommandProcessor.REGISTRY.commands().get(value).equals(customCommand)) {
+                    if(DefaultCommandProcessor.REGISTRY.commands().containsKey(value)) {
                         event.getChannel().sendMessage(EmoteReference.ERROR + "A command already exists with this name!").queue();
                         return;
                     }
@@ -504,15 +495,8 @@ public class CustomCmds {
                     newCustom.saveAsync();
 
                     //reflect at local
-                    customCommands.remove(oldCustom.getId());
-                    customCommands.put(newCustom.getId(), newCustom.getValues());
-
-                    //add mini-hack
-                    DefaultCommandProcessor.REGISTRY.commands().put(value, customCommand);
-
-                    //clear commands if none
-                    if(customCommands.keySet().stream().noneMatch(s -> s.endsWith(":" + cmd)))
-                        DefaultCommandProcessor.REGISTRY.commands().remove(cmd);
+                    index.remove(event.getGuild().getIdLong(), cmd);
+                    index.put(event.getGuild().getIdLong(), value, newCustom.getValues());
 
                     event.getChannel().sendMessage(
                             EmoteReference.CORRECT + "Renamed command ``" + cmd + "`` to ``" + value + "``!").queue();
@@ -534,8 +518,7 @@ public class CustomCmds {
                         return;
                     }
 
-                    if(DefaultCommandProcessor.REGISTRY.commands().containsKey(cmd) && !DefaultCommandProcessor.REGISTRY.commands()
-                            .get(cmd).equals(customCommand)) {
+                    if(DefaultCommandProcessor.REGISTRY.commands().containsKey(cmd)) {
                         event.getChannel().sendMessage(
                                 EmoteReference.ERROR + "A command already exists with this name!").queue();
                         return;
@@ -555,10 +538,7 @@ public class CustomCmds {
                     custom.saveAsync();
 
                     //reflect at local
-                    customCommands.put(custom.getId(), custom.getValues());
-
-                    //add mini-hack
-                    DefaultCommandProcessor.REGISTRY.commands().put(cmd, customCommand);
+                    index.put(event.getGuild().getIdLong(), cmd, custom.getValues());
 
                     event.getChannel().sendMessage(EmoteReference.CORRECT + "Saved to command ``" + cmd + "``!")
                             .queue();
@@ -601,40 +581,43 @@ public class CustomCmds {
         });
     }
 
-    @Subscribe
-    public void onPostLoad(PostLoadEvent e) {
-        Async.thread(() -> db().getCustomCommands().forEach(custom -> {
-            if(!NAME_PATTERN.matcher(custom.getName()).matches()) {
-                String newName = INVALID_CHARACTERS_PATTERN.matcher(custom.getName()).replaceAll("_");
-                log.info("Custom Command with Invalid Characters '%s' found. Replacing with '%'", custom.getName());
-
-                custom.deleteAsync();
-                custom = CustomCommand.of(custom.getGuildId(), newName, custom.getValues());
-                custom.saveAsync();
+    //Loads the commands of a guild into the index, fixing the names that can't be used (anymore) on the way.
+    private List<CustomCommand> loadCustomCommands(String guildId) {
+        List<CustomCommand> commands = db().getCustomCommands(guildId);
+        for(ListIterator<CustomCommand> it = commands.listIterator(); it.hasNext(); ) {
+            CustomCommand custom = it.next();
+            String name = custom.getName();
+            if(!NAME_PATTERN.matcher(name).matches()) {
+                name = INVALID_CHARACTERS_PATTERN.matcher(name).replaceAll("_");
+                log.info("Custom Command with Invalid Characters '{}' found. Replacing with '{}'", custom.getName(), name);
             }
 
-            if(DefaultCommandProcessor.REGISTRY.commands().containsKey(custom.getName()) && !DefaultCommandProcessor.REGISTRY
-                    .commands().get(custom.getName()).equals(customCommand)) {
+            if(DefaultCommandProcessor.REGISTRY.commands().containsKey(name))
+                name = "_" + name;
+
+            if(!name.equals(custom.getName())) {
                 custom.deleteAsync();
-                custom = CustomCommand.of(custom.getGuildId(), "_" + custom.getName(), custom.getValues());
+                custom = CustomCommand.of(custom.getGuildId(), name, custom.getValues());
                 custom.saveAsync();
+                it.set(custom);
             }
+        }
 
-            //add to registry
-            DefaultCommandProcessor.REGISTRY.commands().put(custom.getName(), customCommand);
-
-            customCommands.put(custom.getId(), custom.getValues());
-        }));
+        return commands;
     }
 
-    private void runCustom(String response, GuildMessageReceivedEvent event) {
-        if(response.contains("$(")) {
-            Map<String, String> dynamicMap = new HashMap<>();
-            map("event", dynamicMap, event);
-            response = dynamicResolve(response, dynamicMap);
+    private static CustomTemplate template(String response) {
+        CustomTemplate template = templates.getIfPresent(response);
+        if(template == null) {
+            template = CustomTemplate.parse(response.replace("@everyone", "\u200Deveryone").replace("@here", "\u200Dhere"));
+            templates.put(response, template);
         }
 
-        response = ConditionalCustoms.resolve(response, 0);
+        return template;
+    }
+
+    private void runCustom(CustomTemplate template, GuildMessageReceivedEvent event) {
+        String response = template.render(event);
 
         int c = response.indexOf(':');
         if(c != -1) {
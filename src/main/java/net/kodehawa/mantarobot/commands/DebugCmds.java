@@ -34,6 +34,8 @@ import net.kodehawa.mantarobot.core.CommandRegistry;
 import net.kodehawa.mantarobot.core.listeners.MantaroListener;
 import net.kodehawa.mantarobot.core.listeners.command.CommandListener;
 import net.kodehawa.mantarobot.core.listeners.events.PreLoadEvent;
+import net.kodehawa.mantarobot.core.metrics.CommandLatency;
+import net.kodehawa.mantarobot.core.metrics.LatencyHistogram;
 import net.kodehawa.mantarobot.core.modules.Module;
 import net.kodehawa.mantarobot.core.modules.commands.SimpleCommand;
 import net.kodehawa.mantarobot.core.modules.commands.base.Category;
@@ -47,6 +49,7 @@ import net.kodehawa.mantarobot.utils.commands.RateLimiter;
 import java.lang.management.ManagementFactory;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
@@ -87,6 +90,7 @@ public class DebugCmds {
                         + "Music Connections: " + (int) vc.stream().filter(voiceChannel -> voiceChannel.getMembers().contains(voiceChannel.getGuild().getSelfMember())).count() + "\n"
                         + "Active Connections: " + (int) vc.stream().filter(voiceChannel ->
                         voiceChannel.getMembers().contains(voiceChannel.getGuild().getSelfMember()) && voiceChannel.getMembers().size() > 1).count() + "\n"
+                        + "Active Players: " + String.format("%,d", MantaroBot.getInstance().getAudioManager().getActivePlayers()) + "\n"
                         + "Queue Size: " + String.format("%,d", MantaroBot.getInstance().getAudioManager().getTotalQueueSize())
                         + "```").queue();
             }
@@ -283,6 +287,47 @@ public class DebugCmds {
         });
     }
 
+    @Subscribe
+    public void latency(CommandRegistry cr) {
+        cr.register("latency", new SimpleCommand(Category.INFO) {
+            @Override
+            protected void call(GuildMessageReceivedEvent event, String content, String[] args) {
+                CommandLatency latency = CommandLatency.getInstance();
+                StringBuilder builder = new StringBuilder(" --------- Phases (ms) --------- \n\n");
+                for(String phase : latency.getPhases()) {
+                    builder.append(phase).append("\n");
+                }
+
+                if(args.length > 0) {
+                    LatencyHistogram.Snapshot snapshot = latency.commandSnapshots().get(args[0].toLowerCase());
+                    builder.append("\n --------- Command (ms) --------- \n\n")
+                            .append(snapshot == null ? "Nobody has used " + args[0] + " yet." : CommandLatency.format(args[0].toLowerCase(), snapshot));
+                } else {
+                    builder.append("\n --------- Slowest Commands (ms, by p99) --------- \n\n");
+                    for(Map.Entry<String, LatencyHistogram.Snapshot> entry : latency.slowest(10)) {
+                        builder.append(CommandLatency.format(entry.getKey(), entry.getValue())).append("\n");
+                    }
+                }
+
+                event.getChannel().sendMessage(new MessageBuilder()
+                        .append(EmoteReference.STOPWATCH)
+                        .append("**Command Latency (since startup)**")
+                        .append("\n")
+                        .appendCodeBlock(builder.toString(), "prolog")
+                        .build()).queue();
+            }
+
+            @Override
+            public MessageEmbed help(GuildMessageReceivedEvent event) {
+                return helpEmbed(event, "Latency")
+                        .setDescription("**Shows how long each phase of command processing takes, and which commands are the slowest.**")
+                        .addField("Usage", "`~>latency` - **Shows the processing phases and the 10 slowest commands**\n" +
+                                "`~>latency <command>` - **Shows the processing phases and the given command**", false)
+                        .build();
+            }
+        });
+    }
+
     private String ratePing(long ping) {
         if(ping == 69) return "l-lewd! <:MantaroGasm:318869352851963904>";
         if(ping <= 1) return "supersonic speed! :upside_down:"; //just in case...
@@ -32,6 +32,7 @@ import net.kodehawa.mantarobot.core.modules.commands.SimpleCommand;
 import net.kodehawa.mantarobot.core.modules.commands.base.Category;
 import net.kodehawa.mantarobot.utils.cache.URLCache;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -61,7 +62,7 @@ public class ImageCmds {
     @Subscribe
     public void cat(CommandRegistry cr) {
         cr.register("cat", new SimpleCommand(Category.IMAGE) {
-            final OkHttpClient httpClient = new OkHttpClient();
+            final OkHttpClient httpClient = AsyncHttp.getClient();
 
             @Override
             protected void call(GuildMessageReceivedEvent event, String content, String[] args) {
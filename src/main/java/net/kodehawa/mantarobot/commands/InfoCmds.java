@@ -26,7 +26,9 @@ import net.dv8tion.jda.core.utils.cache.SnowflakeCacheView;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.MantaroInfo;
 import net.kodehawa.mantarobot.commands.currency.TextChannelGround;
+import net.kodehawa.mantarobot.commands.info.stats.StatsAggregates;
 import net.kodehawa.mantarobot.commands.info.stats.manager.*;
+import net.kodehawa.mantarobot.commands.info.stats.manager.SlidingWindowCounter.Window;
 import net.kodehawa.mantarobot.core.CommandRegistry;
 import net.kodehawa.mantarobot.core.listeners.command.CommandListener;
 import net.kodehawa.mantarobot.core.modules.Module;
@@ -55,8 +57,6 @@ import java.util.stream.Collectors;
 
 import static net.kodehawa.mantarobot.commands.info.AsyncInfoMonitor.*;
 import static net.kodehawa.mantarobot.commands.info.HelpUtils.forType;
-import static net.kodehawa.mantarobot.commands.info.stats.StatsHelper.calculateDouble;
-import static net.kodehawa.mantarobot.commands.info.stats.StatsHelper.calculateInt;
 import static net.kodehawa.mantarobot.utils.commands.EmoteReference.BLUE_SMALL_MARKER;
 
 @Module
@@ -77,7 +77,8 @@ public class InfoCmds {
                     @Override
                     protected void call(GuildMessageReceivedEvent event, String content) {
                         SnowflakeCacheView<Guild> guilds = MantaroBot.getInstance().getGuildCache();
-                        SnowflakeCacheView<User> users = MantaroBot.getInstance().getUserCache();
+                        //Counted in the background, walking every user of every shard on each call was too expensive.
+                        long uniqueUsers = StatsAggregates.getInstance().getUniqueUsers();
                         SnowflakeCacheView<TextChannel> textChannels = MantaroBot.getInstance().getTextChannelCache();
                         SnowflakeCacheView<VoiceChannel> voiceChannels = MantaroBot.getInstance().getVoiceChannelCache();
 
@@ -100,7 +101,7 @@ public class InfoCmds {
                                 .addField("Shards", String.valueOf(MantaroBot.getInstance().getShardedMantaro().getTotalShards()), true)
                                 .addField("Threads", String.format("%,d", Thread.activeCount()), true)
                                 .addField("Servers", String.format("%,d", guilds.size()), true)
-                                .addField("Users (Unique)", String.format("%,d", users.stream().mapToLong(ISnowflake::getIdLong).distinct().count()), true)
+                                .addField("Users (Unique)", uniqueUsers == -1 ? "Still counting..." : String.format("%,d", uniqueUsers), true)
                                 .addField("Text Channels", String.format("%,d", textChannels.size()), true)
                                 .addField("Voice Channels", String.format("%,d", voiceChannels.size()), true)
                                 .setFooter(String.format("Invite link: http://is.gd/mantaro (Commands this session: %,d | Current shard: %d)", CommandListener.getCommandTotalInt(), MantaroBot.getInstance().getShardForGuild(event.getGuild().getId()).getId() + 1), event.getJDA().getSelfUser().getEffectiveAvatarUrl())
@@ -373,25 +374,21 @@ public class InfoCmds {
                         if(content.isEmpty()) {
                             event.getChannel().sendMessage(EmoteReference.MEGA + "**[Stats]** Y-Yeah... gathering them, hold on for a bit...").queue(message -> {
                                 GuildStatsManager.MILESTONE = (((int) (MantaroBot.getInstance().getGuildCache().size() + 99) / 100) * 100) + 100;
-                                List<Guild> guilds = MantaroBot.getInstance().getGuilds();
-
-                                List<VoiceChannel> voiceChannels = MantaroBot.getInstance().getVoiceChannels();
-                                List<VoiceChannel> musicChannels = voiceChannels.parallelStream().filter(vc -> vc.getMembers().contains(vc.getGuild().getSelfMember())).collect(Collectors.toList());
-
-                                IntSummaryStatistics usersPerGuild = calculateInt(guilds, value -> value.getMembers().size());
-                                IntSummaryStatistics onlineUsersPerGuild = calculateInt(guilds, value -> (int) value.getMembers().stream().filter(member -> !member.getOnlineStatus().equals(OnlineStatus.OFFLINE)).count());
-                                DoubleSummaryStatistics onlineUsersPerUserPerGuild = calculateDouble(guilds, value -> (double) value.getMembers().stream().filter(member -> !member.getOnlineStatus().equals(OnlineStatus.OFFLINE)).count() / (double) value.getMembers().size() * 100);
-                                DoubleSummaryStatistics listeningUsersPerUsersPerGuilds = calculateDouble(musicChannels, value -> (double) value.getMembers().size() / (double) value.getGuild().getMembers().size() * 100);
-                                DoubleSummaryStatistics listeningUsersPerOnlineUsersPerGuilds = calculateDouble(musicChannels, value -> (double) value.getMembers().size() / (double) value.getGuild().getMembers().stream().filter(member -> !member.getOnlineStatus().equals(OnlineStatus.OFFLINE)).count() * 100);
-                                IntSummaryStatistics textChannelsPerGuild = calculateInt(guilds, value -> value.getTextChannels().size());
-                                IntSummaryStatistics voiceChannelsPerGuild = calculateInt(guilds, value -> value.getVoiceChannels().size());
-
-                                int musicConnections = (int) voiceChannels.stream().filter(voiceChannel -> voiceChannel.getMembers().contains(
-                                        voiceChannel.getGuild().getSelfMember())).count();
-                                long exclusiveness = MantaroBot.getInstance().getGuildCache().stream().filter(g -> g.getMembers().stream().filter(member -> member.getUser().isBot()).count() == 1).count();
-                                double musicConnectionsPerServer = (double) musicConnections / (double) guilds.size() * 100;
-                                double exclusivenessPercent = (double) exclusiveness / (double) guilds.size() * 100;
-                                long bigGuilds = MantaroBot.getInstance().getGuildCache().stream().filter(g -> g.getMembers().size() > 500).count();
+                                StatsAggregates.Summary summary = StatsAggregates.getInstance().summarize();
+
+                                IntSummaryStatistics usersPerGuild = summary.getUsersPerGuild();
+                                IntSummaryStatistics onlineUsersPerGuild = summary.getOnlineUsersPerGuild();
+                                DoubleSummaryStatistics onlineUsersPerUserPerGuild = summary.getOnlineUsersPerUsers();
+                                DoubleSummaryStatistics listeningUsersPerUsersPerGuilds = summary.getListenersPerUsers();
+                                DoubleSummaryStatistics listeningUsersPerOnlineUsersPerGuilds = summary.getListenersPerOnlineUsers();
+                                IntSummaryStatistics textChannelsPerGuild = summary.getTextChannelsPerGuild();
+                                IntSummaryStatistics voiceChannelsPerGuild = summary.getVoiceChannelsPerGuild();
+
+                                int musicConnections = summary.getMusicConnections();
+                                long exclusiveness = summary.getExclusiveness();
+                                double musicConnectionsPerServer = (double) musicConnections / (double) summary.getGuilds() * 100;
+                                double exclusivenessPercent = (double) exclusiveness / (double) summary.getGuilds() * 100;
+                                long bigGuilds = summary.getBigGuilds();
                                 message.editMessage(
                                         new EmbedBuilder()
                                                 .setColor(Color.PINK)
@@ -407,7 +404,7 @@ public class InfoCmds {
                                                 .addField("Music Listeners per Online Users per Server", String.format(Locale.ENGLISH, "Min: %.1f%%\nAvg: %.1f%%\nMax: %.1f%%", listeningUsersPerOnlineUsersPerGuilds.getMin(), listeningUsersPerOnlineUsersPerGuilds.getAverage(), listeningUsersPerOnlineUsersPerGuilds.getMax()), true)
                                                 .addField("Music Connections per Server", String.format(Locale.ENGLISH, "%.1f%% (%d Connections)", musicConnectionsPerServer, musicConnections), true)
                                                 .addField("Total queue size", Long.toString(MantaroBot.getInstance().getAudioManager().getTotalQueueSize()), true)
-                                                .addField("Total commands (including custom)", String.valueOf(DefaultCommandProcessor.REGISTRY.commands().size()), true)
+                                                .addField("Total commands", String.valueOf(DefaultCommandProcessor.REGISTRY.commands().size()), true)
                                                 .addField("Exclusiveness in Total Servers", Math.round(exclusivenessPercent) + "% (" + exclusiveness + ")", false)
                                                 .addField("Big Servers", String.valueOf(bigGuilds), true)
                                                 .setFooter("! Guilds to next milestone (" + GuildStatsManager.MILESTONE + "): " + (GuildStatsManager.MILESTONE - MantaroBot.getInstance().getGuildCache().size())
@@ -473,32 +470,32 @@ public class InfoCmds {
                 if(args.length > 0) {
                     String what = args[0];
                     if(what.equals("total")) {
-                        event.getChannel().sendMessage(commandStatsManager.fillEmbed(CommandStatsManager.TOTAL_CMDS, baseEmbed(event, "Command Stats | Total")).build()).queue();
+                        event.getChannel().sendMessage(commandStatsManager.fillEmbed(CommandStatsManager.COMMANDS, Window.TOTAL, baseEmbed(event, "Command Stats | Total")).build()).queue();
                         return;
                     }
 
                     if(what.equals("daily")) {
-                        event.getChannel().sendMessage(commandStatsManager.fillEmbed(CommandStatsManager.DAY_CMDS, baseEmbed(event, "Command Stats | Daily")).build()).queue();
+                        event.getChannel().sendMessage(commandStatsManager.fillEmbed(CommandStatsManager.COMMANDS, Window.DAY, baseEmbed(event, "Command Stats | Daily")).build()).queue();
                         return;
                     }
 
                     if(what.equals("hourly")) {
-                        event.getChannel().sendMessage(commandStatsManager.fillEmbed(CommandStatsManager.HOUR_CMDS, baseEmbed(event, "Command Stats | Hourly")).build()).queue();
+                        event.getChannel().sendMessage(commandStatsManager.fillEmbed(CommandStatsManager.COMMANDS, Window.HOUR, baseEmbed(event, "Command Stats | Hourly")).build()).queue();
                         return;
                     }
 
                     if(what.equals("now")) {
-                        event.getChannel().sendMessage(commandStatsManager.fillEmbed(CommandStatsManager.MINUTE_CMDS, baseEmbed(event, "Command Stats | Now")).build()).queue();
+                        event.getChannel().sendMessage(commandStatsManager.fillEmbed(CommandStatsManager.COMMANDS, Window.MINUTE, baseEmbed(event, "Command Stats | Now")).build()).queue();
                         return;
                     }
                 }
 
                 //Default
                 event.getChannel().sendMessage(baseEmbed(event, "Command Stats")
-                        .addField("Now", commandStatsManager.resume(CommandStatsManager.MINUTE_CMDS), false)
-                        .addField("Hourly", commandStatsManager.resume(CommandStatsManager.HOUR_CMDS), false)
-                        .addField("Daily", commandStatsManager.resume(CommandStatsManager.DAY_CMDS), false)
-                        .addField("Total", commandStatsManager.resume(CommandStatsManager.TOTAL_CMDS), false)
+                        .addField("Now", commandStatsManager.resume(CommandStatsManager.COMMANDS, Window.MINUTE), false)
+                        .addField("Hourly", commandStatsManager.resume(CommandStatsManager.COMMANDS, Window.HOUR), false)
+                        .addField("Daily", commandStatsManager.resume(CommandStatsManager.COMMANDS, Window.DAY), false)
+                        .addField("Total", commandStatsManager.resume(CommandStatsManager.COMMANDS, Window.TOTAL), false)
                         .build()
                 ).queue();
             }
@@ -511,32 +508,32 @@ public class InfoCmds {
                 if(args.length > 0) {
                     String what = args[0];
                     if(what.equals("total")) {
-                        event.getChannel().sendMessage(guildStatsManager.fillEmbed(GuildStatsManager.TOTAL_EVENTS, baseEmbed(event, "Guild Stats | Total")).build()).queue();
+                        event.getChannel().sendMessage(guildStatsManager.fillEmbed(GuildStatsManager.EVENTS, Window.TOTAL, baseEmbed(event, "Guild Stats | Total")).build()).queue();
                         return;
                     }
 
                     if(what.equals("daily")) {
-                        event.getChannel().sendMessage(guildStatsManager.fillEmbed(GuildStatsManager.DAY_EVENTS, baseEmbed(event, "Guild Stats | Daily")).build()).queue();
+                        event.getChannel().sendMessage(guildStatsManager.fillEmbed(GuildStatsManager.EVENTS, Window.DAY, baseEmbed(event, "Guild Stats | Daily")).build()).queue();
                         return;
                     }
 
                     if(what.equals("hourly")) {
-                        event.getChannel().sendMessage(guildStatsManager.fillEmbed(GuildStatsManager.HOUR_EVENTS, baseEmbed(event, "Guild Stats | Hourly")).build()).queue();
+                        event.getChannel().sendMessage(guildStatsManager.fillEmbed(GuildStatsManager.EVENTS, Window.HOUR, baseEmbed(event, "Guild Stats | Hourly")).build()).queue();
                         return;
                     }
 
                     if(what.equals("now")) {
-                        event.getChannel().sendMessage(guildStatsManager.fillEmbed(GuildStatsManager.MINUTE_EVENTS, baseEmbed(event, "Guild Stats | Now")).build()).queue();
+                        event.getChannel().sendMessage(guildStatsManager.fillEmbed(GuildStatsManager.EVENTS, Window.MINUTE, baseEmbed(event, "Guild Stats | Now")).build()).queue();
                         return;
                     }
                 }
 
                 //Default
                 event.getChannel().sendMessage(baseEmbed(event, "Guild Stats")
-                        .addField("Now", guildStatsManager.resume(GuildStatsManager.MINUTE_EVENTS), false)
-                        .addField("Hourly", guildStatsManager.resume(GuildStatsManager.HOUR_EVENTS), false)
-                        .addField("Daily", guildStatsManager.resume(GuildStatsManager.DAY_EVENTS), false)
-                        .addField("Total", guildStatsManager.resume(GuildStatsManager.TOTAL_EVENTS), false)
+                        .addField("Now", guildStatsManager.resume(GuildStatsManager.EVENTS, Window.MINUTE), false)
+                        .addField("Hourly", guildStatsManager.resume(GuildStatsManager.EVENTS, Window.HOUR), false)
+                        .addField("Daily", guildStatsManager.resume(GuildStatsManager.EVENTS, Window.DAY), false)
+                        .addField("Total", guildStatsManager.resume(GuildStatsManager.EVENTS, Window.TOTAL), false)
                         .setFooter("Guilds: " + MantaroBot.getInstance().getGuildCache().size(), null)
                         .build()
                 ).queue();
@@ -550,32 +547,32 @@ public class InfoCmds {
                 if(args.length > 0) {
                     String what = args[0];
                     if(what.equals("total")) {
-                        event.getChannel().sendMessage(categoryStatsManager.fillEmbed(CategoryStatsManager.TOTAL_CATS, baseEmbed(event, "Category Stats | Total")).build()).queue();
+                        event.getChannel().sendMessage(categoryStatsManager.fillEmbed(CategoryStatsManager.CATEGORIES, Window.TOTAL, baseEmbed(event, "Category Stats | Total")).build()).queue();
                         return;
                     }
 
                     if(what.equals("daily")) {
-                        event.getChannel().sendMessage(categoryStatsManager.fillEmbed(CategoryStatsManager.DAY_CATS, baseEmbed(event, "Category Stats | Daily")).build()).queue();
+                        event.getChannel().sendMessage(categoryStatsManager.fillEmbed(CategoryStatsManager.CATEGORIES, Window.DAY, baseEmbed(event, "Category Stats | Daily")).build()).queue();
                         return;
                     }
 
                     if(what.equals("hourly")) {
-                        event.getChannel().sendMessage(categoryStatsManager.fillEmbed(CategoryStatsManager.HOUR_CATS, baseEmbed(event, "Category Stats | Hourly")).build()).queue();
+                        event.getChannel().sendMessage(categoryStatsManager.fillEmbed(CategoryStatsManager.CATEGORIES, Window.HOUR, baseEmbed(event, "Category Stats | Hourly")).build()).queue();
                         return;
                     }
 
                     if(what.equals("now")) {
-                        event.getChannel().sendMessage(categoryStatsManager.fillEmbed(CategoryStatsManager.MINUTE_CATS, baseEmbed(event, "Category Stats | Now")).build()).queue();
+                        event.getChannel().sendMessage(categoryStatsManager.fillEmbed(CategoryStatsManager.CATEGORIES, Window.MINUTE, baseEmbed(event, "Category Stats | Now")).build()).queue();
                         return;
                     }
                 }
 
                 //Default
                 event.getChannel().sendMessage(baseEmbed(event, "Category Stats")
-                        .addField("Now", categoryStatsManager.resume(CategoryStatsManager.MINUTE_CATS), false)
-                        .addField("Hourly", categoryStatsManager.resume(CategoryStatsManager.HOUR_CATS), false)
-                        .addField("Daily", categoryStatsManager.resume(CategoryStatsManager.DAY_CATS), false)
-                        .addField("Total", categoryStatsManager.resume(CategoryStatsManager.TOTAL_CATS), false)
+                        .addField("Now", categoryStatsManager.resume(CategoryStatsManager.CATEGORIES, Window.MINUTE), false)
+                        .addField("Hourly", categoryStatsManager.resume(CategoryStatsManager.CATEGORIES, Window.HOUR), false)
+                        .addField("Daily", categoryStatsManager.resume(CategoryStatsManager.CATEGORIES, Window.DAY), false)
+                        .addField("Total", categoryStatsManager.resume(CategoryStatsManager.CATEGORIES, Window.TOTAL), false)
                         .build()
                 ).queue();
             }
@@ -585,7 +582,7 @@ public class InfoCmds {
             @Override
             protected void call(GuildMessageReceivedEvent event, String content) {
                 event.getChannel().sendMessage(
-                        customCommandStatsManager.fillEmbed(CustomCommandStatsManager.TOTAL_CUSTOM_CMDS, baseEmbed(event, "CCS Stats | Total")
+                        customCommandStatsManager.fillEmbed(CustomCommandStatsManager.CUSTOM_COMMANDS, Window.TOTAL, baseEmbed(event, "CCS Stats | Total")
                         ).build()).queue();
             }
         });
@@ -593,7 +590,7 @@ public class InfoCmds {
         statsCommand.addSubCommand("game", new SubCommand() {
             @Override
             protected void call(GuildMessageReceivedEvent event, String content) {
-                event.getChannel().sendMessage(baseEmbed(event, "Game Stats").setDescription(gameStatsManager.resume(GameStatsManager.TOTAL_GAMES)).build()).queue();
+                event.getChannel().sendMessage(baseEmbed(event, "Game Stats").setDescription(gameStatsManager.resume(GameStatsManager.GAMES, Window.TOTAL)).build()).queue();
             }
         });
     }
@@ -39,11 +39,10 @@ import net.kodehawa.mantarobot.core.modules.commands.base.ITreeCommand;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.DBGuild;
 import net.kodehawa.mantarobot.utils.DiscordUtils;
-import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.data.DataManager;
 import net.kodehawa.mantarobot.utils.data.SimpleFileDataManager;
-import org.json.JSONObject;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
 
 import java.net.URLEncoder;
 import java.util.List;
@@ -137,17 +136,23 @@ public class MiscCmds {
                 }
 
                 String textEncoded;
-                String answer;
                 try {
                     textEncoded = URLEncoder.encode(content, "UTF-8");
-                    String json = Utils.wgetResty(String.format("https://8ball.delegator.com/magic/JSON/%1s", textEncoded), event);
-                    answer = new JSONObject(json).getJSONObject("magic").getString("answer");
                 } catch(Exception exception) {
                     event.getChannel().sendMessage(EmoteReference.ERROR + "I ran into an error while fetching 8ball results.").queue();
                     return;
                 }
 
-                event.getChannel().sendMessage("\uD83D\uDCAC " + answer + ".").queue();
+                AsyncHttp.getJson(String.format("https://8ball.delegator.com/magic/JSON/%1s", textEncoded))
+                        .thenApply(json -> json.getJSONObject("magic").getString("answer"))
+                        .whenComplete((answer, error) -> {
+                            if(error != null) {
+                                event.getChannel().sendMessage(EmoteReference.ERROR + "I ran into an error while fetching 8ball results.").queue();
+                                return;
+                            }
+
+                            event.getChannel().sendMessage("\uD83D\uDCAC " + answer + ".").queue();
+                        });
             }
 
             @Override
@@ -410,7 +410,7 @@ public class ModerationCmds {
                                     channel.sendMessage(String.format("%s%s (%s got temporarly banned)", EmoteReference.ZAP, modActionQuotes[r.nextInt(modActionQuotes.length)], user.getName())).queue();
 
                                     ModLog.log(event.getMember(), user, finalReason, ModLog.ModAction.TEMP_BAN, db.getData().getCases(), sTime);
-                                    MantaroBot.getTempBanManager().addTempban(guild.getId() + ":" + user.getId(), l + System.currentTimeMillis());
+                                    MantaroBot.getTempBanManager().addTempban(guild.getId(), user.getId(), l + System.currentTimeMillis());
                                     TextChannelGround.of(event).dropItemWithChance(1, 2);
                                 }),
                                 error ->
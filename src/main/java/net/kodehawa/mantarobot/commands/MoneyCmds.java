@@ -19,10 +19,6 @@ package net.kodehawa.mantarobot.commands;
 import br.com.brjdevs.java.utils.texts.StringUtils;
 import com.google.common.eventbus.Subscribe;
 import com.jagrosh.jdautilities.utils.FinderUtil;
-import com.rethinkdb.gen.ast.OrderBy;
-import com.rethinkdb.model.OptArgs;
-import com.rethinkdb.net.Connection;
-import com.rethinkdb.net.Cursor;
 import net.dv8tion.jda.core.entities.Member;
 import net.dv8tion.jda.core.entities.MessageEmbed;
 import net.dv8tion.jda.core.entities.User;
@@ -45,7 +41,7 @@ import net.kodehawa.mantarobot.core.modules.commands.base.ITreeCommand;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.Player;
 import net.kodehawa.mantarobot.db.entities.helpers.PlayerData;
-import net.kodehawa.mantarobot.utils.Utils;
+import net.kodehawa.mantarobot.db.leaderboard.Leaderboards;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.RateLimiter;
 import org.apache.commons.lang3.tuple.Pair;
@@ -58,9 +54,9 @@ import java.time.Month;
 import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static com.rethinkdb.RethinkDB.r;
 import static net.kodehawa.mantarobot.utils.Utils.handleDefaultRatelimit;
 
 /**
@@ -483,7 +479,6 @@ public class MoneyCmds {
     @Subscribe
     public void richest(CommandRegistry cr) {
         final RateLimiter rateLimiter = new RateLimiter(TimeUnit.SECONDS, 10);
-        final String pattern = ":g$";
 
         ITreeCommand leaderboards = (ITreeCommand) cr.register("leaderboard", new TreeCommand(Category.CURRENCY) {
             @Override
@@ -494,26 +489,7 @@ public class MoneyCmds {
                         if(!handleDefaultRatelimit(rateLimiter, event.getAuthor(), event))
                             return;
 
-                        OrderBy template =
-                                r.table("players")
-                                        .orderBy()
-                                        .optArg("index", r.desc("money"));
-
-                        Cursor<Map> c1 = getGlobalRichest(template, pattern);
-                        List<Map> c = c1.toList();
-                        c1.close();
-
-                        event.getChannel().sendMessage(
-                                baseEmbed(event,
-                                        "Money leaderboard (Top 10)", event.getJDA().getSelfUser().getEffectiveAvatarUrl()
-                                ).setDescription(c.stream()
-                                        .map(map -> Pair.of(MantaroBot.getInstance().getUserById(map.get("id").toString().split(":")[0]), map.get("money").toString()))
-                                        .filter(p -> Objects.nonNull(p.getKey()))
-                                        .map(p -> String.format("%s**%s#%s** - $%s", EmoteReference.MARKER, p.getKey().getName(), p
-                                                .getKey().getDiscriminator(), p.getValue()))
-                                        .collect(Collectors.joining("\n"))
-                                ).build()
-                        ).queue();
+                        sendLeaderboard(event, "Money leaderboard (Top 10)", Leaderboards.Type.MONEY, entry -> "$" + entry.getValue());
                     }
                 };
             }
@@ -536,95 +512,22 @@ public class MoneyCmds {
                 if(!handleDefaultRatelimit(rateLimiter, event.getAuthor(), event))
                     return;
 
-                Cursor<Map> m;
-                try(Connection conn = Utils.newDbConnection()) {
-                    m = r.table("players")
-                            .orderBy()
-                            .optArg("index", r.desc("level"))
-                            .filter(player -> player.g("id").match(pattern))
-                            .map(player -> player.pluck("id", "level", r.hashMap("data", "experience")))
-                            .limit(10)
-                            .run(conn, OptArgs.of("read_mode", "outdated"));
-                }
-
-                List<Map> c = m.toList();
-                m.close();
-
-                event.getChannel().sendMessage(
-                        baseEmbed(event,"Level leaderboard (Top 10)", event.getJDA().getSelfUser().getEffectiveAvatarUrl()
-                        ).setDescription(c.stream()
-                                .map(map -> Pair.of(MantaroBot.getInstance().getUserById(map.get("id").toString().split(":")[0]), map.get("level").toString() +
-                                        "\n - Experience: **" + ((Map)map.get("data")).get("experience") + "**"))
-                                .filter(p -> Objects.nonNull(p.getKey()))
-                                .map(p -> String.format("%s**%s#%s** - %s", EmoteReference.MARKER, p.getKey().getName(), p
-                                        .getKey().getDiscriminator(), p.getValue()))
-                                .collect(Collectors.joining("\n"))
-                        ).build()
-                ).queue();
+                sendLeaderboard(event, "Level leaderboard (Top 10)", Leaderboards.Type.LEVEL,
+                        entry -> entry.getValue() + "\n - Experience: **" + entry.getSecondary() + "**");
             }
         });
 
         leaderboards.addSubCommand("rep", new SubCommand() {
             @Override
             protected void call(GuildMessageReceivedEvent event, String content) {
-                Cursor<Map> m;
-
-                try(Connection conn = Utils.newDbConnection()) {
-                    m = r.table("players")
-                            .orderBy()
-                            .optArg("index", r.desc("reputation"))
-                            .filter(player -> player.g("id").match(pattern))
-                            .map(player -> player.pluck("id", "reputation"))
-                            .limit(10)
-                            .run(conn, OptArgs.of("read_mode", "outdated"));
-                }
-
-                List<Map> c = m.toList();
-                m.close();
-
-                event.getChannel().sendMessage(
-                        baseEmbed(event,
-                                "Reputation leaderboard (Top 10)", event.getJDA().getSelfUser().getEffectiveAvatarUrl()
-                        ).setDescription(c.stream()
-                                .map(map -> Pair.of(MantaroBot.getInstance().getUserById(map.get("id").toString().split(":")[0]), map.get("reputation").toString()))
-                                .filter(p -> Objects.nonNull(p.getKey()))
-                                .map(p -> String.format("%s**%s#%s** - %s", EmoteReference.MARKER, p.getKey().getName(), p
-                                        .getKey().getDiscriminator(), p.getValue()))
-                                .collect(Collectors.joining("\n"))
-                        ).build()
-                ).queue();
+                sendLeaderboard(event, "Reputation leaderboard (Top 10)", Leaderboards.Type.REPUTATION, entry -> String.valueOf(entry.getValue()));
             }
         });
 
         leaderboards.addSubCommand("streak", new SubCommand() {
             @Override
             protected void call(GuildMessageReceivedEvent event, String content) {
-                Cursor<Map> m;
-
-                try(Connection conn = Utils.newDbConnection()) {
-                    m = r.table("players")
-                            .orderBy()
-                            .optArg("index", r.desc("userDailyStreak"))
-                            .filter(player -> player.g("id").match(pattern))
-                            .map(player -> player.pluck("id", r.hashMap("data", "dailyStrike")))
-                            .limit(10)
-                            .run(conn, OptArgs.of("read_mode", "outdated"));
-                }
-
-                List<Map> c = m.toList();
-                m.close();
-
-                event.getChannel().sendMessage(
-                        baseEmbed(event,
-                                "Daily streak leaderboard (Top 10)", event.getJDA().getSelfUser().getEffectiveAvatarUrl()
-                        ).setDescription(c.stream()
-                                .map(map -> Pair.of(MantaroBot.getInstance().getUserById(map.get("id").toString().split(":")[0]), ((HashMap)(map.get("data"))).get("dailyStrike").toString()))
-                                .filter(p -> Objects.nonNull(p.getKey()))
-                                .map(p -> String.format("%s**%s#%s** - %sx", EmoteReference.MARKER, p.getKey().getName(), p
-                                        .getKey().getDiscriminator(), p.getValue()))
-                                .collect(Collectors.joining("\n"))
-                        ).build()
-                ).queue();
+                sendLeaderboard(event, "Daily streak leaderboard (Top 10)", Leaderboards.Type.STREAK, entry -> entry.getValue() + "x");
             }
         });
 
@@ -903,13 +806,21 @@ public class MoneyCmds {
         player.saveAsync();
     }
 
-    private Cursor<Map> getGlobalRichest(OrderBy template, String pattern) {
-        try(Connection conn = Utils.newDbConnection()) {
-            return template.filter(player -> player.g("id").match(pattern))
-                    .map(player -> player.pluck("id", "money"))
-                    .limit(10)
-                    .run(conn, OptArgs.of("read_mode", "outdated"));
+    private void sendLeaderboard(GuildMessageReceivedEvent event, String title, Leaderboards.Type type, Function<Leaderboards.Entry, String> format) {
+        if(!Leaderboards.isLoaded()) {
+            event.getChannel().sendMessage(EmoteReference.STOPWATCH + "The leaderboards are still loading, try again in a bit!").queue();
+            return;
         }
-    }
 
+        event.getChannel().sendMessage(
+                baseEmbed(event, title, event.getJDA().getSelfUser().getEffectiveAvatarUrl()
+                ).setDescription(Leaderboards.top(type, 10).stream()
+                        .map(entry -> Pair.of(MantaroBot.getInstance().getUserById(entry.getUserId()), format.apply(entry)))
+                        .filter(p -> Objects.nonNull(p.getKey()))
+                        .map(p -> String.format("%s**%s#%s** - %s", EmoteReference.MARKER, p.getKey().getName(), p
+                                .getKey().getDiscriminator(), p.getValue()))
+                        .collect(Collectors.joining("\n"))
+                ).build()
+        ).queue();
+    }
 }
@@ -353,7 +353,7 @@ public class MusicCmds {
                             return;
                         }
 
-                        track.setPosition(position - amt);
+                        manager.seek(track, position - amt);
                         event.getChannel().sendMessage(EmoteReference.CORRECT + "Rewound to: " + AudioUtils.getLength(position - amt) + ".").queue();
                     } catch(NumberFormatException ex) {
                         event.getChannel().sendMessage(EmoteReference.ERROR + "You need to provide a valid number").queue();
@@ -385,7 +385,7 @@ public class MusicCmds {
 
                 if(isDJ(event.getMember())) {
                     AudioTrack track = manager.getAudioPlayer().getPlayingTrack();
-                    track.setPosition(0L);
+                    manager.seek(track, 0L);
                     event.getChannel().sendMessage(EmoteReference.CORRECT + "Restarted current song.").queue();
                 } else {
                     event.getChannel().sendMessage(EmoteReference.ERROR + "You need to be a music DJ to use this command!").queue();
@@ -430,7 +430,7 @@ public class MusicCmds {
                             event.getChannel().sendMessage(EmoteReference.ERROR + "You can't skip past the duration of a song").queue();
                             return;
                         }
-                        track.setPosition(position + amt);
+                        manager.seek(track, position + amt);
                         event.getChannel().sendMessage(EmoteReference.CORRECT + "Skipped ahead to " + AudioUtils.getLength(position + amt) + ".").queue();
                     } catch(NumberFormatException ex) {
                         event.getChannel().sendMessage(EmoteReference.ERROR + "You need to provide a valid query.").queue();
@@ -473,7 +473,7 @@ public class MusicCmds {
                     if(isDJ(event.getMember())) {
                         event.getChannel().sendMessage(EmoteReference.CORRECT + "The server DJ has decided to clear the queue!").queue();
                         int TEMP_QUEUE_LENGTH = musicManager.getTrackScheduler().getQueue().size();
-                        MantaroBot.getInstance().getAudioManager().getMusicManager(event.getGuild()).getTrackScheduler().getQueue().clear();
+                        MantaroBot.getInstance().getAudioManager().getMusicManager(event.getGuild()).getTrackScheduler().clearQueue();
                         event.getChannel().sendMessage(EmoteReference.CORRECT + "Removed **" + TEMP_QUEUE_LENGTH + " songs** from the queue.").queue();
                         MantaroBot.getInstance().getAudioManager().getMusicManager(event.getGuild()).getTrackScheduler().stop();
                         return;
@@ -921,7 +921,7 @@ public class MusicCmds {
         }
 
         int TEMP_QUEUE_LENGTH = trackScheduler.getQueue().size();
-        trackScheduler.getQueue().clear();
+        trackScheduler.clearQueue();
 
         if(TEMP_QUEUE_LENGTH > 0) {
             event.getChannel().sendMessage(EmoteReference.OK + "Removed **" + TEMP_QUEUE_LENGTH + " songs** from the queue.").queue();
@@ -23,6 +23,7 @@ import net.dv8tion.jda.core.entities.MessageEmbed;
 import net.dv8tion.jda.core.entities.Role;
 import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.commands.moderation.ModLog;
+import net.kodehawa.mantarobot.commands.moderation.MuteTask;
 import net.kodehawa.mantarobot.core.CommandRegistry;
 import net.kodehawa.mantarobot.core.modules.Module;
 import net.kodehawa.mantarobot.core.modules.commands.SimpleCommand;
@@ -32,12 +33,11 @@ import net.kodehawa.mantarobot.core.modules.commands.base.CommandPermission;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
 import net.kodehawa.mantarobot.db.entities.DBGuild;
-import net.kodehawa.mantarobot.db.entities.MantaroObj;
+import net.kodehawa.mantarobot.db.entities.Mute;
 import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
 import net.kodehawa.mantarobot.options.core.Option;
 import net.kodehawa.mantarobot.options.core.OptionType;
 import net.kodehawa.mantarobot.utils.DiscordUtils;
-import net.kodehawa.mantarobot.utils.Pair;
 import net.kodehawa.mantarobot.utils.StringUtils;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
@@ -98,8 +98,6 @@ public class MuteCmds {
                 //Regex from: Fabricio20
                 final String finalReason = timePattern.matcher(reason).replaceAll("");
 
-                MantaroObj data = db.getMantaroData();
-
                 event.getMessage().getMentionedUsers().forEach(user -> {
                     Member m = event.getGuild().getMember(user);
                     long time = guildData.getSetModTimeout() > 0 ? System.currentTimeMillis() + guildData.getSetModTimeout() : 0L;
@@ -126,9 +124,9 @@ public class MuteCmds {
                             return;
                         }
 
-                        data.getMutes().put(user.getIdLong(), Pair.of(event.getGuild().getId(), time));
-                        data.save();
+                        Mute.of(event.getGuild().getId(), user.getId(), time).save();
                         dbGuild.save();
+                        MuteTask.schedule(event.getGuild().getId(), user.getId(), time);
                     } else {
                         if(time > 0) {
                             if(time > System.currentTimeMillis() + TimeUnit.DAYS.toMillis(10)) {
@@ -136,9 +134,9 @@ public class MuteCmds {
                                 return;
                             }
 
-                            data.getMutes().put(user.getIdLong(), Pair.of(event.getGuild().getId(), time));
-                            data.save();
+                            Mute.of(event.getGuild().getId(), user.getId(), time).save();
                             dbGuild.save();
+                            MuteTask.schedule(event.getGuild().getId(), user.getId(), time);
                         } else {
                             event.getChannel().sendMessage(EmoteReference.ERROR + "You didn't specify any time!").queue();
                             return;
@@ -348,6 +346,12 @@ public class MuteCmds {
                                 .reason(String.format("Unmuted by %#s: %s", event.getAuthor(), finalReason))
                                 .queue();
 
+                        //Don't let the timed mute try to unmute them again later.
+                        Mute mute = db.getMute(event.getGuild().getId(), user.getId());
+                        if(mute != null)
+                            mute.deleteAsync();
+                        MuteTask.cancel(event.getGuild().getId(), user.getId());
+
                         event.getChannel().sendMessage(EmoteReference.CORRECT + "Removed mute role from **" + m.getEffectiveName() + "**").queue();
                         dbg.getData().setCases(dbg.getData().getCases() + 1);
                         dbg.saveAsync();
@@ -33,6 +33,7 @@ import net.kodehawa.mantarobot.core.modules.commands.base.ITreeCommand;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.utils.SentryHelper;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import net.kodehawa.mantarobot.utils.http.ResponseCache;
 import org.json.JSONException;
 
 import java.awt.*;
@@ -47,6 +48,10 @@ import java.util.concurrent.*;
 public class OsuStatsCmd {
     private final Map<String, Object> map = new HashMap<>();
     private final ExecutorService pool = Executors.newCachedThreadPool();
+    //Only osu best goes through a cache, user lookups always hit the API.
+    private final ResponseCache osuBestCache = new ResponseCache("osu", 5, 10, TimeUnit.MINUTES, 500);
+    //Recent scores go stale fast, so they're only cached long enough to absorb repeated lookups and are never served stale.
+    private final ResponseCache osuRecentCache = new ResponseCache("osu-recent", 30, 0, TimeUnit.SECONDS, 500);
     private String mods1 = "";
     private OsuClient osuClient = new OsuClient(MantaroData.config().get().osuApiKey);
 
@@ -70,13 +75,14 @@ public class OsuStatsCmd {
             @Override
             protected void call(GuildMessageReceivedEvent event, String content) {
                 event.getChannel().sendMessage(EmoteReference.STOPWATCH + "Retrieving information from osu! server...").queue(sentMessage -> {
-                    Future<String> task = pool.submit(() -> best(content));
+                    Future<String> task = osuBestCache.get("best " + content, () -> CompletableFuture.supplyAsync(() -> best(content), pool));
                     try {
                         sentMessage.editMessage(task.get(16, TimeUnit.SECONDS)).queue();
                     } catch(Exception e) {
                         if(e instanceof TimeoutException) {
-                            task.cancel(true);
                             sentMessage.editMessage(EmoteReference.ERROR + "The osu! api seems to be taking a nap. Maybe try again later?").queue();
+                        } else if(e instanceof ExecutionException) {
+                            sentMessage.editMessage(errorMessage(e.getCause())).queue();
                         } else {
                             SentryHelper.captureException("Error retrieving results from osu!API", e, OsuStatsCmd.class);
                         }
@@ -89,13 +95,14 @@ public class OsuStatsCmd {
             @Override
             protected void call(GuildMessageReceivedEvent event, String content) {
                 event.getChannel().sendMessage(EmoteReference.STOPWATCH + "Retrieving information from server...").queue(sentMessage -> {
-                    Future<String> task = pool.submit(() -> recent(content));
+                    Future<String> task = osuRecentCache.get("recent " + content, () -> CompletableFuture.supplyAsync(() -> recent(content), pool));
                     try {
                         sentMessage.editMessage(task.get(16, TimeUnit.SECONDS)).queue();
                     } catch(Exception e) {
                         if(e instanceof TimeoutException) {
-                            task.cancel(true);
                             sentMessage.editMessage(EmoteReference.ERROR + "The osu! api seems to be taking a nap. Maybe try again later?").queue();
+                        } else if(e instanceof ExecutionException) {
+                            sentMessage.editMessage(errorMessage(e.getCause())).queue();
                         } else log.warn("Exception thrown while fetching data", e);
                     }
                 });
@@ -112,8 +119,8 @@ public class OsuStatsCmd {
         cr.registerAlias("osustats", "osu");
     }
 
+    //Failures are thrown instead of returned as a message, so they don't end up on the response cache.
     private String best(String content) {
-        String finalResponse;
         try {
             long start = System.currentTimeMillis();
             String beheaded1 = content.replace("best ", "");
@@ -146,19 +153,13 @@ public class OsuStatsCmd {
                 mods1 = "";
             }
 
-            finalResponse = String.format("**10 best osu! scores for: %s**\n```md\n%s```", osuUser.getUsername(), sb.toString());
-        } catch (JSONException jx) {
-            finalResponse = EmoteReference.ERROR + "No results found.";
-        }
-        catch(Exception e) {
-            finalResponse = EmoteReference.ERROR + "Uh-oh... seems like I just received scramble soup as a response... (Error while retrieving results)";
+            return String.format("**10 best osu! scores for: %s**\n```md\n%s```", osuUser.getUsername(), sb.toString());
+        } catch(Exception e) {
+            throw new CompletionException(e);
         }
-
-        return finalResponse;
     }
 
     private String recent(String content) {
-        String finalMessage;
         try {
             String beheaded1 = content.replace("recent ", "");
             String[] args = beheaded1.split(" ");
@@ -188,15 +189,20 @@ public class OsuStatsCmd {
             }
 
             recent.forEach(sb::append);
-            finalMessage = String.format("**10 most recent osu! scores for: %s**\n```md\n%s```", hey.getUsername(), sb.toString());
-
-        } catch (JSONException jx) {
-            finalMessage = EmoteReference.ERROR + "No results found.";
+            return String.format("**10 most recent osu! scores for: %s**\n```md\n%s```", hey.getUsername(), sb.toString());
         } catch(Exception e) {
-            finalMessage = EmoteReference.ERROR + "Uh-oh... seems like I just received scramble soup as a response... (Error while retrieving results)";
+            throw new CompletionException(e);
         }
+    }
 
-        return finalMessage;
+    private static String errorMessage(Throwable error) {
+        if(error instanceof CompletionException && error.getCause() != null)
+            error = error.getCause();
+
+        if(error instanceof JSONException)
+            return EmoteReference.ERROR + "No results found.";
+
+        return EmoteReference.ERROR + "Uh-oh... seems like I just received scramble soup as a response... (Error while retrieving results)";
     }
 
     private MessageEmbed user(String content) {
@@ -46,6 +46,7 @@ import net.kodehawa.mantarobot.utils.DiscordUtils;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.RateLimiter;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -63,7 +64,7 @@ import static net.kodehawa.mantarobot.utils.Utils.handleDefaultRatelimit;
 
 @Module
 public class PlayerCmds {
-    private final OkHttpClient client = new OkHttpClient();
+    private final OkHttpClient client = AsyncHttp.getClient();
 
     @Subscribe
     public void rep(CommandRegistry cr) {
@@ -18,11 +18,13 @@ package net.kodehawa.mantarobot.commands;
 
 import br.com.brjdevs.java.utils.texts.StringUtils;
 import com.google.common.eventbus.Subscribe;
+import gnu.trove.iterator.TLongIterator;
 import lombok.extern.slf4j.Slf4j;
 import net.dv8tion.jda.core.EmbedBuilder;
 import net.dv8tion.jda.core.MessageBuilder;
 import net.dv8tion.jda.core.Permission;
 import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
 import net.dv8tion.jda.core.entities.Message;
 import net.dv8tion.jda.core.entities.MessageEmbed;
 import net.dv8tion.jda.core.entities.User;
@@ -47,6 +49,8 @@ import net.kodehawa.mantarobot.utils.DiscordUtils;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.data.GsonDataManager;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
+import net.kodehawa.mantarobot.utils.http.ResponseCache;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -55,6 +59,8 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.*;
 import java.util.List;
 import java.util.Queue;
@@ -69,6 +75,9 @@ import static br.com.brjdevs.java.utils.collections.CollectionUtils.random;
 @Module
 public class UtilsCmds {
     private static Pattern timePattern = Pattern.compile(" -time [(\\d+)((?:h(?:our(?:s)?)?)|(?:m(?:in(?:ute(?:s)?)?)?)|(?:s(?:ec(?:ond(?:s)?)?)?))]+");
+    private static final ResponseCache dictionaryCache = new ResponseCache("dictionary", 24, 7 * 24, TimeUnit.HOURS, 1000);
+    private static final ResponseCache urbanCache = new ResponseCache("urban", 6, 24, TimeUnit.HOURS, 1000);
+    private static final ResponseCache weatherCache = new ResponseCache("weather", 10, 20, TimeUnit.MINUTES, 1000);
 
     protected static String dateGMT(Guild guild, String tz) {
         DateFormat format = new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss");
@@ -110,20 +119,26 @@ public class UtilsCmds {
 
                     try {
                         if(cacher != null) {
-                            if(cacher.cachedBirthdays.isEmpty()) {
+                            //Both lookups below have to come from the same version of the cache.
+                            BirthdayCacher.Snapshot birthdayCache = cacher.snapshot();
+                            if(birthdayCache.isEmpty()) {
                                 event.getChannel().sendMessage(EmoteReference.SAD + "Things seems a bit empty here...").queue();
                                 return;
                             }
 
-                            List<String> ids = event.getGuild().getMemberCache().stream().map(m -> m.getUser().getId()).collect(Collectors.toList());
-                            Map<String, String> guildCurrentBirthdays = new HashMap<>();
+                            Guild guild = event.getGuild();
                             Calendar calendar = Calendar.getInstance();
-                            String calendarMonth = String.valueOf(calendar.get(Calendar.MONTH) + 1);
-                            String currentMonth = (calendarMonth.length() == 1 ? 0 : "") + calendarMonth;
-
-                            for(Map.Entry<String, String> birthdays : cacher.cachedBirthdays.entrySet()) {
-                                if(ids.contains(birthdays.getKey()) && birthdays.getValue().split("-")[1].equals(currentMonth)) {
-                                    guildCurrentBirthdays.put(birthdays.getKey(), birthdays.getValue());
+                            int month = calendar.get(Calendar.MONTH) + 1;
+                            List<String> guildCurrentBirthdays = new ArrayList<>();
+
+                            //Walking the month day by day already gives us the birthdays sorted.
+                            for(int day = 1; day <= YearMonth.of(2000, month).lengthOfMonth(); day++) {
+                                for(TLongIterator it = birthdayCache.getBirthdaysOn(LocalDate.of(2000, month, day)).iterator(); it.hasNext(); ) {
+                                    long id = it.next();
+                                    Member member = guild.getMemberById(id);
+                                    if(member != null) {
+                                        guildCurrentBirthdays.add(String.format("+ %-20s : %s ", member.getEffectiveName(), birthdayCache.getBirthday(id)));
+                                    }
                                 }
                             }
 
@@ -133,10 +148,7 @@ public class UtilsCmds {
                                 return;
                             }
 
-                            String birthdays = guildCurrentBirthdays.entrySet().stream()
-                                    .sorted(Comparator.comparingInt(entry -> Integer.parseInt(entry.getValue().split("-")[0])))
-                                    .map((entry) -> String.format("+ %-20s : %s ", event.getGuild().getMemberById(entry.getKey()).getEffectiveName(), entry.getValue()))
-                                    .collect(Collectors.joining("\n"));
+                            String birthdays = String.join("\n", guildCurrentBirthdays);
 
                             List<String> parts = DiscordUtils.divideString(1000, birthdays);
                             List<String> messages = new LinkedList<>();
@@ -248,59 +260,65 @@ public class UtilsCmds {
 
                 String word = content;
 
-                JSONObject main;
-                String definition, part_of_speech, headword, example;
-
-                try {
-                    main = new JSONObject(Utils.wgetResty("http://api.pearson.com/v2/dictionaries/laes/entries?headword=" + word, event));
-                    JSONArray results = main.getJSONArray("results");
-                    JSONObject result = results.getJSONObject(0);
-                    JSONArray senses = result.getJSONArray("senses");
-
-                    headword = result.getString("headword");
-
-                    if(result.has("part_of_speech")) part_of_speech = result.getString("part_of_speech");
-                    else part_of_speech = "Not found.";
+                dictionaryCache.get(word, () -> AsyncHttp.getString("http://api.pearson.com/v2/dictionaries/laes/entries?headword=" + word)).whenComplete((json, error) -> {
+                    if(error != null || json == null) {
+                        event.getChannel().sendMessage(EmoteReference.ERROR + "No results.").queue();
+                        return;
+                    }
 
-                    if(senses.getJSONObject(0).get("definition") instanceof JSONArray)
-                        definition = senses.getJSONObject(0).getJSONArray("definition").getString(0);
-                    else
-                        definition = senses.getJSONObject(0).getString("definition");
+                    String definition, part_of_speech, headword, example;
 
                     try {
-                        if(senses.getJSONObject(0).getJSONArray("translations").getJSONObject(0).get(
-                                "example") instanceof JSONArray) {
-                            example = senses.getJSONObject(0)
-                                    .getJSONArray("translations")
-                                    .getJSONObject(0)
-                                    .getJSONArray("example")
-                                    .getJSONObject(0)
-                                    .getString("text");
-                        } else {
-                            example = senses.getJSONObject(0)
-                                    .getJSONArray("translations")
-                                    .getJSONObject(0)
-                                    .getJSONObject("example")
-                                    .getString("text");
+                        JSONObject main = new JSONObject(json);
+                        JSONArray results = main.getJSONArray("results");
+                        JSONObject result = results.getJSONObject(0);
+                        JSONArray senses = result.getJSONArray("senses");
+
+                        headword = result.getString("headword");
+
+                        if(result.has("part_of_speech")) part_of_speech = result.getString("part_of_speech");
+                        else part_of_speech = "Not found.";
+
+                        if(senses.getJSONObject(0).get("definition") instanceof JSONArray)
+                            definition = senses.getJSONObject(0).getJSONArray("definition").getString(0);
+                        else
+                            definition = senses.getJSONObject(0).getString("definition");
+
+                        try {
+                            if(senses.getJSONObject(0).getJSONArray("translations").getJSONObject(0).get(
+                                    "example") instanceof JSONArray) {
+                                example = senses.getJSONObject(0)
+                                        .getJSONArray("translations")
+                                        .getJSONObject(0)
+                                        .getJSONArray("example")
+                                        .getJSONObject(0)
+                                        .getString("text");
+                            } else {
+                                example = senses.getJSONObject(0)
+                                        .getJSONArray("translations")
+                                        .getJSONObject(0)
+                                        .getJSONObject("example")
+                                        .getString("text");
+                            }
+                        } catch(Exception e) {
+                            example = "Not found";
                         }
+
                     } catch(Exception e) {
-                        example = "Not found";
+                        event.getChannel().sendMessage(EmoteReference.ERROR + "No results.").queue();
+                        return;
                     }
 
-                } catch(Exception e) {
-                    event.getChannel().sendMessage(EmoteReference.ERROR + "No results.").queue();
-                    return;
-                }
-
-                EmbedBuilder eb = new EmbedBuilder();
-                eb.setAuthor("Definition for " + word, null, event.getAuthor().getAvatarUrl())
-                        .setThumbnail("https://upload.wikimedia.org/wikipedia/commons/thumb/5/5a/Wikt_dynamic_dictionary_logo.svg/1000px-Wikt_dynamic_dictionary_logo.svg.png")
-                        .addField("Definition", "**" + definition + "**", false)
-                        .addField("Example", "**" + example + "**", false)
-                        .setDescription(
-                                String.format("**Part of speech:** `%s`\n" + "**Headword:** `%s`\n", part_of_speech, headword));
+                    EmbedBuilder eb = new EmbedBuilder();
+                    eb.setAuthor("Definition for " + word, null, event.getAuthor().getAvatarUrl())
+                            .setThumbnail("https://upload.wikimedia.org/wikipedia/commons/thumb/5/5a/Wikt_dynamic_dictionary_logo.svg/1000px-Wikt_dynamic_dictionary_logo.svg.png")
+                            .addField("Definition", "**" + definition + "**", false)
+                            .addField("Example", "**" + example + "**", false)
+                            .setDescription(
+                                    String.format("**Part of speech:** `%s`\n" + "**Headword:** `%s`\n", part_of_speech, headword));
 
-                event.getChannel().sendMessage(eb.build()).queue();
+                    event.getChannel().sendMessage(eb.build()).queue();
+                });
             }
 
             @Override
@@ -406,7 +424,6 @@ public class UtilsCmds {
 
                 event.getChannel().sendMessage(String.format("%sI'll remind you of **%s** in %s", EmoteReference.CORRECT, toRemind, Utils.getHumanizedTime(time))).queue();
 
-                //TODO save to db
                 new Reminder.Builder()
                         .id(user.getId())
                         .reminder(toRemind)
@@ -476,24 +493,37 @@ public class UtilsCmds {
                 String commandArguments[] = content.split("->");
                 EmbedBuilder embed = new EmbedBuilder();
 
-                if(!content.isEmpty()) {
-                    String url = null;
+                if(content.isEmpty()) {
+                    onHelp(event);
+                    return;
+                }
 
-                    try {
-                        url = "http://api.urbandictionary.com/v0/define?term=" + URLEncoder.encode(commandArguments[0], "UTF-8");
-                    } catch(UnsupportedEncodingException ignored) { }
+                //This shouldn't happen, but it fucking happened.
+                if(commandArguments.length < 1) {
+                    return;
+                } else if (commandArguments.length > 2) {
+                    onHelp(event);
+                    return;
+                }
 
-                    String json = Utils.wgetResty(url, event);
-                    UrbanData data = GsonDataManager.GSON_PRETTY.fromJson(json, UrbanData.class);
+                String url;
 
-                    //This shouldn't happen, but it fucking happened.
-                    if(commandArguments.length < 1) {
-                        return;
-                    } else if (commandArguments.length > 2) {
-                        onHelp(event);
+                try {
+                    url = "http://api.urbandictionary.com/v0/define?term=" + URLEncoder.encode(commandArguments[0], "UTF-8");
+                } catch(UnsupportedEncodingException e) {
+                    onHelp(event);
+                    return;
+                }
+
+                urbanCache.get(commandArguments[0], () -> AsyncHttp.getString(url)).whenComplete((json, error) -> {
+                    if(error != null) {
+                        log.warn("Error retrieving data from Urban Dictionary", error);
+                        event.getChannel().sendMessage(EmoteReference.ERROR + "Error retrieving data from Urban Dictionary.").queue();
                         return;
                     }
 
+                    UrbanData data = GsonDataManager.GSON_PRETTY.fromJson(json, UrbanData.class);
+
                     if(data == null || data.getList() == null || data.getList().isEmpty()) {
                         event.getChannel().sendMessage(EmoteReference.ERROR + "No results.").queue();
                         return;
@@ -528,9 +558,7 @@ public class UtilsCmds {
                                 .setFooter("Information by Urban Dictionary", null);
                         event.getChannel().sendMessage(embed.build()).queue();
                     }
-                } else {
-                    onHelp(event);
-                }
+                });
             }
 
             @Override
@@ -557,51 +585,62 @@ public class UtilsCmds {
                     return;
                 }
 
-                EmbedBuilder embed = new EmbedBuilder();
+                String url;
                 try {
-                    long start = System.currentTimeMillis();
-                    WeatherData data = GsonDataManager.GSON_PRETTY.fromJson(
-                            Utils.wgetResty(
-                                    String.format(
-                                            "http://api.openweathermap.org/data/2.5/weather?q=%s&appid=%s",
-                                            URLEncoder.encode(content, "UTF-8"),
-                                            MantaroData.config().get().weatherAppId
-                                    ), event
-                            ),
-                            WeatherData.class
+                    url = String.format(
+                            "http://api.openweathermap.org/data/2.5/weather?q=%s&appid=%s",
+                            URLEncoder.encode(content, "UTF-8"),
+                            MantaroData.config().get().weatherAppId
                     );
-
-                    String countryCode = data.getSys().country;
-                    String status = data.getWeather().get(0).main;
-                    Double temp = data.getMain().getTemp();
-                    double pressure = data.getMain().getPressure();
-                    int humidity = data.getMain().getHumidity();
-                    Double ws = data.getWind().speed;
-                    int cloudiness = data.getClouds().all;
-
-                    Double finalTemperatureCelsius = temp - 273.15;
-                    Double finalTemperatureFahrenheit = temp * 9 / 5 - 459.67;
-                    Double finalWindSpeedMetric = ws * 3.6;
-                    Double finalWindSpeedImperial = ws / 0.447046;
-                    long end = System.currentTimeMillis() - start;
-
-                    embed.setColor(Color.CYAN)
-                            .setTitle(":flag_" + countryCode.toLowerCase() + ":" + " Forecast information for " + content, null)
-                            .setDescription(status + " (" + cloudiness + "% clouds)")
-                            .addField(":thermometer: Temperature", String.format("%d°C | %d°F", finalTemperatureCelsius.intValue(), finalTemperatureFahrenheit.intValue()), true)
-                            .addField(":droplet: Humidity", humidity + "%", true)
-                            .addBlankField(true)
-                            .addField(":wind_blowing_face: Wind Speed", String.format("%dkm/h | %dmph", finalWindSpeedMetric.intValue(), finalWindSpeedImperial.intValue()), true)
-                            .addField("Pressure", pressure + "hPA", true)
-                            .addBlankField(true)
-                            .setFooter("Information provided by OpenWeatherMap (Process time: " + end + "ms)", null);
-                    event.getChannel().sendMessage(embed.build()).queue();
-                } catch (NullPointerException npe) {
-                    event.getChannel().sendMessage(EmoteReference.ERROR + "Error while fetching results. (Not found?)").queue();
-                } catch (Exception e) {
-                    event.getChannel().sendMessage(EmoteReference.ERROR + "Error while fetching results. (Not found?)").queue();
-                    log.warn("Exception caught while trying to fetch weather data, maybe the API changed something?", e);
+                } catch(UnsupportedEncodingException e) {
+                    onError(event);
+                    return;
                 }
+
+                long start = System.currentTimeMillis();
+                weatherCache.get(content, () -> AsyncHttp.getString(url)).whenComplete((json, error) -> {
+                    if(error != null) {
+                        event.getChannel().sendMessage(EmoteReference.ERROR + "Error while fetching results. (Not found?)").queue();
+                        log.warn("Exception caught while trying to fetch weather data", error);
+                        return;
+                    }
+
+                    EmbedBuilder embed = new EmbedBuilder();
+                    try {
+                        WeatherData data = GsonDataManager.GSON_PRETTY.fromJson(json, WeatherData.class);
+
+                        String countryCode = data.getSys().country;
+                        String status = data.getWeather().get(0).main;
+                        Double temp = data.getMain().getTemp();
+                        double pressure = data.getMain().getPressure();
+                        int humidity = data.getMain().getHumidity();
+                        Double ws = data.getWind().speed;
+                        int cloudiness = data.getClouds().all;
+
+                        Double finalTemperatureCelsius = temp - 273.15;
+                        Double finalTemperatureFahrenheit = temp * 9 / 5 - 459.67;
+                        Double finalWindSpeedMetric = ws * 3.6;
+                        Double finalWindSpeedImperial = ws / 0.447046;
+                        long end = System.currentTimeMillis() - start;
+
+                        embed.setColor(Color.CYAN)
+                                .setTitle(":flag_" + countryCode.toLowerCase() + ":" + " Forecast information for " + content, null)
+                                .setDescription(status + " (" + cloudiness + "% clouds)")
+                                .addField(":thermometer: Temperature", String.format("%d°C | %d°F", finalTemperatureCelsius.intValue(), finalTemperatureFahrenheit.intValue()), true)
+                                .addField(":droplet: Humidity", humidity + "%", true)
+                                .addBlankField(true)
+                                .addField(":wind_blowing_face: Wind Speed", String.format("%dkm/h | %dmph", finalWindSpeedMetric.intValue(), finalWindSpeedImperial.intValue()), true)
+                                .addField("Pressure", pressure + "hPA", true)
+                                .addBlankField(true)
+                                .setFooter("Information provided by OpenWeatherMap (Process time: " + end + "ms)", null);
+                        event.getChannel().sendMessage(embed.build()).queue();
+                    } catch (NullPointerException npe) {
+                        event.getChannel().sendMessage(EmoteReference.ERROR + "Error while fetching results. (Not found?)").queue();
+                    } catch (Exception e) {
+                        event.getChannel().sendMessage(EmoteReference.ERROR + "Error while fetching results. (Not found?)").queue();
+                        log.warn("Exception caught while trying to fetch weather data, maybe the API changed something?", e);
+                    }
+                });
             }
 
             @Override
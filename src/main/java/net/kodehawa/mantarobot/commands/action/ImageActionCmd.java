@@ -68,9 +68,10 @@ public class ImageActionCmd extends NoArgsCommand {
         this.color = color;
         this.imageName = imageName;
         this.format = format;
-        this.images = Collections.singletonList(weebapi.getRandomImageByType(type, false, "gif").getKey());
+        this.images = Collections.emptyList();
         this.lonelyLine = lonelyLine;
         this.type = type;
+        ImagePrefetcher.getInstance().warm(type, "gif");
     }
 
     public ImageActionCmd(String name, String desc, Color color, String imageName, String format, String type, String lonelyLine, boolean swap) {
@@ -80,29 +81,28 @@ public class ImageActionCmd extends NoArgsCommand {
         this.color = color;
         this.imageName = imageName;
         this.format = format;
-        this.images = Collections.singletonList(weebapi.getRandomImageByType(type, false, "gif").getKey());
+        this.images = Collections.emptyList();
         this.lonelyLine = lonelyLine;
         this.swapNames = swap;
         this.type = type;
+        ImagePrefetcher.getInstance().warm(type, "gif");
     }
 
     @Override
     protected void call(GuildMessageReceivedEvent event, String content) {
-        String random = "";
+        String random;
         String id = "";
-        if(images.size() == 1) {
-            if(type != null) {
-                Pair<String, String> result = weebapi.getRandomImageByType(type, false, "gif");
-                String image = result.getKey();
-                id = result.getValue();
-
-                if(image == null) {
-                    event.getChannel().sendMessage(EmoteReference.SAD + "We got an error while retrieving the next gif for this action...").queue();
-                    return;
-                }
-
-                images = Collections.singletonList(image);
-                random = images.get(0); //Guaranteed random selection :^).
+        if(type != null) {
+            Pair<String, String> result = ImagePrefetcher.getInstance().next(type, "gif");
+            if(result == null)
+                result = weebapi.getRandomImageByType(type, false, "gif");
+
+            random = result.getKey();
+            id = result.getValue();
+
+            if(random == null) {
+                event.getChannel().sendMessage(EmoteReference.SAD + "We got an error while retrieving the next gif for this action...").queue();
+                return;
             }
         } else {
             random = random(images);
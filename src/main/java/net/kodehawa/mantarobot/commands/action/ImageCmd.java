@@ -68,9 +68,10 @@ public class ImageCmd extends NoArgsCommand {
         this.name = name;
         this.desc = desc;
         this.imageName = imageName;
-        this.images = Collections.singletonList(weebapi.getRandomImageByType(type, false, null).getKey());
+        this.images = Collections.emptyList();
         this.toSend = toSend;
         this.type = type;
+        ImagePrefetcher.getInstance().warm(type, null);
     }
 
     public ImageCmd(String name, String desc, String imageName, String type, String toSend, boolean noMentions) {
@@ -78,24 +79,29 @@ public class ImageCmd extends NoArgsCommand {
         this.name = name;
         this.desc = desc;
         this.imageName = imageName;
-        this.images = Collections.singletonList(weebapi.getRandomImageByType(type, false, null).getKey());
+        this.images = Collections.emptyList();
         this.toSend = toSend;
         this.noMentions = noMentions;
         this.type = type;
+        ImagePrefetcher.getInstance().warm(type, null);
     }
 
     @Override
     protected void call(GuildMessageReceivedEvent event, String content) {
         String random;
         String id = "";
-        if(images.size() == 1) {
-            if(type != null) {
-                Pair<String, String> result = weebapi.getRandomImageByType(type, false, null);
-                images = Collections.singletonList(result.getKey());
-                id = result.getValue();
-            }
+        if(type != null) {
+            Pair<String, String> result = ImagePrefetcher.getInstance().next(type, null);
+            if(result == null)
+                result = weebapi.getRandomImageByType(type, false, null);
+
+            random = result.getKey();
+            id = result.getValue();
 
-            random = images.get(0); //Guaranteed random selection :^).
+            if(random == null) {
+                event.getChannel().sendMessage(EmoteReference.SAD + "We got an error while retrieving the next image for this action...").queue();
+                return;
+            }
         } else {
             random = random(images);
         }
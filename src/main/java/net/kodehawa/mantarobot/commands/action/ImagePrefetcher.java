@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.action;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.timgroup.statsd.StatsDClient;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.utils.cache.URLCache;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a few random weeb.sh images of every type ready, so image commands don't have to wait on the API to answer.
+ * Every image is served once. Whenever a buffer drops below the low watermark it gets refilled in the background, and the images
+ * are downloaded into the {@link URLCache} before being added, so sending them doesn't have to wait on the network either.
+ * <p>
+ * When weeb.sh (or the image host) fails, prefetching backs off exponentially for every type, and the first refill after a
+ * backoff only asks for a single image to check whether it's back, instead of hammering it with a full refill every command.
+ */
+@Slf4j
+public class ImagePrefetcher {
+    private static final ImagePrefetcher instance = new ImagePrefetcher(new WeebAPIRequester(), new URLCache(20), 10, 3);
+    private static final long MIN_BACKOFF = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(5);
+
+    private final Map<String, Buffer> buffers = new ConcurrentHashMap<>();
+    private final URLCache cache;
+    private final int capacity;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2,
+            new ThreadFactoryBuilder().setNameFormat("ImagePrefetcher-%d").setDaemon(true).build()
+    );
+    private final int lowWatermark;
+    private final WeebAPIRequester weebapi;
+    //Failed refills in a row, shared by every type as they all hit the same API.
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long backoffUntil;
+
+    /**
+     * @param weebapi      The requester used to get the images.
+     * @param cache        Where images are downloaded to before being added.
+     * @param capacity     How many images of each type are kept ready.
+     * @param lowWatermark A buffer is refilled as soon as it has less images than this.
+     */
+    public ImagePrefetcher(WeebAPIRequester weebapi, URLCache cache, int capacity, int lowWatermark) {
+        this.weebapi = weebapi;
+        this.cache = cache;
+        this.capacity = capacity;
+        this.lowWatermark = lowWatermark;
+    }
+
+    public static ImagePrefetcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * Takes the next prefetched image of a type.
+     *
+     * @param type     The weeb.sh type.
+     * @param filetype The file type, or null for any.
+     * @return The url and id of the image, or null if none is ready yet (the caller has to request one itself).
+     */
+    public Pair<String, String> next(String type, String filetype) {
+        Buffer buffer = buffer(type, filetype);
+        Pair<String, String> image = buffer.images.poll();
+        if(image != null)
+            buffer.size.decrementAndGet();
+
+        refill(type, filetype, buffer);
+        count(type, image == null ? "miss" : "hit");
+        return image;
+    }
+
+    /**
+     * Starts filling the buffer of a type without waiting for it, so the first commands after startup are served from memory too.
+     */
+    public void warm(String type, String filetype) {
+        refill(type, filetype, buffer(type, filetype));
+    }
+
+    private Buffer buffer(String type, String filetype) {
+        return buffers.computeIfAbsent(type + ':' + filetype, k -> new Buffer());
+    }
+
+    private void refill(String type, String filetype, Buffer buffer) {
+        if(buffer.size.get() >= lowWatermark || System.currentTimeMillis() < backoffUntil || !buffer.refilling.compareAndSet(false, true))
+            return;
+
+        //Just check whether it's back before asking for a full refill.
+        int missing = failures.get() > 0 ? 1 : capacity - buffer.size.get();
+        AtomicInteger remaining = new AtomicInteger(missing);
+        AtomicBoolean failed = new AtomicBoolean();
+        for(int i = 0; i < missing; i++) {
+            weebapi.getRandomImageByTypeAsync(type, false, filetype)
+                    .thenAcceptAsync(image -> {
+                        if(image.getKey() == null)
+                            throw new IllegalStateException("No image returned");
+
+                        try {
+                            cache.prefetch(image.getKey());
+                        } catch(IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+
+                        buffer.images.add(image);
+                        buffer.size.incrementAndGet();
+                    }, executor)
+                    .whenComplete((ignored, error) -> {
+                        if(error != null) {
+                            failed.set(true);
+                            log.debug("Error prefetching a {} image", type, error);
+                        }
+
+                        if(remaining.decrementAndGet() == 0) {
+                            finished(type, failed.get());
+                            buffer.refilling.set(false);
+                        }
+                    });
+        }
+    }
+
+    private void finished(String type, boolean failed) {
+        if(!failed) {
+            failures.set(0);
+            return;
+        }
+
+        int inARow = failures.incrementAndGet();
+        long backoff = Math.min(MIN_BACKOFF << Math.min(inARow - 1, 16), MAX_BACKOFF);
+        backoffUntil = System.currentTimeMillis() + backoff;
+        count(type, "backoff");
+        //Only the first failure in a row, the rest would just be noise while it's down.
+        if(inARow == 1)
+            log.warn("Couldn't prefetch {} images, backing off", type);
+    }
+
+    private void count(String type, String result) {
+        StatsDClient statsClient = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getStatsClient();
+        if(statsClient != null)
+            statsClient.increment("image_prefetch", "type:" + type, "result:" + result);
+    }
+
+    private static class Buffer {
+        private final Queue<Pair<String, String>> images = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private final AtomicInteger size = new AtomicInteger();
+    }
+}
@@ -20,6 +20,7 @@ import lombok.extern.slf4j.Slf4j;
 import net.kodehawa.mantarobot.MantaroInfo;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.utils.Utils;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -27,6 +28,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.json.JSONObject;
 
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class WeebAPIRequester {
@@ -35,20 +37,10 @@ public class WeebAPIRequester {
     private final String API_BASE_URL = "https://api.weeb.sh/images";
     private final String AUTH_HEADER = "Bearer " + MantaroData.config().get().weebapiKey;
     private final String RANDOM_IMAGE = "/random";
-    private final OkHttpClient httpClient = new OkHttpClient();
+    private final OkHttpClient httpClient = AsyncHttp.getClient();
 
     public Pair<String, String> getRandomImageByType(String type, boolean nsfw, String filetype) {
-        HashMap<String, Object> queryParams = new HashMap<>();
-        queryParams.put("type", type);
-        if(nsfw)
-            queryParams.put("nsfw", "only");
-        else
-            queryParams.put("nsfw", false);
-
-        if(filetype != null)
-            queryParams.put("filetype", filetype);
-
-        String r = request(RANDOM_IMAGE, Utils.urlEncodeUTF8(queryParams));
+        String r = request(RANDOM_IMAGE, typeQuery(type, nsfw, filetype));
         if(r == null)
             return Pair.of(null, null);
 
@@ -56,6 +48,21 @@ public class WeebAPIRequester {
         return Pair.of(object.getString("url"), object.getString("id"));
     }
 
+    /**
+     * Same as {@link #getRandomImageByType(String, boolean, String)}, but without blocking the calling thread.
+     *
+     * @return A future that completes with the url and id of the image, or exceptionally if the request failed.
+     */
+    public CompletableFuture<Pair<String, String>> getRandomImageByTypeAsync(String type, boolean nsfw, String filetype) {
+        return AsyncHttp.getString(buildRequest(RANDOM_IMAGE, typeQuery(type, nsfw, filetype))).thenApply(r -> {
+            if(r == null)
+                return Pair.of(null, null);
+
+            JSONObject object = new JSONObject(r);
+            return Pair.of(object.getString("url"), object.getString("id"));
+        });
+    }
+
     public String getRandomImageByTags(String tags, boolean nsfw, String filetype) {
         HashMap<String, Object> queryParams = new HashMap<>();
         queryParams.put("tags", tags);
@@ -91,21 +98,37 @@ public class WeebAPIRequester {
         return new JSONObject(r);
     }
 
+    private String typeQuery(String type, boolean nsfw, String filetype) {
+        HashMap<String, Object> queryParams = new HashMap<>();
+        queryParams.put("type", type);
+        if(nsfw)
+            queryParams.put("nsfw", "only");
+        else
+            queryParams.put("nsfw", false);
+
+        if(filetype != null)
+            queryParams.put("filetype", filetype);
+
+        return Utils.urlEncodeUTF8(queryParams);
+    }
+
+    private Request buildRequest(String endpoint, String e) {
+        StringBuilder builder = new StringBuilder(endpoint);
+        if(e != null) {
+            builder.append("?");
+            builder.append(e);
+        }
+
+        return new Request.Builder()
+                .url(API_BASE_URL + builder.toString())
+                .addHeader("User-Agent", MantaroInfo.USER_AGENT)
+                .addHeader("Authorization", AUTH_HEADER)
+                .build();
+    }
+
     private String request(String endpoint, String e) {
         try {
-            StringBuilder builder = new StringBuilder(endpoint);
-            if(e != null) {
-                builder.append("?");
-                builder.append(e);
-            }
-
-            Request r = new Request.Builder()
-                    .url(API_BASE_URL + builder.toString())
-                    .addHeader("User-Agent", MantaroInfo.USER_AGENT)
-                    .addHeader("Authorization", AUTH_HEADER)
-                    .build();
-
-            Response r1 = httpClient.newCall(r).execute();
+            Response r1 = httpClient.newCall(buildRequest(endpoint, e)).execute();
             String response = r1.body().string();
 
             r1.close();
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.custom;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.CustomCommand;
+import net.kodehawa.mantarobot.utils.data.GsonDataManager;
+import org.redisson.api.RTopic;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Per-guild index of custom commands. A guild's commands are loaded the first time something looks them up and dropped an
+ * hour after being loaded, so only the guilds that actually use custom commands are kept in memory, and a change this node
+ * missed doesn't stick around for longer than that.
+ * <p>
+ * Every change made through this index is applied locally and published on redis, so other nodes that have the guild loaded apply
+ * the same change instead of keeping a stale copy. Changes that arrive while a guild is being loaded are kept aside and applied
+ * on top of whatever got loaded, as the load might have read the database before they were saved.
+ */
+@Slf4j
+public class CustomCommandIndex {
+    private static final String TOPIC = "custom-commands";
+
+    private final Cache<Long, GuildCommands> guilds;
+    //Guilds that are being loaded, by id. Only touched while holding the lock of this index.
+    private final Map<Long, Load> loading = new HashMap<>();
+    private final Function<String, List<CustomCommand>> loader;
+    //Tells our own messages apart from the ones published by other nodes.
+    private final String node = UUID.randomUUID().toString();
+    private final RTopic<String> topic;
+
+    /**
+     * @param loader Loads every custom command of a guild, by the guild id.
+     */
+    public CustomCommandIndex(Function<String, List<CustomCommand>> loader) {
+        this.loader = loader;
+        this.guilds = CacheBuilder.newBuilder()
+                .expireAfterWrite(1, TimeUnit.HOURS)
+                .build();
+
+        if(!MantaroData.config().get().redis.enabled) {
+            this.topic = null;
+            return;
+        }
+
+        this.topic = MantaroData.redisson().getTopic(TOPIC, StringCodec.INSTANCE);
+        topic.addListener((channel, message) -> {
+            try {
+                Update update = GsonDataManager.gson(false).fromJson(message, Update.class);
+                if(!node.equals(update.node))
+                    apply(update);
+            } catch(Exception e) {
+                log.warn("Invalid custom command update: {}", message, e);
+            }
+        });
+    }
+
+    /**
+     * @param guildId The id of the guild.
+     * @param name    The name of the command.
+     * @return The responses of the command, or null if the guild doesn't have a command with that name.
+     */
+    public String[] get(long guildId, String name) {
+        return commands(guildId).get(name);
+    }
+
+    public boolean contains(long guildId, String name) {
+        return get(guildId, name) != null;
+    }
+
+    /**
+     * @param guildId The id of the guild.
+     * @return The names of every custom command of the guild, sorted.
+     */
+    public List<String> names(long guildId) {
+        return Arrays.asList(commands(guildId).names);
+    }
+
+    /**
+     * Adds or replaces a command. This doesn't save it, it has to be saved on the database separately.
+     */
+    public void put(long guildId, String name, List<String> values) {
+        publish(new Update(node, guildId, name, values.toArray(new String[0])));
+    }
+
+    /**
+     * Removes a command. This doesn't delete it, it has to be deleted from the database separately.
+     */
+    public void remove(long guildId, String name) {
+        publish(new Update(node, guildId, name, null));
+    }
+
+    /**
+     * Removes every command of a guild. This doesn't delete them, they have to be deleted from the database separately.
+     */
+    public void clear(long guildId) {
+        publish(new Update(node, guildId, null, null));
+    }
+
+    public long size() {
+        return guilds.size();
+    }
+
+    private void publish(Update update) {
+        //Make sure it's loaded first, so the change isn't lost on a guild that wasn't loaded yet.
+        commands(update.guild);
+        apply(update);
+
+        if(topic != null)
+            topic.publishAsync(GsonDataManager.gson(false).toJson(update));
+    }
+
+    //Loads the guild if needed. Only one thread loads a given guild, everyone else asking for it at the same time waits for it.
+    private GuildCommands commands(long guildId) {
+        GuildCommands commands = guilds.getIfPresent(guildId);
+        if(commands != null)
+            return commands;
+
+        Load load;
+        boolean owner;
+        synchronized(this) {
+            commands = guilds.getIfPresent(guildId);
+            if(commands != null)
+                return commands;
+
+            load = loading.get(guildId);
+            owner = load == null;
+            if(owner) {
+                load = new Load();
+                loading.put(guildId, load);
+            }
+        }
+
+        if(!owner)
+            return load.result.join();
+
+        try {
+            GuildCommands loaded = GuildCommands.of(loader.apply(String.valueOf(guildId)));
+            synchronized(this) {
+                for(Update update : load.received) {
+                    loaded = update.applyTo(loaded);
+                }
+
+                guilds.put(guildId, loaded);
+                loading.remove(guildId);
+            }
+
+            load.result.complete(loaded);
+            return loaded;
+        } catch(RuntimeException e) {
+            synchronized(this) {
+                loading.remove(guildId);
+            }
+
+            load.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    //Only touches guilds that are loaded or being loaded, the rest will read the change from the database when they get loaded.
+    private synchronized void apply(Update update) {
+        Load load = loading.get(update.guild);
+        if(load != null) {
+            load.received.add(update);
+            return;
+        }
+
+        guilds.asMap().computeIfPresent(update.guild, (id, commands) -> update.applyTo(commands));
+    }
+
+    private static class Load {
+        private final List<Update> received = new ArrayList<>();
+        private final CompletableFuture<GuildCommands> result = new CompletableFuture<>();
+    }
+
+    //Names are kept sorted, so looking one up is a binary search over a single array. Never modified, changes build a new one.
+    private static class GuildCommands {
+        private static final GuildCommands EMPTY = new GuildCommands(new String[0], new String[0][]);
+
+        private final String[] names;
+        private final String[][] responses;
+
+        private GuildCommands(String[] names, String[][] responses) {
+            this.names = names;
+            this.responses = responses;
+        }
+
+        private static GuildCommands of(List<CustomCommand> commands) {
+            if(commands.isEmpty())
+                return EMPTY;
+
+            List<CustomCommand> sorted = new ArrayList<>(commands);
+            sorted.sort(Comparator.comparing(CustomCommand::getName));
+            String[] names = new String[sorted.size()];
+            String[][] responses = new String[sorted.size()][];
+            for(int i = 0; i < names.length; i++) {
+                names[i] = sorted.get(i).getName();
+                responses[i] = sorted.get(i).getValues().toArray(new String[0]);
+            }
+
+            return new GuildCommands(names, responses);
+        }
+
+        private String[] get(String name) {
+            int i = Arrays.binarySearch(names, name);
+            return i < 0 ? null : responses[i];
+        }
+
+        private GuildCommands with(String name, String[] values) {
+            int i = Arrays.binarySearch(names, name);
+            if(i >= 0) {
+                String[][] newResponses = responses.clone();
+                newResponses[i] = values;
+                return new GuildCommands(names, newResponses);
+            }
+
+            int at = -i - 1;
+            String[] newNames = new String[names.length + 1];
+            String[][] newResponses = new String[names.length + 1][];
+            System.arraycopy(names, 0, newNames, 0, at);
+            System.arraycopy(responses, 0, newResponses, 0, at);
+            newNames[at] = name;
+            newResponses[at] = values;
+            System.arraycopy(names, at, newNames, at + 1, names.length - at);
+            System.arraycopy(responses, at, newResponses, at + 1, names.length - at);
+            return new GuildCommands(newNames, newResponses);
+        }
+
+        private GuildCommands without(String name) {
+            int i = Arrays.binarySearch(names, name);
+            if(i < 0)
+                return this;
+
+            String[] newNames = new String[names.length - 1];
+            String[][] newResponses = new String[names.length - 1][];
+            System.arraycopy(names, 0, newNames, 0, i);
+            System.arraycopy(responses, 0, newResponses, 0, i);
+            System.arraycopy(names, i + 1, newNames, i, names.length - i - 1);
+            System.arraycopy(responses, i + 1, newResponses, i, names.length - i - 1);
+            return new GuildCommands(newNames, newResponses);
+        }
+    }
+
+    //A change to a guild's commands. No name means every command got removed, no values means the command got removed.
+    private static class Update {
+        private long guild;
+        private String name;
+        private String node;
+        private String[] values;
+
+        private Update(String node, long guild, String name, String[] values) {
+            this.node = node;
+            this.guild = guild;
+            this.name = name;
+            this.values = values;
+        }
+
+        private GuildCommands applyTo(GuildCommands commands) {
+            if(name == null)
+                return GuildCommands.EMPTY;
+
+            return values == null ? commands.without(name) : commands.with(name, values);
+        }
+    }
+}
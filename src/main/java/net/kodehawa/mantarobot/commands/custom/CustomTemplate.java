@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.custom;
+
+import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A custom command response, parsed once into literals and {@code $(variable)} nodes.
+ * Rendering only resolves the variables the response references (see {@link TemplateVariables}), and then runs the
+ * {@code @function{arg;arg}} calls of the result through {@link ConditionalCustoms#resolve(String, int)}, exactly like
+ * responses were always resolved, so functions keep seeing variable values as part of the text.
+ * <p>
+ * Anything that doesn't parse as a variable is kept as literal text.
+ */
+public class CustomTemplate {
+    private final Node[] nodes;
+    //Set when the response has no variables, so rendering it is free. Functions don't depend on the event, so they're resolved once.
+    private final String constant;
+
+    private CustomTemplate(List<Node> nodes) {
+        this.nodes = nodes.toArray(new Node[0]);
+        if(nodes.isEmpty())
+            this.constant = "";
+        else if(nodes.size() == 1 && nodes.get(0) instanceof Literal)
+            this.constant = ConditionalCustoms.resolve(((Literal) nodes.get(0)).text, 0);
+        else
+            this.constant = null;
+    }
+
+    public static CustomTemplate parse(String source) {
+        return new CustomTemplate(new Parser(source).parse());
+    }
+
+    public String render(GuildMessageReceivedEvent event) {
+        if(constant != null)
+            return constant;
+
+        Context context = new Context(event);
+        StringBuilder out = new StringBuilder();
+        for(Node node : nodes) {
+            node.render(out, context);
+        }
+
+        return ConditionalCustoms.resolve(out.toString(), 0);
+    }
+
+    private interface Node {
+        void render(StringBuilder out, Context context);
+    }
+
+    private static class Context {
+        private final GuildMessageReceivedEvent event;
+        //Only created if a variable gets used, most responses don't repeat them.
+        private Map<String, String> resolved;
+
+        private Context(GuildMessageReceivedEvent event) {
+            this.event = event;
+        }
+
+        private String variable(String key) {
+            if(resolved == null)
+                resolved = new HashMap<>();
+
+            String value = resolved.get(key);
+            if(value == null) {
+                value = TemplateVariables.resolve(key, event);
+                //Unknown variables render as their own name, like they always did.
+                if(value == null)
+                    value = key;
+
+                resolved.put(key, value);
+            }
+
+            return value;
+        }
+    }
+
+    private static class Literal implements Node {
+        private final String text;
+
+        private Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void render(StringBuilder out, Context context) {
+            out.append(text);
+        }
+    }
+
+    private static class Variable implements Node {
+        private final String key;
+
+        private Variable(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void render(StringBuilder out, Context context) {
+            out.append(context.variable(key));
+        }
+    }
+
+    private static class Parser {
+        private final String source;
+        private int pos;
+
+        private Parser(String source) {
+            this.source = source;
+        }
+
+        private List<Node> parse() {
+            List<Node> nodes = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+
+            while(pos < source.length()) {
+                char c = source.charAt(pos);
+                if(c == '$') {
+                    String key = variableKey();
+                    if(key != null) {
+                        flush(literal, nodes);
+                        nodes.add(new Variable(key));
+                        pos += key.length() + 3;
+                        continue;
+                    }
+                }
+
+                literal.append(c);
+                pos++;
+            }
+
+            flush(literal, nodes);
+            return nodes;
+        }
+
+        //$(key), where the key is made of letters, digits and dots.
+        private String variableKey() {
+            if(pos + 1 >= source.length() || source.charAt(pos + 1) != '(')
+                return null;
+
+            int end = pos + 2;
+            while(end < source.length() && isKeyChar(source.charAt(end))) end++;
+
+            if(end == pos + 2 || end >= source.length() || source.charAt(end) != ')')
+                return null;
+
+            return source.substring(pos + 2, end);
+        }
+
+        private static boolean isKeyChar(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.';
+        }
+
+        private static void flush(StringBuilder literal, List<Node> nodes) {
+            if(literal.length() == 0)
+                return;
+
+            nodes.add(new Literal(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.custom;
+
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static net.kodehawa.mantarobot.utils.StringUtils.splitArgs;
+import static org.apache.commons.lang3.StringUtils.capitalize;
+
+/**
+ * The {@code $(event.*)} variables custom commands can use, with the same keys {@link Mapifier#map(String, Map, GuildMessageReceivedEvent)}
+ * produces. Each one is only computed when a response actually references it.
+ */
+public class TemplateVariables {
+    private static final Map<String, Function<GuildMessageReceivedEvent, String>> resolvers = new HashMap<>();
+
+    static {
+        resolvers.put("event", event -> event.getMember().getAsMention() + "@" + event.getChannel().getAsMention());
+        channel("event.channel", GuildMessageReceivedEvent::getChannel);
+        guild("event.guild", GuildMessageReceivedEvent::getGuild);
+        member("event.me", event -> event.getGuild().getSelfMember());
+        member("event.author", GuildMessageReceivedEvent::getMember);
+
+        resolvers.put("event.message", event -> splitArgs(event.getMessage().getContentRaw(), 2)[1]);
+        resolvers.put("event.message.raw", event -> splitArgs(event.getMessage().getContentRaw(), 2)[1]);
+        resolvers.put("event.message.textual", event -> splitArgs(event.getMessage().getContentDisplay(), 2)[1]);
+        resolvers.put("event.message.stripped", event -> splitArgs(event.getMessage().getContentStripped(), 2)[1]);
+    }
+
+    /**
+     * @param key   The key of the variable, without the surrounding {@code $()}.
+     * @param event The event that triggered the command.
+     * @return The value of the variable, or null if there's no variable with that key.
+     */
+    public static String resolve(String key, GuildMessageReceivedEvent event) {
+        Function<GuildMessageReceivedEvent, String> resolver = resolvers.get(key);
+        if(resolver == null)
+            return null;
+
+        String value = resolver.apply(event);
+        return value == null ? "" : value;
+    }
+
+    private static void channel(String prefix, Function<GuildMessageReceivedEvent, TextChannel> channel) {
+        resolvers.put(prefix, event -> channel.apply(event).getAsMention());
+        resolvers.put(prefix + ".topic", event -> channel.apply(event).getTopic());
+        resolvers.put(prefix + ".name", event -> channel.apply(event).getName());
+        resolvers.put(prefix + ".id", event -> channel.apply(event).getId());
+        resolvers.put(prefix + ".mention", event -> channel.apply(event).getAsMention());
+    }
+
+    private static void guild(String prefix, Function<GuildMessageReceivedEvent, Guild> guild) {
+        resolvers.put(prefix, event -> guild.apply(event).getName());
+        resolvers.put(prefix + ".name", event -> guild.apply(event).getName());
+        member(prefix + ".owner", event -> guild.apply(event).getOwner());
+        resolvers.put(prefix + ".region", event -> guild.apply(event).getRegion().getName());
+        //The size of the cache view, without copying every member into a list.
+        resolvers.put(prefix + ".totalusers", event -> String.valueOf(guild.apply(event).getMemberCache().size()));
+    }
+
+    private static void member(String prefix, Function<GuildMessageReceivedEvent, Member> member) {
+        resolvers.put(prefix, event -> member.apply(event).getAsMention());
+        resolvers.put(prefix + ".username", event -> member.apply(event).getUser().getName());
+        resolvers.put(prefix + ".discriminator", event -> member.apply(event).getUser().getDiscriminator());
+        resolvers.put(prefix + ".name", event -> member.apply(event).getEffectiveName());
+        resolvers.put(prefix + ".game", event -> member.apply(event).getGame() != null ? member.apply(event).getGame().getName() : "None");
+        resolvers.put(prefix + ".status", event -> capitalize(member.apply(event).getOnlineStatus().getKey()));
+        resolvers.put(prefix + ".mention", event -> member.apply(event).getAsMention());
+        resolvers.put(prefix + ".avatar", event -> member.apply(event).getUser().getEffectiveAvatarUrl());
+        resolvers.put(prefix + ".id", event -> member.apply(event).getUser().getId());
+    }
+}
@@ -28,14 +28,16 @@ import net.kodehawa.mantarobot.commands.game.core.ImageGame;
 import net.kodehawa.mantarobot.commands.info.stats.manager.GameStatsManager;
 import net.kodehawa.mantarobot.core.listeners.operations.InteractiveOperations;
 import net.kodehawa.mantarobot.core.listeners.operations.core.InteractiveOperation;
-import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.data.DataManager;
 import net.kodehawa.mantarobot.utils.data.SimpleFileDataManager;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
 
+import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j(topic = "Game [Character]")
 public class Character extends ImageGame {
@@ -76,13 +78,35 @@ public class Character extends ImageGame {
 
     @Override
     public boolean onStart(GameLobby lobby) {
+        return onStartAsync(lobby).join();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> onStartAsync(GameLobby lobby) {
+        GameStatsManager.log(name());
+        characterNameL = new ArrayList<>();
+        characterName = CollectionUtils.random(NAMES.get());
+        String url;
+        try {
+            url = String.format("https://anilist.co/api/character/search/%1s?access_token=%2s", URLEncoder.encode(characterName, "UTF-8"), authToken);
+        } catch(UnsupportedEncodingException e) {
+            lobby.getChannel().sendMessage(EmoteReference.ERROR + "Error while setting up a game.").queue();
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return AsyncHttp.getString(url).handle((json, error) -> {
+            if(error != null) {
+                lobby.getChannel().sendMessage(EmoteReference.ERROR + "Error while setting up a game.").queue();
+                log.warn("Exception while setting up a game", error);
+                return false;
+            }
+
+            return setup(lobby, json);
+        });
+    }
+
+    private boolean setup(GameLobby lobby, String json) {
         try {
-            GameStatsManager.log(name());
-            characterNameL = new ArrayList<>();
-            characterName = CollectionUtils.random(NAMES.get());
-            String url = String.format("https://anilist.co/api/character/search/%1s?access_token=%2s", URLEncoder.encode(characterName, "UTF-8"),
-                    authToken);
-            String json = Utils.wget(url, null);
             CharacterData character = CharacterData.fromJsonFirst(json);
             String imageUrl = character.getMedImageUrl();
             //Allow for replying with only the first name.
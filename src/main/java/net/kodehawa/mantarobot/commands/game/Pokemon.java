@@ -25,11 +25,12 @@ import net.kodehawa.mantarobot.core.listeners.operations.InteractiveOperations;
 import net.kodehawa.mantarobot.core.listeners.operations.core.InteractiveOperation;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
 import net.kodehawa.mantarobot.utils.data.GsonDataManager;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j(topic = "Game [Pokemon Trivia]")
 public class Pokemon extends ImageGame {
@@ -66,9 +67,26 @@ public class Pokemon extends ImageGame {
     }
 
     public boolean onStart(GameLobby lobby) {
+        return onStartAsync(lobby).join();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> onStartAsync(GameLobby lobby) {
+        GameStatsManager.log(name());
+        return AsyncHttp.getString(config.apiTwoUrl + "/mantaroapi/pokemon/random").handle((json, error) -> {
+            if(error != null) {
+                lobby.getChannel().sendMessage(EmoteReference.ERROR + "Error while setting up a game.").queue();
+                log.warn("Exception while setting up a game", error);
+                return false;
+            }
+
+            return setup(lobby, json);
+        });
+    }
+
+    private boolean setup(GameLobby lobby, String json) {
         try {
-            GameStatsManager.log(name());
-            PokemonGameData data = GsonDataManager.GSON_PRETTY.fromJson(Utils.wgetResty(config.apiTwoUrl + "/mantaroapi/pokemon/random", null), PokemonGameData.class);
+            PokemonGameData data = GsonDataManager.GSON_PRETTY.fromJson(json, PokemonGameData.class);
             expectedAnswer = data.getNames();
             sendEmbedImage(lobby.getChannel(), data.getImage(), eb ->
                     eb.setTitle("Who's that pokemon?", null)
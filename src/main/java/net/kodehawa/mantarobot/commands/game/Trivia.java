@@ -26,6 +26,7 @@ import net.kodehawa.mantarobot.core.listeners.operations.InteractiveOperations;
 import net.kodehawa.mantarobot.core.listeners.operations.core.InteractiveOperation;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
 import org.json.JSONObject;
 
 import java.nio.charset.StandardCharsets;
@@ -33,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Slf4j(topic = "Game [Trivia]")
@@ -50,14 +52,23 @@ public class Trivia extends Game<String> {
 
     @Override
     public boolean onStart(GameLobby lobby) {
-        try {
-            String json = Utils.wget(OTDB_URL + (difficulty == null ? "" : "&difficulty=" + difficulty), null);
+        return onStartAsync(lobby).join();
+    }
 
-            if(json == null) {
+    @Override
+    public CompletableFuture<Boolean> onStartAsync(GameLobby lobby) {
+        return AsyncHttp.getString(OTDB_URL + (difficulty == null ? "" : "&difficulty=" + difficulty)).handle((json, error) -> {
+            if(error != null || json == null) {
                 lobby.getChannel().sendMessage(EmoteReference.ERROR + "Error while starting trivia. Seemingly Open Trivia DB is having trouble.").queue();
                 return false;
             }
 
+            return setup(lobby, json);
+        });
+    }
+
+    private boolean setup(GameLobby lobby, String json) {
+        try {
             GameStatsManager.log(name());
             EmbedBuilder eb = new EmbedBuilder();
             JSONObject ob = new JSONObject(json);
@@ -28,6 +28,7 @@ import net.kodehawa.mantarobot.db.entities.Player;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 public abstract class Game<T> {
@@ -39,6 +40,17 @@ public abstract class Game<T> {
 
     public abstract boolean onStart(GameLobby lobby);
 
+    /**
+     * Starts the game without blocking the calling thread. This is what {@link GameLobby} uses.
+     * Games that have to fetch something before they can start should override this, by default it just calls {@link #onStart(GameLobby)}.
+     *
+     * @param lobby The lobby the game is being started on.
+     * @return A future that completes with whether the game could be started.
+     */
+    public CompletableFuture<Boolean> onStartAsync(GameLobby lobby) {
+        return CompletableFuture.completedFuture(onStart(lobby));
+    }
+
     public abstract String name();
 
     protected int callDefault(GuildMessageReceivedEvent e,
@@ -17,6 +17,7 @@
 package net.kodehawa.mantarobot.commands.game.core;
 
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.entities.TextChannel;
 import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
@@ -33,6 +34,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+@Slf4j
 public class GameLobby extends Lobby {
 
     public static final Map<TextChannel, GameLobby> LOBBYS = new ConcurrentHashMap<>();
@@ -63,15 +65,22 @@ public class GameLobby extends Lobby {
 
     public void startFirstGame() {
         LOBBYS.put(event.getChannel(), this);
-        if(gamesToPlay.getFirst().onStart(this)) {
-            gamesToPlay.getFirst().call(this, players);
-            DBGuild dbGuild = MantaroData.db().getGuild(guild);
-            dbGuild.getData().setGameTimeoutExpectedAt(String.valueOf(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(75)));
-            dbGuild.saveAsync();
-        } else {
-            LOBBYS.remove(getChannel());
-            gamesToPlay.clear();
-        }
+        gamesToPlay.getFirst().onStartAsync(this).whenComplete((started, error) -> {
+            //Anything thrown in here would get swallowed by the future, leaving the channel stuck with a game running.
+            try {
+                if(error == null && started) {
+                    gamesToPlay.getFirst().call(this, players);
+                    DBGuild dbGuild = MantaroData.db().getGuild(guild);
+                    dbGuild.getData().setGameTimeoutExpectedAt(String.valueOf(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(75)));
+                    dbGuild.saveAsync();
+                } else {
+                    end();
+                }
+            } catch(Exception e) {
+                log.warn("Error starting the first game of {}", this, e);
+                end();
+            }
+        });
     }
 
     //This runs async because I need the operation to end *before* this, also if this takes too long games get stuck.
@@ -85,16 +94,26 @@ public class GameLobby extends Lobby {
                     return;
                 }
 
-                if(gamesToPlay.getFirst().onStart(this)) {
-                    gamesToPlay.getFirst().call(this, players);
-                } else {
-                    gamesToPlay.clear();
-                    LOBBYS.remove(getChannel());
-                }
+                gamesToPlay.getFirst().onStartAsync(this).whenComplete((started, error) -> {
+                    try {
+                        if(error == null && started) {
+                            gamesToPlay.getFirst().call(this, players);
+                        } else {
+                            end();
+                        }
+                    } catch(Exception e) {
+                        log.warn("Error starting the next game of {}", this, e);
+                        end();
+                    }
+                });
             } catch(Exception e) {
-                gamesToPlay.clear();
-                LOBBYS.remove(getChannel());
+                end();
             }
         });
     }
+
+    private void end() {
+        gamesToPlay.clear();
+        LOBBYS.remove(getChannel());
+    }
 }
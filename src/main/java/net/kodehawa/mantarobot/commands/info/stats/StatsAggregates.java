@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.info.stats;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.OnlineStatus;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.entities.VoiceChannel;
+import net.dv8tion.jda.core.events.Event;
+import net.dv8tion.jda.core.events.guild.GenericGuildEvent;
+import net.dv8tion.jda.core.events.guild.GuildJoinEvent;
+import net.dv8tion.jda.core.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.core.events.guild.GuildReadyEvent;
+import net.dv8tion.jda.core.events.guild.GuildUnavailableEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberJoinEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberLeaveEvent;
+import net.dv8tion.jda.core.events.user.UserOnlineStatusUpdateEvent;
+import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.core.shard.MantaroShard;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.IntSummaryStatistics;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the per-guild counters the stats commands need (online members and bots) up to date from member and presence events,
+ * so showing the stats doesn't have to walk every member of every guild.
+ * Counters are kept per shard and merged when read. Everything else the stats show (member and channel counts, voice connections)
+ * is already cheap to read from JDA's caches.
+ * <p>
+ * Events can get lost on reconnects, so every minute one shard gets all its counters recounted from scratch, and once every
+ * shard has been recounted the amount of unique users is recounted too.
+ */
+@Slf4j
+public class StatsAggregates {
+    private static final int BIG_GUILD_SIZE = 500;
+    private static final long RECONCILE_INTERVAL_MINUTES = 1;
+    private static final StatsAggregates instance = new StatsAggregates();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Mantaro-StatsAggregates").setDaemon(true).build()
+    );
+    //Shard id -> guild id -> counters.
+    private final Map<Integer, Map<Long, GuildCounters>> shards = new ConcurrentHashMap<>();
+    private int nextShard;
+    //-1 until the first full pass.
+    private volatile long uniqueUsers = -1;
+
+    private StatsAggregates() {
+        executor.scheduleWithFixedDelay(this::reconcileSafely, RECONCILE_INTERVAL_MINUTES, RECONCILE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public static StatsAggregates getInstance() {
+        return instance;
+    }
+
+    /**
+     * Updates the counters from a JDA event. Called by every shard's listener, for every event.
+     *
+     * @param shardId The shard that got the event.
+     * @param event   The event.
+     */
+    public void onEvent(int shardId, Event event) {
+        if(event instanceof GuildMemberJoinEvent) {
+            Member member = ((GuildMemberJoinEvent) event).getMember();
+            GuildCounters counters = counters(shardId, member.getGuild());
+            if(member.getOnlineStatus() != OnlineStatus.OFFLINE)
+                counters.online.incrementAndGet();
+            if(member.getUser().isBot())
+                counters.bots.incrementAndGet();
+            return;
+        }
+
+        if(event instanceof GuildMemberLeaveEvent) {
+            Member member = ((GuildMemberLeaveEvent) event).getMember();
+            GuildCounters counters = counters(shardId, member.getGuild());
+            if(member.getOnlineStatus() != OnlineStatus.OFFLINE)
+                counters.online.decrementAndGet();
+            if(member.getUser().isBot())
+                counters.bots.decrementAndGet();
+            return;
+        }
+
+        if(event instanceof UserOnlineStatusUpdateEvent) {
+            UserOnlineStatusUpdateEvent e = (UserOnlineStatusUpdateEvent) event;
+            if(e.getGuild() == null)
+                return;
+
+            boolean wasOnline = e.getPreviousOnlineStatus() != OnlineStatus.OFFLINE;
+            boolean isOnline = e.getGuild().getMember(e.getUser()).getOnlineStatus() != OnlineStatus.OFFLINE;
+            if(wasOnline != isOnline)
+                counters(shardId, e.getGuild()).online.addAndGet(isOnline ? 1 : -1);
+            return;
+        }
+
+        if(event instanceof GuildReadyEvent || event instanceof GuildJoinEvent) {
+            Guild guild = ((GenericGuildEvent) event).getGuild();
+            shard(shardId).put(guild.getIdLong(), GuildCounters.count(guild));
+            return;
+        }
+
+        if(event instanceof GuildLeaveEvent || event instanceof GuildUnavailableEvent) {
+            shard(shardId).remove(((GenericGuildEvent) event).getGuild().getIdLong());
+        }
+    }
+
+    /**
+     * @return The amount of unique users across every shard as of the last full pass, or -1 if there hasn't been one yet.
+     */
+    public long getUniqueUsers() {
+        return uniqueUsers;
+    }
+
+    /**
+     * Merges the counters of every shard into the numbers the stats command shows.
+     */
+    public Summary summarize() {
+        Summary summary = new Summary();
+        for(MantaroShard shard : MantaroBot.getInstance().getShardList()) {
+            JDA jda = shard.getJDA();
+            if(jda == null)
+                continue;
+
+            for(Guild guild : jda.getGuildCache()) {
+                summary.add(guild, counters(shard.getId(), guild));
+            }
+        }
+
+        return summary;
+    }
+
+    private Map<Long, GuildCounters> shard(int shardId) {
+        return shards.computeIfAbsent(shardId, id -> new ConcurrentHashMap<>());
+    }
+
+    //Guilds that weren't counted yet (because their ready event came before this was listening, for example) get counted here.
+    private GuildCounters counters(int shardId, Guild guild) {
+        return shard(shardId).computeIfAbsent(guild.getIdLong(), id -> GuildCounters.count(guild));
+    }
+
+    private void reconcileSafely() {
+        try {
+            reconcile();
+        } catch(Exception e) {
+            log.error("Error recounting stats aggregates", e);
+        }
+    }
+
+    private void reconcile() {
+        MantaroBot bot = MantaroBot.getInstance();
+        if(bot == null || bot.getShardedMantaro() == null)
+            return;
+
+        MantaroShard[] all = bot.getShardedMantaro().getShards();
+        if(nextShard >= all.length) {
+            nextShard = 0;
+            uniqueUsers = countUniqueUsers(all);
+        }
+
+        MantaroShard shard = all[nextShard++];
+        if(shard == null || shard.getJDA() == null || shard.getJDA().getStatus() != JDA.Status.CONNECTED)
+            return;
+
+        Map<Long, GuildCounters> counters = new ConcurrentHashMap<>();
+        for(Guild guild : shard.getJDA().getGuildCache()) {
+            counters.put(guild.getIdLong(), GuildCounters.count(guild));
+        }
+
+        //Anything that changed while counting gets fixed on the next pass.
+        shards.put(shard.getId(), counters);
+    }
+
+    private static long countUniqueUsers(MantaroShard[] shards) {
+        TLongSet users = new TLongHashSet();
+        for(MantaroShard shard : shards) {
+            if(shard == null || shard.getJDA() == null)
+                continue;
+
+            for(User user : shard.getJDA().getUserCache()) {
+                users.add(user.getIdLong());
+            }
+        }
+
+        return users.size();
+    }
+
+    private static class GuildCounters {
+        private final AtomicInteger bots = new AtomicInteger();
+        private final AtomicInteger online = new AtomicInteger();
+
+        private static GuildCounters count(Guild guild) {
+            GuildCounters counters = new GuildCounters();
+            int online = 0, bots = 0;
+            for(Member member : guild.getMemberCache()) {
+                if(member.getOnlineStatus() != OnlineStatus.OFFLINE)
+                    online++;
+                if(member.getUser().isBot())
+                    bots++;
+            }
+
+            counters.online.set(online);
+            counters.bots.set(bots);
+            return counters;
+        }
+    }
+
+    @Getter
+    public static class Summary {
+        private long bigGuilds;
+        //Guilds where Mantaro is the only bot.
+        private long exclusiveness;
+        private long guilds;
+        private final DoubleSummaryStatistics listenersPerOnlineUsers = new DoubleSummaryStatistics();
+        private final DoubleSummaryStatistics listenersPerUsers = new DoubleSummaryStatistics();
+        private int musicConnections;
+        private final IntSummaryStatistics onlineUsersPerGuild = new IntSummaryStatistics();
+        private final DoubleSummaryStatistics onlineUsersPerUsers = new DoubleSummaryStatistics();
+        private final IntSummaryStatistics textChannelsPerGuild = new IntSummaryStatistics();
+        private final IntSummaryStatistics usersPerGuild = new IntSummaryStatistics();
+        private final IntSummaryStatistics voiceChannelsPerGuild = new IntSummaryStatistics();
+
+        private void add(Guild guild, GuildCounters counters) {
+            int members = (int) guild.getMemberCache().size();
+            int online = counters.online.get();
+
+            guilds++;
+            usersPerGuild.accept(members);
+            onlineUsersPerGuild.accept(online);
+            onlineUsersPerUsers.accept((double) online / members * 100);
+            textChannelsPerGuild.accept((int) guild.getTextChannelCache().size());
+            voiceChannelsPerGuild.accept((int) guild.getVoiceChannelCache().size());
+
+            if(counters.bots.get() == 1)
+                exclusiveness++;
+            if(members > BIG_GUILD_SIZE)
+                bigGuilds++;
+
+            VoiceChannel music = guild.getSelfMember().getVoiceState().getChannel();
+            if(music != null) {
+                int listeners = music.getMembers().size();
+                musicConnections++;
+                listenersPerUsers.accept((double) listeners / members * 100);
+                listenersPerOnlineUsers.accept((double) listeners / online * 100);
+            }
+        }
+    }
+}
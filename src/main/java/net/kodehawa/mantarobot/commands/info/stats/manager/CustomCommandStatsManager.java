@@ -16,15 +16,12 @@
 
 package net.kodehawa.mantarobot.commands.info.stats.manager;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-
 public class CustomCommandStatsManager extends StatsManager<String> {
-    public static final Map<String, AtomicInteger> TOTAL_CUSTOM_CMDS = new HashMap<>();
+    //Only the total, there's too many of them to keep windows for each one.
+    public static final SlidingWindowCounter<String> CUSTOM_COMMANDS = new SlidingWindowCounter<>("custom-commands", s -> s, false);
 
     public static void log(String cmd) {
         if(cmd.isEmpty()) return;
-        TOTAL_CUSTOM_CMDS.computeIfAbsent(cmd, k -> new AtomicInteger(0)).incrementAndGet();
+        CUSTOM_COMMANDS.log(cmd);
     }
 }
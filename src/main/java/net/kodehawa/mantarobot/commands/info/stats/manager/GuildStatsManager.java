@@ -16,41 +16,28 @@
 
 package net.kodehawa.mantarobot.commands.info.stats.manager;
 
-import net.jodah.expiringmap.ExpirationPolicy;
-import net.jodah.expiringmap.ExpiringMap;
 import net.kodehawa.mantarobot.utils.Utils;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-
 public class GuildStatsManager extends StatsManager<GuildStatsManager.LoggedEvent> {
-    public static final ExpiringMap<LoggedEvent, AtomicInteger> DAY_EVENTS = ExpiringMap.<String, AtomicInteger>builder()
-            .expiration(1, TimeUnit.DAYS)
-            .expirationPolicy(ExpirationPolicy.CREATED)
-            .build();
-    public static final ExpiringMap<LoggedEvent, AtomicInteger> HOUR_EVENTS = ExpiringMap.<String, AtomicInteger>builder()
-            .expiration(1, TimeUnit.HOURS)
-            .expirationPolicy(ExpirationPolicy.CREATED)
-            .build();
-    public static final ExpiringMap<LoggedEvent, AtomicInteger> MINUTE_EVENTS = ExpiringMap.<String, AtomicInteger>builder()
-            .expiration(1, TimeUnit.MINUTES)
-            .expirationPolicy(ExpirationPolicy.CREATED)
-            .build();
-    public static final Map<LoggedEvent, AtomicInteger> TOTAL_EVENTS = new HashMap<>();
+    public static final SlidingWindowCounter<LoggedEvent> EVENTS = new SlidingWindowCounter<>("guild-events", LoggedEvent::parse, true);
     public static int MILESTONE = 0;
 
     public static void log(LoggedEvent loggedEvent) {
-        TOTAL_EVENTS.computeIfAbsent(loggedEvent, k -> new AtomicInteger(0)).incrementAndGet();
-        DAY_EVENTS.computeIfAbsent(loggedEvent, k -> new AtomicInteger(0)).incrementAndGet();
-        HOUR_EVENTS.computeIfAbsent(loggedEvent, k -> new AtomicInteger(0)).incrementAndGet();
-        MINUTE_EVENTS.computeIfAbsent(loggedEvent, k -> new AtomicInteger(0)).incrementAndGet();
+        EVENTS.log(loggedEvent);
     }
 
     public enum LoggedEvent {
         JOIN, LEAVE;
 
+        //Persisted keys use toString(), which is capitalized.
+        public static LoggedEvent parse(String name) {
+            try {
+                return valueOf(name.toUpperCase());
+            } catch(IllegalArgumentException e) {
+                return null;
+            }
+        }
+
         @Override
         public String toString() {
             return Utils.capitalize(name().toLowerCase());
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.info.stats.manager;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.data.MantaroData;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Counts occurrences of keys (commands, categories, events...) over sliding windows of the last minute, hour and day, plus a total.
+ * <p>
+ * Every key gets its own counter the first time it's seen, and from then on logging it is a map lookup and a few {@link LongAdder}
+ * increments, so it doesn't contend under load. Each window is a ring of buckets (60 one-second buckets for the minute, 60 one-minute
+ * buckets for the hour, 24 one-hour buckets for the day) tagged with the time they belong to, so old buckets drop out one at a time
+ * instead of the whole window resetting at once.
+ * <p>
+ * When redis is enabled, totals are loaded on startup and the counts are added every few minutes to the total and to that day's
+ * (UTC) totals, which are kept for a month.
+ */
+@Slf4j
+public class SlidingWindowCounter<T> {
+    private static final long DAILY_TTL_DAYS = 30;
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Mantaro-StatsFlusher").setDaemon(true).build()
+    );
+    private static final long FLUSH_INTERVAL_MINUTES = 5;
+    private static final Set<SlidingWindowCounter<?>> persisted = new CopyOnWriteArraySet<>();
+
+    static {
+        executor.scheduleWithFixedDelay(SlidingWindowCounter::flushAll, FLUSH_INTERVAL_MINUTES, FLUSH_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        Runtime.getRuntime().addShutdownHook(new Thread(SlidingWindowCounter::flushAll, "Mantaro-StatsFlusher-Shutdown"));
+    }
+
+    private final Map<T, Counter> counters = new ConcurrentHashMap<>();
+    private final String name;
+    private final Function<String, T> parser;
+    private final boolean windowed;
+
+    /**
+     * @param name     Name used for the persisted totals, or null to not persist them.
+     * @param parser   Turns a persisted key (the {@link Object#toString()} of a key) back into a key.
+     * @param windowed Whether to keep the minute, hour and day windows, or just the total.
+     */
+    public SlidingWindowCounter(String name, Function<String, T> parser, boolean windowed) {
+        this.name = name;
+        this.parser = parser;
+        this.windowed = windowed;
+
+        if(name != null && MantaroData.config().get().redis.enabled) {
+            persisted.add(this);
+            executor.execute(this::loadTotals);
+        }
+    }
+
+    public void log(T key) {
+        counters.computeIfAbsent(key, k -> new Counter(windowed)).increment(System.currentTimeMillis());
+    }
+
+    /**
+     * @param window The window to count on.
+     * @param key    The key.
+     * @return How many times the key was logged in that window.
+     */
+    public long get(Window window, T key) {
+        Counter counter = counters.get(key);
+        return counter == null ? 0 : counter.get(window, System.currentTimeMillis());
+    }
+
+    /**
+     * @param window The window to count on.
+     * @return How many times every key was logged in that window, added up.
+     */
+    public long total(Window window) {
+        long now = System.currentTimeMillis();
+        long total = 0;
+        for(Counter counter : counters.values()) {
+            total += counter.get(window, now);
+        }
+
+        return total;
+    }
+
+    /**
+     * @param window The window to count on.
+     * @param limit  Maximum amount of keys to return.
+     * @return The keys logged the most in that window with their counts, most logged first. Keys with no count are left out.
+     */
+    public List<Map.Entry<T, Long>> top(Window window, int limit) {
+        long now = System.currentTimeMillis();
+        //Min-heap of the best ones so far, so there's no need to sort every key.
+        PriorityQueue<Map.Entry<T, Long>> best = new PriorityQueue<>(limit + 1, Map.Entry.comparingByValue());
+        for(Map.Entry<T, Counter> entry : counters.entrySet()) {
+            long count = entry.getValue().get(window, now);
+            if(count == 0 || (best.size() == limit && count <= best.peek().getValue()))
+                continue;
+
+            best.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), count));
+            if(best.size() > limit)
+                best.poll();
+        }
+
+        List<Map.Entry<T, Long>> result = new ArrayList<>(best);
+        result.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+        return result;
+    }
+
+    private static void flushAll() {
+        for(SlidingWindowCounter<?> counter : persisted) {
+            try {
+                counter.flush();
+            } catch(Exception e) {
+                log.error("Error persisting stats for {}", counter.name, e);
+            }
+        }
+    }
+
+    private RMap<String, Long> totals(RedissonClient redisson) {
+        return redisson.getMap("stats:" + name + ":total", LongCodec.INSTANCE);
+    }
+
+    private void loadTotals() {
+        try {
+            totals(MantaroData.redisson()).readAllMap().forEach((key, value) -> {
+                T parsed = parser.apply(key);
+                if(parsed != null)
+                    counters.computeIfAbsent(parsed, k -> new Counter(windowed)).loadTotal(value);
+            });
+        } catch(Exception e) {
+            log.error("Error loading stats totals for {}", name, e);
+        }
+    }
+
+    //Adds whatever was logged since the last flush, so several nodes can add to the same totals.
+    private void flush() {
+        RedissonClient redisson = MantaroData.redisson();
+        RMap<String, Long> totals = totals(redisson);
+        RMap<String, Long> daily = redisson.getMap("stats:" + name + ":daily:" + LocalDate.now(ZoneOffset.UTC), LongCodec.INSTANCE);
+
+        boolean wrote = false;
+        for(Map.Entry<T, Counter> entry : counters.entrySet()) {
+            long delta = entry.getValue().drainUnpersisted();
+            if(delta == 0)
+                continue;
+
+            String key = String.valueOf(entry.getKey());
+            totals.addAndGet(key, delta);
+            daily.addAndGet(key, delta);
+            wrote = true;
+        }
+
+        if(wrote)
+            daily.expire(DAILY_TTL_DAYS, TimeUnit.DAYS);
+    }
+
+    public enum Window {
+        MINUTE(TimeUnit.SECONDS.toMillis(1), 60),
+        HOUR(TimeUnit.MINUTES.toMillis(1), 60),
+        DAY(TimeUnit.HOURS.toMillis(1), 24),
+        TOTAL(0, 0);
+
+        private final int buckets;
+        private final long bucketMillis;
+
+        Window(long bucketMillis, int buckets) {
+            this.bucketMillis = bucketMillis;
+            this.buckets = buckets;
+        }
+    }
+
+    private static class Counter {
+        private final Ring[] rings;
+        private final LongAdder total = new LongAdder();
+        //What's been logged here since the last flush.
+        private final LongAdder unpersisted = new LongAdder();
+
+        private Counter(boolean windowed) {
+            if(windowed) {
+                rings = new Ring[]{new Ring(Window.MINUTE), new Ring(Window.HOUR), new Ring(Window.DAY)};
+            } else {
+                rings = new Ring[0];
+            }
+        }
+
+        private void increment(long now) {
+            total.increment();
+            unpersisted.increment();
+            for(Ring ring : rings) {
+                ring.increment(now);
+            }
+        }
+
+        private long get(Window window, long now) {
+            if(window == Window.TOTAL)
+                return total.sum();
+
+            for(Ring ring : rings) {
+                if(ring.window == window)
+                    return ring.sum(now);
+            }
+
+            return 0;
+        }
+
+        private void loadTotal(long value) {
+            total.add(value);
+        }
+
+        private long drainUnpersisted() {
+            return unpersisted.sumThenReset();
+        }
+    }
+
+    private static class Ring {
+        private final LongAdder[] counts;
+        //Which bucket (time / bucket length) each slot currently holds.
+        private final AtomicLongArray epochs;
+        private final Window window;
+
+        private Ring(Window window) {
+            this.window = window;
+            this.counts = new LongAdder[window.buckets];
+            this.epochs = new AtomicLongArray(window.buckets);
+            for(int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+                epochs.set(i, -1);
+            }
+        }
+
+        private void increment(long now) {
+            long epoch = now / window.bucketMillis;
+            int slot = (int) (epoch % counts.length);
+            if(epochs.get(slot) != epoch) {
+                //The slot still holds a bucket that fell out of the window, only the first one to get here clears it.
+                synchronized(this) {
+                    if(epochs.get(slot) != epoch) {
+                        counts[slot].reset();
+                        epochs.set(slot, epoch);
+                    }
+                }
+            }
+
+            counts[slot].increment();
+        }
+
+        private long sum(long now) {
+            long epoch = now / window.bucketMillis;
+            long sum = 0;
+            for(int i = 0; i < counts.length; i++) {
+                if(epoch - epochs.get(i) < counts.length)
+                    sum += counts[i].sum();
+            }
+
+            return sum;
+        }
+    }
+}
@@ -18,9 +18,7 @@ package net.kodehawa.mantarobot.commands.info.stats.manager;
 
 import net.dv8tion.jda.core.EmbedBuilder;
 
-import java.util.Comparator;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public abstract class StatsManager<T> {
@@ -34,41 +32,34 @@ public abstract class StatsManager<T> {
         return builder.append(EMPTY_BLOCK).append('`').toString();
     }
 
-    public EmbedBuilder fillEmbed(Map<T, AtomicInteger> values, EmbedBuilder builder) {
-        int total = values.values().stream().mapToInt(AtomicInteger::get).sum();
+    public EmbedBuilder fillEmbed(SlidingWindowCounter<T> counter, SlidingWindowCounter.Window window, EmbedBuilder builder) {
+        long total = counter.total(window);
 
         if(total == 0) {
             builder.addField("Nothing Here.", "Just dust.", false);
             return builder;
         }
 
-        values.entrySet().stream()
-                .filter(entry -> entry.getValue().get() > 0)
-                .sorted(Comparator.comparingInt(entry -> total - entry.getValue().get()))
-                .limit(12)
-                .forEachOrdered(entry -> {
-                    int percent = entry.getValue().get() * 100 / total;
-                    builder.addField(String.valueOf(entry.getKey()), String.format("%s %d%% (%d)", bar(percent, 15), percent, entry.getValue().get()), false);
-                });
+        for(Map.Entry<T, Long> entry : counter.top(window, 12)) {
+            int percent = (int) (entry.getValue() * 100 / total);
+            builder.addField(String.valueOf(entry.getKey()), String.format("%s %d%% (%d)", bar(percent, 15), percent, entry.getValue()), false);
+        }
 
         return builder;
     }
 
-    public String resume(Map<T, AtomicInteger> commands) {
-        int total = commands.values().stream().mapToInt(AtomicInteger::get).sum();
+    public String resume(SlidingWindowCounter<T> counter, SlidingWindowCounter.Window window) {
+        long total = counter.total(window);
 
-        return (total == 0) ? ("No Events Logged.") : ("Count: " + total + "\n" + commands.entrySet().stream()
-                .filter(entry -> entry.getValue().get() > 0)
-                .sorted(Comparator.comparingInt(entry -> total - entry.getValue().get()))
-                .limit(5)
+        return (total == 0) ? ("No Events Logged.") : ("Count: " + total + "\n" + counter.top(window, 5).stream()
                 .map(entry -> {
-                    int percent = Math.round((float) entry.getValue().get() * 100 / total);
-                    return String.format("%s %d%% **%s** (%d)", bar(percent, 15), percent, entry.getKey(), entry.getValue().get());
+                    int percent = Math.round((float) entry.getValue() * 100 / total);
+                    return String.format("%s %d%% **%s** (%d)", bar(percent, 15), percent, entry.getKey(), entry.getValue());
                 })
                 .collect(Collectors.joining("\n")));
     }
 
-    public int getTotalValueFor(Map<T, AtomicInteger> map) {
-        return map.values().stream().mapToInt(AtomicInteger::get).sum();
+    public long getTotalValueFor(SlidingWindowCounter<T> counter, SlidingWindowCounter.Window window) {
+        return counter.total(window);
     }
 }
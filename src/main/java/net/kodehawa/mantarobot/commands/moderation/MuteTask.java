@@ -17,74 +17,93 @@
 package net.kodehawa.mantarobot.commands.moderation;
 
 import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.Role;
 import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.core.shard.MantaroShard;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.DBGuild;
-import net.kodehawa.mantarobot.db.entities.MantaroObj;
+import net.kodehawa.mantarobot.db.entities.Mute;
 import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
-import net.kodehawa.mantarobot.utils.Pair;
 
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Handles mute expirations. Mutes are saved on their own table (see {@link Mute}), and each one gets a timer on
+ * {@link MantaroBot#getTimers()} that fires right when it runs out.
+ */
 @Slf4j
 public class MuteTask {
+    private static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Schedules the expiration of every saved mute. Called once on startup.
+     */
+    public static void restore() {
+        List<Mute> mutes = MantaroData.db().getMutes();
+        mutes.forEach(mute -> schedule(mute.getGuildId(), mute.getUserId(), mute.getExpiration()));
+        log.info("Scheduled {} mute expirations", mutes.size());
+    }
+
+    public static void schedule(String guildId, String userId, long until) {
+        MantaroBot.getTimers().schedule("mute:" + guildId + ":" + userId, until, () -> expire(guildId, userId));
+    }
+
+    public static void cancel(String guildId, String userId) {
+        MantaroBot.getTimers().cancel("mute:" + guildId + ":" + userId);
+    }
 
-    public void handle() {
+    private static void expire(String guildId, String userId) {
         try {
-            MantaroObj data = MantaroData.db().getMantaroData();
-            Map<Long, Pair<String, Long>> mutes = data.getMutes();
-            log.debug("Checking mutes... data size {}", mutes.size());
-            for(Map.Entry<Long, Pair<String, Long>> entry : mutes.entrySet()) {
-                try {
-                    log.trace("Iteration");
-                    Long id = entry.getKey();
-                    Pair<String, Long> pair = entry.getValue();
-                    String guildId = pair.getLeft();
-                    long maxTime = pair.getRight();
+            Mute mute = MantaroData.db().getMute(guildId, userId);
+            if(mute == null)
+                return;
 
-                    if(MantaroBot.getInstance().getShardForGuild(guildId) == null) {
-                        continue;
-                    }
+            if(System.currentTimeMillis() < mute.getExpiration()) {
+                //Got extended since this was scheduled.
+                schedule(guildId, userId, mute.getExpiration());
+                return;
+            }
+
+            MantaroShard shard = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getShardForGuild(guildId);
+            if(shard == null || shard.getStatus() != JDA.Status.CONNECTED) {
+                //Can't tell if the guild is gone or if it just didn't load yet, try again later.
+                schedule(guildId, userId, System.currentTimeMillis() + RETRY_DELAY);
+                return;
+            }
 
-                    Guild guild = MantaroBot.getInstance().getGuildById(guildId);
-                    DBGuild dbGuild = MantaroData.db().getGuild(guildId);
-                    GuildData guildData = dbGuild.getData();
+            mute.delete();
 
-                    if(guild == null) {
-                        data.getMutes().remove(id);
-                        data.saveAsync();
-                        log.debug("Removed {} because guild == null", id);
-                        continue;
-                    } else if(guild.getMemberById(id) == null) {
-                        data.getMutes().remove(id);
-                        data.saveAsync();
-                        log.debug("Removed {} because member == null", id);
-                        continue;
-                    }
+            Guild guild = shard.getGuildById(guildId);
+            if(guild == null) {
+                log.debug("Removed {} because guild == null", mute.getId());
+                return;
+            }
 
-                    //I spent an entire month trying to figure out why this didn't work to then come to the conclusion that I'm completely stupid.
-                    //I was checking against `id` instead of against the mute role id because I probably was high or something when I did this
-                    //It literally took me a fucking month to figure this shit out
-                    //What in the name of real fuck.
-                    //Please hold me.
-                    if(guild.getRoleById(guildData.getMutedRole()) == null) {
-                        data.getMutes().remove(id);
-                        data.saveAsync();
-                        log.debug("Removed {} because role == null", id);
-                    } else {
-                        if(System.currentTimeMillis() > maxTime) {
-                            log.debug("Unmuted {} because time ran out", id);
-                            data.getMutes().remove(id);
-                            data.save();
-                            guild.getController().removeRolesFromMember(guild.getMemberById(id), guild.getRoleById(guildData.getMutedRole())).queue();
-                            guildData.setCases(guildData.getCases() + 1);
-                            dbGuild.saveAsync();
-                            ModLog.log(guild.getSelfMember(), MantaroBot.getInstance().getUserById(id), "Mute timeout expired", ModLog.ModAction.UNMUTE, guildData.getCases());
-                        }
-                    }
-                } catch(Exception ignored) {}
+            Member member = guild.getMemberById(userId);
+            if(member == null) {
+                log.debug("Removed {} because member == null", mute.getId());
+                return;
             }
-        } catch(Exception ignored) {}
+
+            DBGuild dbGuild = MantaroData.db().getGuild(guild);
+            GuildData guildData = dbGuild.getData();
+            Role mutedRole = guildData.getMutedRole() == null ? null : guild.getRoleById(guildData.getMutedRole());
+            if(mutedRole == null) {
+                log.debug("Removed {} because role == null", mute.getId());
+                return;
+            }
+
+            log.debug("Unmuted {} because time ran out", mute.getId());
+            guild.getController().removeRolesFromMember(member, mutedRole).queue();
+            guildData.setCases(guildData.getCases() + 1);
+            dbGuild.saveAsync();
+            ModLog.log(guild.getSelfMember(), member.getUser(), "Mute timeout expired", ModLog.ModAction.UNMUTE, guildData.getCases());
+        } catch(Exception e) {
+            log.warn("Error expiring mute of {} on {}", userId, guildId, e);
+        }
     }
 }
@@ -16,79 +16,62 @@
 
 package net.kodehawa.mantarobot.commands.moderation;
 
+import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Guild;
 import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.core.shard.MantaroShard;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.TempBan;
 
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-//TODO refactor, this is way too old and the code to check it it's ugh.
+/**
+ * Handles temporary bans. Every ban is saved on its own table (see {@link TempBan}), and gets a timer on
+ * {@link MantaroBot#getTimers()} that lifts it when it ends.
+ */
+@Slf4j
 public class TempBanManager {
-    private final Map<String, Long> UNBANS;
-    private boolean unbansUpdated = false;
-
-    public TempBanManager(Map<String, Long> unbans) {
-        UNBANS = Collections.synchronizedMap(unbans);
+    private static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
 
-        Thread thread = new Thread(this::threadcode, "Temp bans Thread");
-        thread.setDaemon(true);
-        thread.start();
+    public TempBanManager(List<TempBan> unbans) {
+        unbans.forEach(ban -> schedule(ban.getGuildId(), ban.getUserId(), ban.getExpiration()));
+        log.info("Scheduled {} temporary ban expirations", unbans.size());
     }
 
-    public void addTempban(String id, Long milis) {
-        UNBANS.put(id, milis);
-        unbansUpdated = true;
-        synchronized(this) {
-            notify();
-        }
+    public void addTempban(String guildId, String userId, long until) {
+        TempBan.of(guildId, userId, until).saveAsync();
+        schedule(guildId, userId, until);
     }
 
-    public void removeTempban(String id) {
-        if(UNBANS.containsKey(id)) {
-            UNBANS.remove(id);
-            unbansUpdated = true;
-            synchronized(this) {
-                notify();
-            }
-        }
+    public void removeTempban(String guildId, String userId) {
+        TempBan ban = MantaroData.db().getTempBan(guildId, userId);
+        if(ban != null)
+            ban.deleteAsync();
+
+        MantaroBot.getTimers().cancel("tempban:" + guildId + ":" + userId);
     }
 
-    private void threadcode() {
-        try {
-            //noinspection InfiniteLoopStatement
-            while(true) {
-                if(UNBANS.isEmpty()) {
-                    try {
-                        synchronized(this) {
-                            wait();
-                            unbansUpdated = false;
-                        }
-                    } catch(InterruptedException ignored) {}
-                }
+    private void schedule(String guildId, String userId, long until) {
+        MantaroBot.getTimers().schedule("tempban:" + guildId + ":" + userId, until, () -> unban(guildId, userId));
+    }
 
-                //noinspection OptionalGetWithoutIsPresent
-                Map.Entry<String, Long> unbanFirstEntry = UNBANS.entrySet().stream().sorted(Comparator.comparingLong(Map.Entry::getValue)).findFirst().get();
+    private void unban(String guildId, String userId) {
+        MantaroShard shard = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getShardForGuild(guildId);
+        if(shard == null || shard.getStatus() != JDA.Status.CONNECTED) {
+            //The guild might just not be loaded yet, try again later.
+            schedule(guildId, userId, System.currentTimeMillis() + RETRY_DELAY);
+            return;
+        }
 
-                try {
-                    long timeout = unbanFirstEntry.getValue() - System.currentTimeMillis();
-                    if(timeout > 0) {
-                        synchronized(this) {
-                            wait(timeout);
-                        }
-                    }
-                } catch(InterruptedException ignored) {}
+        TempBan ban = MantaroData.db().getTempBan(guildId, userId);
+        if(ban != null)
+            ban.delete();
 
-                if(!unbansUpdated) {
-                    String[] params = unbanFirstEntry.getKey().split(":");
-                    UNBANS.remove(unbanFirstEntry.getKey());
-                    MantaroBot.getInstance().getGuildById(params[0]).getController().unban(params[1]).queue();
-                    UNBANS.remove(unbanFirstEntry.getKey());
-                    if(MantaroBot.getInstance().getGuildById(params[0]) == null) return;
-                    ModLog.logUnban(MantaroBot.getInstance().getGuildById(params[0]).getSelfMember(), params[1], "The temporary ban ended.");
-                } else unbansUpdated = false; //and the loop will restart and resolve it
-            }
-        } catch(Exception e) {
-            e.printStackTrace();
-        }
+        Guild guild = shard.getGuildById(guildId);
+        if(guild == null) return;
+        guild.getController().unban(userId).queue();
+        ModLog.logUnban(guild.getSelfMember(), userId, "The temporary ban ended.");
     }
 }
@@ -18,6 +18,9 @@ package net.kodehawa.mantarobot.commands.music;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
 import lombok.Getter;
 import lombok.Setter;
 import net.dv8tion.jda.core.entities.Guild;
@@ -34,15 +37,38 @@ public class GuildMusicManager {
     public final AudioPlayer audioPlayer;
     @Getter
     public final TrackScheduler trackScheduler;
+    private final AudioPlayerSendHandler sendHandler;
     @Getter
     @Setter
     public boolean isAwaitingDeath;
     private ScheduledFuture<?> leaveTask = null;
+    //Last time this manager was handed out or seen doing something, see MantaroAudioManager#evictIdle().
+    private volatile long lastActive = System.currentTimeMillis();
 
     public GuildMusicManager(AudioPlayerManager manager, String guildId) {
         audioPlayer = manager.createPlayer();
         trackScheduler = new TrackScheduler(audioPlayer, guildId);
         audioPlayer.addListener(trackScheduler);
+        sendHandler = new AudioPlayerSendHandler(audioPlayer);
+        audioPlayer.addListener(new AudioEventAdapter() {
+            @Override
+            public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason endReason) {
+                //A track that finished on its own still has to play what's buffered, anything else got cut off.
+                if(endReason != AudioTrackEndReason.FINISHED)
+                    sendHandler.clear();
+            }
+        });
+    }
+
+    /**
+     * Moves a track to the given position, dropping the audio that was buffered from the old one.
+     *
+     * @param track    The playing track.
+     * @param position The new position, in milliseconds.
+     */
+    public void seek(AudioTrack track, long position) {
+        track.setPosition(position);
+        sendHandler.clear();
     }
 
     private void leave() {
@@ -51,7 +77,7 @@ public class GuildMusicManager {
         if(guild == null) return;
 
         isAwaitingDeath = false;
-        trackScheduler.getQueue().clear();
+        trackScheduler.clearQueue();
         if(trackScheduler.getRequestedChannelParsed() != null) {
             trackScheduler.getRequestedChannelParsed().sendMessage(EmoteReference.SAD + "I decided to leave **" + guild.getSelfMember().getVoiceState().getChannel().getName() + "** " +
                     "because I was left all alone :<").queue();
@@ -70,7 +96,40 @@ public class GuildMusicManager {
         leaveTask = null;
     }
 
+    public void touch() {
+        lastActive = System.currentTimeMillis();
+    }
+
+    public long getLastActive() {
+        return lastActive;
+    }
+
+    /**
+     * @return Whether this manager has nothing to play and isn't connected anywhere.
+     */
+    public boolean isIdle() {
+        if(trackScheduler.getCurrentTrack() != null || !trackScheduler.getQueue().isEmpty())
+            return false;
+
+        Guild guild = trackScheduler.getGuild();
+        return guild == null || (!guild.getAudioManager().isConnected() && !guild.getAudioManager().isAttemptingToConnect());
+    }
+
+    /**
+     * Releases the player of this manager. It can't be used anymore afterwards.
+     */
+    public void destroy() {
+        cancelLeave();
+        sendHandler.close();
+        audioPlayer.removeListener(trackScheduler);
+        audioPlayer.destroy();
+
+        Guild guild = trackScheduler.getGuild();
+        if(guild != null)
+            guild.getAudioManager().setSendingHandler(null);
+    }
+
     public AudioPlayerSendHandler getAudioPlayerSendHandler() {
-        return new AudioPlayerSendHandler(audioPlayer);
+        return sendHandler;
     }
 }
@@ -24,26 +24,45 @@ import com.sedmelluq.discord.lavaplayer.source.soundcloud.SoundCloudAudioSourceM
 import com.sedmelluq.discord.lavaplayer.source.twitch.TwitchStreamAudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.source.vimeo.VimeoAudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.timgroup.statsd.StatsDClient;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
+import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.commands.music.requester.AudioLoader;
 import net.kodehawa.mantarobot.commands.music.requester.TrackScheduler;
 import net.kodehawa.mantarobot.commands.music.utils.AudioCmdUtils;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+@Slf4j
 public class MantaroAudioManager {
+    private static final long EVICTION_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Mantaro-MusicManagerEvictor").setDaemon(true).build()
+    );
+    //Keyed by guild id.
     @Getter
-    private final Map<String, GuildMusicManager> musicManagers;
+    private final Map<Long, GuildMusicManager> musicManagers;
     @Getter
     private final AudioPlayerManager playerManager;
+    @Getter
+    private final QueueSnapshotter snapshotter;
+    private volatile int activePlayers;
+    private volatile long totalQueueSize;
 
     public MantaroAudioManager() {
-        this.musicManagers = new HashMap<>();
+        this.musicManagers = new ConcurrentHashMap<>();
         this.playerManager = new DefaultAudioPlayerManager();
         YoutubeAudioSourceManager youtubeAudioSourceManager = new YoutubeAudioSourceManager();
         youtubeAudioSourceManager.configureRequests(config -> RequestConfig.copy(config).setCookieSpec(CookieSpecs.IGNORE_COOKIES).build());
@@ -53,17 +72,104 @@ public class MantaroAudioManager {
         playerManager.registerSourceManager(new VimeoAudioSourceManager());
         playerManager.registerSourceManager(new TwitchStreamAudioSourceManager());
         playerManager.registerSourceManager(new BeamAudioSourceManager());
+        this.snapshotter = new QueueSnapshotter(this);
+        executor.scheduleWithFixedDelay(this::evictIdleSafely, EVICTION_INTERVAL_MS, EVICTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     public GuildMusicManager getMusicManager(Guild guild) {
-        GuildMusicManager musicManager = musicManagers.computeIfAbsent(guild.getId(), id -> new GuildMusicManager(playerManager, guild.getId()));
+        //Touched while holding the entry, so it can't get evicted between being handed out and being used.
+        GuildMusicManager musicManager = musicManagers.compute(guild.getIdLong(), (id, current) -> {
+            GuildMusicManager manager = current == null ? new GuildMusicManager(playerManager, guild.getId()) : current;
+            manager.touch();
+            return manager;
+        });
         if(guild.getAudioManager().getSendingHandler() == null)
             guild.getAudioManager().setSendingHandler(musicManager.getAudioPlayerSendHandler());
         return musicManager;
     }
 
+    /**
+     * Removes and releases the music manager of a guild, if it had one.
+     *
+     * @param guildId The id of the guild.
+     */
+    public void removeMusicManager(long guildId) {
+        GuildMusicManager musicManager = musicManagers.remove(guildId);
+        if(musicManager != null)
+            musicManager.destroy();
+    }
+
+    /**
+     * @return The amount of tracks queued across every guild, as of the last eviction pass.
+     */
     public long getTotalQueueSize() {
-        return musicManagers.values().stream().map(m -> m.getTrackScheduler().getQueue().size()).mapToInt(Integer::intValue).sum();
+        return totalQueueSize;
+    }
+
+    /**
+     * @return The amount of guilds playing something, as of the last eviction pass.
+     */
+    public int getActivePlayers() {
+        return activePlayers;
+    }
+
+    private void evictIdleSafely() {
+        try {
+            evictIdle();
+        } catch(Exception e) {
+            log.error("Error evicting idle music managers", e);
+        }
+    }
+
+    //Drops the managers that have been idle for a while and refreshes the counters on the same pass, so nothing walks every manager on demand.
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        long queued = 0;
+        int active = 0;
+        int evicted = 0;
+
+        for(Map.Entry<Long, GuildMusicManager> entry : musicManagers.entrySet()) {
+            GuildMusicManager musicManager = entry.getValue();
+            if(!musicManager.isIdle()) {
+                musicManager.touch();
+                queued += musicManager.getTrackScheduler().getQueue().size();
+                if(musicManager.getTrackScheduler().getCurrentTrack() != null)
+                    active++;
+                continue;
+            }
+
+            if(now - musicManager.getLastActive() < IDLE_TIMEOUT_MS)
+                continue;
+
+            //Checked again while holding the entry, in case someone asked for it in the meantime.
+            boolean[] removed = new boolean[1];
+            musicManagers.computeIfPresent(entry.getKey(), (id, current) -> {
+                if(current != musicManager || !current.isIdle() || now - current.getLastActive() < IDLE_TIMEOUT_MS)
+                    return current;
+
+                removed[0] = true;
+                return null;
+            });
+
+            if(removed[0]) {
+                musicManager.destroy();
+                evicted++;
+            }
+        }
+
+        totalQueueSize = queued;
+        activePlayers = active;
+
+        if(evicted > 0)
+            log.debug("Evicted {} idle music managers, {} left", evicted, musicManagers.size());
+
+        StatsDClient statsClient = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getStatsClient();
+        if(statsClient != null) {
+            statsClient.gauge("music_managers", musicManagers.size());
+            statsClient.gauge("music_active_players", active);
+            statsClient.gauge("music_total_queue_size", queued);
+            statsClient.count("music_managers_evicted", evicted);
+        }
     }
 
     public void loadAndPlay(GuildMessageReceivedEvent event, String trackUrl, boolean skipSelection, boolean addFirst) {
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.music;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.DecodedTrackHolder;
+import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.VoiceChannel;
+import net.kodehawa.mantarobot.commands.music.requester.TrackScheduler;
+import net.kodehawa.mantarobot.data.MantaroData;
+import org.redisson.api.RBucket;
+import org.redisson.api.RSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.StringCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a compact binary snapshot of every guild's music queue on redis, so queues survive reboots and shard restarts.
+ * <p>
+ * Every few seconds, the queues that changed since their last snapshot (tracks, repeat mode or channels, as told by
+ * {@link TrackScheduler#getModifications()}) get encoded and written, and the ones that finished get their snapshot removed.
+ * Playback alone doesn't count as a change, so a restored track resumes from where it was when its queue last changed. Snapshots are restored lazily: when a shard gets ready,
+ * only the guilds on it that have a snapshot and aren't playing anything already get their queue back.
+ * <p>
+ * Format (version 1): version, voice channel id, text channel id, repeat mode (-1 for none), whether the first track is the one that
+ * was playing, its position, the amount of tracks and then, for every track, the id of who requested it (0 if unknown) followed by the
+ * length and bytes of the track encoded by lavaplayer.
+ */
+@Slf4j
+public class QueueSnapshotter {
+    private static final String INDEX_KEY = "music-queues";
+    private static final String KEY_PREFIX = "music-queue:";
+    private static final long FLUSH_INTERVAL_MS = 5000;
+    private static final long SNAPSHOT_TTL_HOURS = 24;
+    private static final int VERSION = 1;
+
+    private final MantaroAudioManager audioManager;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Mantaro-QueueSnapshotter").setDaemon(true).build()
+    );
+    private final RSet<String> index;
+    //Guilds that have a snapshot waiting for their shard to be ready.
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final RedissonClient redisson;
+    //What each queue looked like when it was last written, see signature(TrackScheduler, Guild).
+    private final Map<String, Integer> signatures = new ConcurrentHashMap<>();
+
+    public QueueSnapshotter(MantaroAudioManager audioManager) {
+        this.audioManager = audioManager;
+        if(!MantaroData.config().get().redis.enabled) {
+            log.info("Redis is disabled, music queues won't be kept between restarts");
+            this.redisson = null;
+            this.index = null;
+            return;
+        }
+
+        this.redisson = MantaroData.redisson();
+        this.index = redisson.getSet(INDEX_KEY, StringCodec.INSTANCE);
+        pending.addAll(index.readAll());
+        log.info("Found {} music queue snapshots to restore", pending.size());
+
+        executor.scheduleWithFixedDelay(this::flushSafely, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushSafely, "Mantaro-QueueSnapshotter-Shutdown"));
+    }
+
+    /**
+     * Restores the queues of the guilds on a shard that just got ready, in the background.
+     *
+     * @param jda The shard.
+     */
+    public void restore(JDA jda) {
+        if(redisson == null || pending.isEmpty())
+            return;
+
+        executor.execute(() -> {
+            for(String guildId : pending) {
+                Guild guild = jda.getGuildById(guildId);
+                if(guild == null)
+                    continue;
+
+                pending.remove(guildId);
+                try {
+                    restore(guild);
+                } catch(Exception e) {
+                    log.warn("Couldn't restore the music queue of guild {}", guildId, e);
+                }
+            }
+        });
+    }
+
+    private void restore(Guild guild) throws IOException {
+        byte[] data = bucket(guild.getId()).get();
+        if(data == null) {
+            index.remove(guild.getId());
+            return;
+        }
+
+        GuildMusicManager musicManager = audioManager.getMusicManager(guild);
+        TrackScheduler scheduler = musicManager.getTrackScheduler();
+        //Something started playing in the meantime, that's newer than the snapshot.
+        if(scheduler.getCurrentTrack() != null || !scheduler.getQueue().isEmpty())
+            return;
+
+        Snapshot snapshot = decode(data);
+        VoiceChannel voiceChannel = guild.getVoiceChannelById(snapshot.voiceChannel);
+        if(snapshot.tracks.isEmpty() || voiceChannel == null || voiceChannel.getMembers().stream().allMatch(member -> member.getUser().isBot())) {
+            //Nobody left to play it for.
+            delete(guild.getId());
+            return;
+        }
+
+        guild.getAudioManager().openAudioConnection(voiceChannel);
+        scheduler.setRequestedChannel(snapshot.textChannel);
+        scheduler.setRepeatMode(snapshot.repeatMode);
+        if(snapshot.resumesCurrent)
+            snapshot.tracks.get(0).setPosition(snapshot.position);
+
+        scheduler.queueAll(snapshot.tracks, false);
+        log.debug("Restored {} tracks on guild {}", snapshot.tracks.size(), guild.getId());
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch(Exception e) {
+            log.error("Error writing music queue snapshots", e);
+        }
+    }
+
+    private void flush() {
+        Map<Long, GuildMusicManager> managers = audioManager.getMusicManagers();
+        for(Map.Entry<Long, GuildMusicManager> entry : managers.entrySet()) {
+            String guildId = String.valueOf(entry.getKey());
+            TrackScheduler scheduler = entry.getValue().getTrackScheduler();
+            Guild guild = scheduler.getGuild();
+            //The shard is down, keep whatever snapshot we had for it.
+            if(guild == null)
+                continue;
+
+            boolean idle = scheduler.getCurrentTrack() == null && scheduler.getQueue().isEmpty();
+            Integer last = signatures.get(guildId);
+            if(idle) {
+                if(last != null) {
+                    delete(guildId);
+                    signatures.remove(guildId);
+                }
+
+                continue;
+            }
+
+            int signature = signature(scheduler, guild);
+            if(last != null && last == signature)
+                continue;
+
+            try {
+                bucket(guildId).set(encode(scheduler, guild), SNAPSHOT_TTL_HOURS, TimeUnit.HOURS);
+                index.add(guildId);
+                signatures.put(guildId, signature);
+            } catch(IOException e) {
+                log.warn("Couldn't encode the music queue of guild {}", guildId, e);
+            }
+        }
+
+        //Players that got removed altogether.
+        for(String guildId : signatures.keySet()) {
+            if(!managers.containsKey(Long.parseLong(guildId))) {
+                delete(guildId);
+                signatures.remove(guildId);
+            }
+        }
+    }
+
+    //Cheap enough to compute for every guild on every flush, changes whenever the snapshot would.
+    //The voice channel isn't part of the scheduler, so it's checked on its own.
+    private int signature(TrackScheduler scheduler, Guild guild) {
+        VoiceChannel voiceChannel = guild.getAudioManager().getConnectedChannel();
+        return Objects.hash(scheduler.getModifications(), voiceChannel == null ? 0 : voiceChannel.getIdLong());
+    }
+
+    private byte[] encode(TrackScheduler scheduler, Guild guild) throws IOException {
+        AudioPlayerManager playerManager = audioManager.getPlayerManager();
+        AudioTrack current = scheduler.getCurrentTrack();
+        List<AudioTrack> tracks = new ArrayList<>(scheduler.getQueue().size() + 1);
+        if(current != null)
+            tracks.add(current);
+        tracks.addAll(scheduler.getQueue());
+
+        VoiceChannel voiceChannel = guild.getAudioManager().getConnectedChannel();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeLong(voiceChannel == null ? 0 : voiceChannel.getIdLong());
+        out.writeLong(scheduler.getRequestedChannel());
+        out.writeByte(scheduler.getRepeatMode() == null ? -1 : scheduler.getRepeatMode().ordinal());
+        out.writeBoolean(current != null);
+        out.writeLong(current == null ? 0 : current.getPosition());
+        out.writeInt(tracks.size());
+
+        ByteArrayOutputStream trackBytes = new ByteArrayOutputStream();
+        for(AudioTrack track : tracks) {
+            trackBytes.reset();
+            MessageOutput output = new MessageOutput(trackBytes);
+            playerManager.encodeTrack(output, track);
+            output.finish();
+
+            out.writeLong(requester(track));
+            out.writeInt(trackBytes.size());
+            trackBytes.writeTo(out);
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private Snapshot decode(byte[] data) throws IOException {
+        AudioPlayerManager playerManager = audioManager.getPlayerManager();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int version = in.readByte();
+        if(version != VERSION)
+            throw new IOException("Unknown snapshot version " + version);
+
+        Snapshot snapshot = new Snapshot();
+        snapshot.voiceChannel = in.readLong();
+        snapshot.textChannel = in.readLong();
+        int repeat = in.readByte();
+        snapshot.repeatMode = repeat < 0 ? null : TrackScheduler.Repeat.values()[repeat];
+        boolean hasCurrent = in.readBoolean();
+        snapshot.position = in.readLong();
+
+        int count = in.readInt();
+        snapshot.tracks = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            long requester = in.readLong();
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+
+            DecodedTrackHolder holder = playerManager.decodeTrack(new MessageInput(new ByteArrayInputStream(encoded)));
+            //Tracks from sources that were removed (or changed their format) can't be decoded anymore, skip them.
+            if(holder == null || holder.decodedTrack == null)
+                continue;
+
+            if(requester != 0)
+                holder.decodedTrack.setUserData(String.valueOf(requester));
+            if(i == 0 && hasCurrent)
+                snapshot.resumesCurrent = true;
+
+            snapshot.tracks.add(holder.decodedTrack);
+        }
+
+        return snapshot;
+    }
+
+    private long requester(AudioTrack track) {
+        Object userData = track.getUserData();
+        if(userData == null)
+            return 0;
+
+        try {
+            return Long.parseLong(String.valueOf(userData));
+        } catch(NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private RBucket<byte[]> bucket(String guildId) {
+        return redisson.getBucket(KEY_PREFIX + guildId, ByteArrayCodec.INSTANCE);
+    }
+
+    private void delete(String guildId) {
+        bucket(guildId).delete();
+        index.remove(guildId);
+    }
+
+    private static class Snapshot {
+        private long position;
+        private TrackScheduler.Repeat repeatMode;
+        private boolean resumesCurrent;
+        private long textChannel;
+        private List<AudioTrack> tracks;
+        private long voiceChannel;
+    }
+}
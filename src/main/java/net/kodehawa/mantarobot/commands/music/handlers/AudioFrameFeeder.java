@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.music.handlers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.timgroup.statsd.StatsDClient;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.MantaroBot;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the frame rings of every {@link AudioPlayerSendHandler} topped up, so JDA's send thread only ever takes an already
+ * buffered frame instead of pulling it from the player itself.
+ * Also keeps the counters for underruns (the send thread found nothing buffered while a track was playing) and for how long
+ * frames wait on the ring before being sent.
+ */
+@Slf4j
+public class AudioFrameFeeder {
+    //Half a frame, so a ring never goes a whole frame without being topped up.
+    private static final long FEED_INTERVAL_MS = 10;
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+    private static final AudioFrameFeeder instance = new AudioFrameFeeder();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Mantaro-AudioFrameFeeder").setDaemon(true).setPriority(Thread.MAX_PRIORITY).build()
+    );
+    private final LongAdder framesSent = new LongAdder();
+    private final Set<AudioPlayerSendHandler> handlers = ConcurrentHashMap.newKeySet();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAdder underruns = new LongAdder();
+
+    private AudioFrameFeeder() {
+        executor.scheduleAtFixedRate(this::feed, FEED_INTERVAL_MS, FEED_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        executor.scheduleAtFixedRate(this::report, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static AudioFrameFeeder getInstance() {
+        return instance;
+    }
+
+    public void register(AudioPlayerSendHandler handler) {
+        handlers.add(handler);
+    }
+
+    public void unregister(AudioPlayerSendHandler handler) {
+        handlers.remove(handler);
+    }
+
+    void onFrameSent(long bufferedAt) {
+        framesSent.increment();
+        latencyNanos.add(System.nanoTime() - bufferedAt);
+    }
+
+    void onUnderrun() {
+        underruns.increment();
+    }
+
+    private void feed() {
+        for(AudioPlayerSendHandler handler : handlers) {
+            try {
+                handler.fill();
+            } catch(Exception e) {
+                //One broken player shouldn't stop every other guild's audio.
+                log.warn("Error buffering audio frames", e);
+            }
+        }
+    }
+
+    private void report() {
+        long sent = framesSent.sumThenReset();
+        long latency = latencyNanos.sumThenReset();
+        long missed = underruns.sumThenReset();
+
+        StatsDClient statsClient = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getStatsClient();
+        if(statsClient != null) {
+            statsClient.count("audio_frames_sent", sent);
+            statsClient.count("audio_frame_underruns", missed);
+            statsClient.gauge("audio_frame_latency", sent == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(latency / sent) / 1000D);
+            statsClient.gauge("audio_send_handlers", handlers.size());
+        }
+    }
+}
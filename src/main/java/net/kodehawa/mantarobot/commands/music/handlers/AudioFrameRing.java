@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.music.handlers;
+
+import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer, single-consumer ring of audio frames, used as a small jitter buffer between the thread that pulls frames from the
+ * player ({@link AudioFrameFeeder}) and JDA's audio send thread. Neither side ever blocks or takes a lock.
+ * Slots are reused for the whole life of the ring, so buffering a frame doesn't allocate anything.
+ * {@link #clear()} is the only method that can be called from any thread.
+ */
+public class AudioFrameRing {
+    private final AudioFrame[] frames;
+    //When each frame got buffered, in nanoseconds.
+    private final long[] bufferedAt;
+    private final int mask;
+    //Next slot to read, only moved by the consumer.
+    private final AtomicLong head = new AtomicLong();
+    //Next slot to write, only moved by the producer.
+    private final AtomicLong tail = new AtomicLong();
+    //Frames before this one get skipped by the consumer, see clear().
+    private final AtomicLong discardUntil = new AtomicLong();
+    private long lastBufferedAt;
+
+    /**
+     * @param capacity Maximum amount of buffered frames, must be a power of two.
+     */
+    public AudioFrameRing(int capacity) {
+        if(Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two, got " + capacity);
+
+        this.frames = new AudioFrame[capacity];
+        this.bufferedAt = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Buffers a frame. Must only be called from the producer thread.
+     *
+     * @param frame The frame.
+     * @return False if the ring was full and the frame wasn't buffered.
+     */
+    public boolean offer(AudioFrame frame) {
+        long t = tail.get();
+        if(t - head.get() >= frames.length)
+            return false;
+
+        int slot = (int) (t & mask);
+        frames[slot] = frame;
+        bufferedAt[slot] = System.nanoTime();
+        //Publishes the slot to the consumer.
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest buffered frame. Must only be called from the consumer thread.
+     *
+     * @return The frame, or null if the ring is empty.
+     */
+    public AudioFrame poll() {
+        long h = head.get();
+        long d = discardUntil.get();
+        if(h < d) {
+            for(long i = h; i < d; i++) {
+                frames[(int) (i & mask)] = null;
+            }
+
+            h = d;
+            head.lazySet(h);
+        }
+
+        if(h == tail.get())
+            return null;
+
+        int slot = (int) (h & mask);
+        AudioFrame frame = frames[slot];
+        lastBufferedAt = bufferedAt[slot];
+        frames[slot] = null;
+        //Hands the slot back to the producer.
+        head.lazySet(h + 1);
+        return frame;
+    }
+
+    /**
+     * Drops every frame buffered so far. Can be called from any thread: the consumer skips them on its next {@link #poll()},
+     * so a frame that's being buffered right now might still get through.
+     */
+    public void clear() {
+        long t = tail.get();
+        discardUntil.accumulateAndGet(t, Math::max);
+    }
+
+    /**
+     * @return When the last frame returned by {@link #poll()} got buffered, in nanoseconds. Only meaningful on the consumer thread.
+     */
+    public long getLastBufferedAt() {
+        return lastBufferedAt;
+    }
+
+    public boolean isFull() {
+        return tail.get() - head.get() >= frames.length;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return frames.length;
+    }
+}
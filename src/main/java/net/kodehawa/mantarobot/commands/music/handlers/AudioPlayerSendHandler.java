@@ -21,17 +21,32 @@ import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
 import net.dv8tion.jda.core.audio.AudioSendHandler;
 
 public class AudioPlayerSendHandler implements AudioSendHandler {
+    //8 frames, 160ms. Enough to ride over a late feed without making skips and pauses noticeably laggy.
+    private static final int BUFFER_SIZE = 8;
+
     private final AudioPlayer audioPlayer;
+    private final AudioFrameRing buffer = new AudioFrameRing(BUFFER_SIZE);
     private AudioFrame lastFrame;
 
     public AudioPlayerSendHandler(AudioPlayer audioPlayer) {
         this.audioPlayer = audioPlayer;
+        AudioFrameFeeder.getInstance().register(this);
     }
 
     @Override
     public boolean canProvide() {
-        lastFrame = audioPlayer.provide();
-        return lastFrame != null;
+        if(audioPlayer.isPaused())
+            return false;
+
+        lastFrame = buffer.poll();
+        if(lastFrame == null) {
+            if(audioPlayer.getPlayingTrack() != null)
+                AudioFrameFeeder.getInstance().onUnderrun();
+            return false;
+        }
+
+        AudioFrameFeeder.getInstance().onFrameSent(buffer.getLastBufferedAt());
+        return true;
     }
 
     @Override
@@ -43,4 +58,29 @@ public class AudioPlayerSendHandler implements AudioSendHandler {
     public boolean isOpus() {
         return true;
     }
+
+    /**
+     * Drops the frames buffered so far, so nothing of the old track gets played after a skip, a stop or a seek.
+     */
+    public void clear() {
+        buffer.clear();
+    }
+
+    /**
+     * Stops buffering frames for this handler. It won't provide anything else after what's already buffered.
+     */
+    public void close() {
+        AudioFrameFeeder.getInstance().unregister(this);
+    }
+
+    //Called from the feeder thread, which is the only producer of the buffer.
+    void fill() {
+        while(!buffer.isFull()) {
+            AudioFrame frame = audioPlayer.provide();
+            if(frame == null)
+                return;
+
+            buffer.offer(frame);
+        }
+    }
 }
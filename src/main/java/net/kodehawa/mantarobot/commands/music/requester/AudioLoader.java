@@ -39,8 +39,8 @@ import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -51,6 +51,7 @@ public class AudioLoader implements AudioLoadResultHandler {
     private final boolean insertFirst;
     private final GuildMusicManager musicManager;
     private final boolean skipSelection;
+    private Limits limits;
 
     public AudioLoader(GuildMusicManager musicManager, GuildMessageReceivedEvent event, boolean skipSelection, boolean insertFirst) {
         this.musicManager = musicManager;
@@ -76,35 +77,52 @@ public class AudioLoader implements AudioLoadResultHandler {
         }
 
         try {
-            int i = 0;
-            for(AudioTrack track : playlist.getTracks()) {
-                DBGuild dbGuild = MantaroData.db().getGuild(event.getGuild());
-                GuildData guildData = dbGuild.getData();
-                if(guildData.getMusicQueueSizeLimit() != null) {
-                    if(i < guildData.getMusicQueueSizeLimit()) {
-                        loadSingle(track, true);
-                    } else {
-                        event.getChannel().sendMessage(String.format(":warning: The queue you added had more than %d songs, so we added songs until this limit and ignored the rest.", guildData.getMusicQueueSizeLimit())).queue();
-                        break;
-                    }
-                } else {
-                    if(i > MAX_QUEUE_LENGTH && !dbGuild.isPremium()) {
-                        event.getChannel().sendMessage(":warning: The queue you added had more than " + MAX_QUEUE_LENGTH +
-                                " songs, so we added songs until this limit and ignored the rest.").queue();
-
-                        break; //stop adding songs
-                    } else {
-                        loadSingle(track, true);
-                    }
+            //Everything is checked against limits resolved once, and the accepted tracks are queued in a single operation.
+            Limits limits = limits();
+            List<AudioTrack> tracks = playlist.getTracks();
+            int playlistLimit = limits.guildQueueLimit != null ? limits.guildQueueLimit :
+                    limits.guildPremium ? Integer.MAX_VALUE : MAX_QUEUE_LENGTH;
+            long room = limits.isPremium() ? Long.MAX_VALUE : limits.queueLimit - musicManager.getTrackScheduler().getQueue().size();
+
+            List<AudioTrack> accepted = new ArrayList<>(Math.min(tracks.size(), playlistLimit));
+            int tooLong = 0;
+            long duration = 0;
+            for(AudioTrack track : tracks.subList(0, Math.min(tracks.size(), playlistLimit))) {
+                if(accepted.size() >= room)
+                    break;
+
+                if(track.getInfo().length > MAX_SONG_LENGTH && !limits.isPremium()) {
+                    tooLong++;
+                    continue;
                 }
 
-                i++;
+                track.setUserData(event.getAuthor().getId());
+                accepted.add(track);
+                duration += track.getInfo().length;
             }
 
-            event.getChannel().sendMessage(String.format(
+            musicManager.getTrackScheduler().queueAll(accepted, insertFirst);
+            musicManager.getTrackScheduler().setRequestedChannel(event.getChannel().getIdLong());
+            MantaroBot.getInstance().getStatsClient().count("tracks_loaded", accepted.size());
+
+            StringBuilder message = new StringBuilder(String.format(
                     "%sAdded **%d songs** to queue on playlist: **%s** *(%s)*",
-                    EmoteReference.CORRECT, i, playlist.getName(), Utils.getDurationMinutes(playlist.getTracks().stream().mapToLong(temp -> temp.getInfo().length).sum())
-            )).queue();
+                    EmoteReference.CORRECT, accepted.size(), playlist.getName(), Utils.getDurationMinutes(duration)
+            ));
+
+            if(tracks.size() > playlistLimit) {
+                message.append(String.format("\n:warning: The queue you added had more than %d songs, so we added songs until this limit and ignored the rest.", playlistLimit));
+            }
+
+            if(accepted.size() >= room && accepted.size() + tooLong < Math.min(tracks.size(), playlistLimit)) {
+                message.append("\n:warning: Surpassed queue song limit, the rest of the playlist wasn't queued.");
+            }
+
+            if(tooLong > 0) {
+                message.append(String.format("\n:warning: Skipped %d tracks longer than 32 minutes.", tooLong));
+            }
+
+            event.getChannel().sendMessage(message.toString()).queue();
         } catch(Exception e) {
             SentryHelper.captureExceptionContext(
                     "Cannot load playlist. I guess something broke pretty hard. Please check", e, this.getClass(), "Music Loader"
@@ -131,18 +149,15 @@ public class AudioLoader implements AudioLoadResultHandler {
     private void loadSingle(AudioTrack audioTrack, boolean silent) {
         AudioTrackInfo trackInfo = audioTrack.getInfo();
         audioTrack.setUserData(event.getAuthor().getId());
-        DBGuild dbGuild = MantaroData.db().getGuild(event.getGuild());
-        DBUser dbUser = MantaroData.db().getUser(event.getMember());
-        GuildData guildData = dbGuild.getData();
+        Limits limits = limits();
 
         String title = trackInfo.title;
         long length = trackInfo.length;
 
-        long queueLimit = !Optional.ofNullable(dbGuild.getData().getMusicQueueSizeLimit()).isPresent() ? MAX_QUEUE_LENGTH :
-                dbGuild.getData().getMusicQueueSizeLimit();
-        int fqSize = guildData.getMaxFairQueue();
+        long queueLimit = limits.queueLimit;
+        int fqSize = limits.fairQueueSize;
 
-        if(musicManager.getTrackScheduler().getQueue().size() > queueLimit && !dbUser.isPremium() && !dbGuild.isPremium()) {
+        if(musicManager.getTrackScheduler().getQueue().size() > queueLimit && !limits.isPremium()) {
             if(!silent)
                 event.getChannel().sendMessage(String.format(":warning: Could not queue %s: Surpassed queue song limit!", title)).queue(
                         message -> message.delete().queueAfter(30, TimeUnit.SECONDS)
@@ -150,7 +165,7 @@ public class AudioLoader implements AudioLoadResultHandler {
             return;
         }
 
-        if(audioTrack.getInfo().length > MAX_SONG_LENGTH && !dbUser.isPremium() && !dbGuild.isPremium()) {
+        if(audioTrack.getInfo().length > MAX_SONG_LENGTH && !limits.isPremium()) {
             event.getChannel().sendMessage(String.format(":warning: Could not queue %s: Track is longer than 32 minutes! (%s)", title, AudioUtils.getLength(length))).queue();
             return;
         }
@@ -175,6 +190,17 @@ public class AudioLoader implements AudioLoadResultHandler {
         MantaroBot.getInstance().getStatsClient().increment("tracks_loaded");
     }
 
+    //Only read once per request: a playlist used to read the guild and the user for every single track.
+    private Limits limits() {
+        if(limits == null) {
+            DBGuild dbGuild = MantaroData.db().getGuild(event.getGuild());
+            DBUser dbUser = MantaroData.db().getUser(event.getMember());
+            limits = new Limits(dbGuild, dbUser);
+        }
+
+        return limits;
+    }
+
     private void onSearch(AudioPlaylist playlist) {
         List<AudioTrack> list = playlist.getTracks();
         DiscordUtils.selectList(event, list.subList(0, Math.min(5, list.size())),
@@ -188,4 +214,25 @@ public class AudioLoader implements AudioLoadResultHandler {
 
         MantaroBot.getInstance().getStatsClient().increment("tracks_searched");
     }
+
+    private static class Limits {
+        private final int fairQueueSize;
+        private final boolean guildPremium;
+        private final Integer guildQueueLimit;
+        private final long queueLimit;
+        private final boolean userPremium;
+
+        Limits(DBGuild dbGuild, DBUser dbUser) {
+            GuildData guildData = dbGuild.getData();
+            this.fairQueueSize = guildData.getMaxFairQueue();
+            this.guildPremium = dbGuild.isPremium();
+            this.guildQueueLimit = guildData.getMusicQueueSizeLimit();
+            this.queueLimit = guildQueueLimit == null ? MAX_QUEUE_LENGTH : guildQueueLimit;
+            this.userPremium = dbUser.isPremium();
+        }
+
+        boolean isPremium() {
+            return userPremium || guildPremium;
+        }
+    }
 }
@@ -23,7 +23,6 @@ import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
 import lombok.Getter;
-import lombok.Setter;
 import net.dv8tion.jda.core.MessageBuilder;
 import net.dv8tion.jda.core.entities.*;
 import net.dv8tion.jda.core.managers.AudioManager;
@@ -38,14 +37,18 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 public class TrackScheduler extends AudioEventAdapter {
     @Getter
     private final AudioPlayer audioPlayer;
     private final String guildId;
+    //Changes go through this class, so the modification counter stays right.
     @Getter
     private final ConcurrentLinkedDeque<AudioTrack> queue;
+    //Bumped on every change to the queue, the current track or the settings, see getModifications().
+    private final AtomicLong modifications = new AtomicLong();
     @Getter
     private final List<String> voteSkips;
     @Getter
@@ -54,9 +57,8 @@ public class TrackScheduler extends AudioEventAdapter {
     @Getter
     private AudioTrack previousTrack, currentTrack;
     @Getter
-    @Setter
     private Repeat repeatMode;
-    @Setter
+    @Getter
     private long requestedChannel;
 
     public TrackScheduler(AudioPlayer player, String guildId) {
@@ -67,7 +69,29 @@ public class TrackScheduler extends AudioEventAdapter {
         this.voteStop = new ArrayList<>();
     }
 
+    /**
+     * @return A counter that changes every time the queue, the current track, the repeat mode or the requested channel change.
+     * Lets whoever keeps a copy of the queue tell whether it's outdated without going through it.
+     */
+    public long getModifications() {
+        return modifications.get();
+    }
+
+    public void setRepeatMode(Repeat repeatMode) {
+        this.repeatMode = repeatMode;
+        modifications.incrementAndGet();
+    }
+
+    public void setRequestedChannel(long requestedChannel) {
+        if(this.requestedChannel == requestedChannel)
+            return;
+
+        this.requestedChannel = requestedChannel;
+        modifications.incrementAndGet();
+    }
+
     public void queue(AudioTrack track, boolean addFirst) {
+        modifications.incrementAndGet();
         if(!audioPlayer.startTrack(track, true)) {
             if(addFirst)
                 queue.addFirst(track);
@@ -82,7 +106,34 @@ public class TrackScheduler extends AudioEventAdapter {
         queue(track, false);
     }
 
+    /**
+     * Queues several tracks in one go, keeping their order. If nothing is playing, the first one starts right away.
+     *
+     * @param tracks   The tracks to queue.
+     * @param addFirst Whether to put them at the start of the queue instead of the end.
+     */
+    public void queueAll(List<AudioTrack> tracks, boolean addFirst) {
+        if(tracks.isEmpty())
+            return;
+
+        modifications.incrementAndGet();
+        List<AudioTrack> toQueue = tracks;
+        if(audioPlayer.startTrack(tracks.get(0), true)) {
+            currentTrack = tracks.get(0);
+            toQueue = tracks.subList(1, tracks.size());
+        }
+
+        if(addFirst) {
+            for(int i = toQueue.size() - 1; i >= 0; i--) {
+                queue.addFirst(toQueue.get(i));
+            }
+        } else {
+            queue.addAll(toQueue);
+        }
+    }
+
     public void nextTrack(boolean force, boolean skip) {
+        modifications.incrementAndGet();
         getVoteSkips().clear();
         if(repeatMode == Repeat.SONG && currentTrack != null && !force) {
             queue(currentTrack.makeClone());
@@ -168,6 +219,7 @@ public class TrackScheduler extends AudioEventAdapter {
 
         queue.clear();
         queue.addAll(tempList);
+        modifications.incrementAndGet();
     }
 
     public MantaroShard getShard() {
@@ -180,15 +232,21 @@ public class TrackScheduler extends AudioEventAdapter {
     }
 
     public void stop() {
-        queue.clear();
+        clearQueue();
         onStop();
     }
 
+    public void clearQueue() {
+        queue.clear();
+        modifications.incrementAndGet();
+    }
+
     public void getQueueAsList(Consumer<List<AudioTrack>> list) {
         List<AudioTrack> tempList = new ArrayList<>(getQueue());
         list.accept(tempList);
         queue.clear();
         queue.addAll(tempList);
+        modifications.incrementAndGet();
     }
 
     private void onStop() {
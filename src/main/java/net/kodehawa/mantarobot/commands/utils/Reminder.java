@@ -16,38 +16,50 @@
 
 package net.kodehawa.mantarobot.commands.utils;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.entities.Message;
 import net.dv8tion.jda.core.entities.User;
 import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.core.shard.MantaroShard;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.ManagedObject;
 import net.kodehawa.mantarobot.db.entities.DBUser;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 
+import javax.annotation.Nonnull;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
-public class Reminder {
-    @JsonIgnore
-    public static final Map<String, List<Reminder>> CURRENT_REMINDERS = new HashMap<>();
-    @JsonIgnore
-    private static final ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
+/**
+ * A reminder, saved on its own table and fired by a timer on {@link MantaroBot#getTimers()}.
+ * Saved reminders get scheduled again on startup by {@link #restore()}.
+ */
+@Slf4j
+public class Reminder implements ManagedObject {
+    public static final String DB_TABLE = "reminders";
     @JsonIgnore
-    private Future<?> scheduledReminder;
+    public static final Map<String, List<Reminder>> CURRENT_REMINDERS = new ConcurrentHashMap<>();
+    private static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
 
     public final String id;
     public final String reminder;
     public final long time;
+    @JsonProperty("scheduledAtMillis")
     private final long scheduledAtMillis;
+    @JsonProperty("userId")
     private final String userId;
+    @JsonProperty("offset")
     private final long offset;
 
+    @JsonCreator
     private Reminder(@JsonProperty("id") String id, @JsonProperty("userId") String userId, @JsonProperty("reminder") String reminder,
                      @JsonProperty("scheduledAtMillis") long scheduledAt, @JsonProperty("time") long time, @JsonProperty("offset") long offset) {
         this.id = id;
@@ -56,37 +68,60 @@ public class Reminder {
         this.time = time;
         this.scheduledAtMillis = scheduledAt;
         this.offset = offset;
+    }
 
-        CURRENT_REMINDERS.computeIfAbsent(userId, (wew) -> new ArrayList<>());
-        DBUser user = MantaroData.db().getUser(userId);
-        user.getData().setReminderN(user.getData().getReminderN() + 1);
-        user.saveAsync();
+    /**
+     * Schedules every saved reminder again. Called once on startup.
+     */
+    public static void restore() {
+        List<Reminder> reminders = MantaroData.db().getReminders();
+        reminders.forEach(Reminder::schedule);
+        log.info("Scheduled {} reminders", reminders.size());
     }
 
     public void schedule() {
-        CURRENT_REMINDERS.computeIfPresent(userId, (id, list) -> {
-            list.add(this);
-            return list;
-        });
+        CURRENT_REMINDERS.computeIfAbsent(userId, (wew) -> new CopyOnWriteArrayList<>()).add(this);
+        scheduleAt(time - offset);
+    }
+
+    private void scheduleAt(long at) {
+        MantaroBot.getTimers().schedule("reminder:" + id, at, this::fire);
+    }
 
-        scheduledReminder = service.schedule(() -> {
-            User user = MantaroBot.getInstance().getUserById(userId);
-            if(user == null) return;
-            removeCurrent();
+    private void fire() {
+        User user = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getUserById(userId);
+        if(user == null && !allShardsConnected()) {
+            //Can't tell if the user is gone or if their shard didn't load yet (eg. reminders that came due while we were down), try again later.
+            scheduleAt(System.currentTimeMillis() + RETRY_DELAY);
+            return;
+        }
 
-            //Ignore "cannot open a private channel with this user"
-            AtomicReference<Consumer<Message>> c = new AtomicReference<>();
-            Consumer<Throwable> ignore = (t) -> {};
+        removeCurrent();
+        delete();
+        if(user == null) return;
 
-            user.openPrivateChannel().queue(channel -> channel.sendMessage(
-                    EmoteReference.POPPER + "**Reminder!**\n" + "You asked me to remind you of: " + reminder + "\nAt: " + new Date(scheduledAtMillis)
-            ).queue(c.get(), ignore));
-        }, (time - scheduledAtMillis) - offset, TimeUnit.MILLISECONDS);
+        //Ignore "cannot open a private channel with this user"
+        AtomicReference<Consumer<Message>> c = new AtomicReference<>();
+        Consumer<Throwable> ignore = (t) -> {};
+
+        user.openPrivateChannel().queue(channel -> channel.sendMessage(
+                EmoteReference.POPPER + "**Reminder!**\n" + "You asked me to remind you of: " + reminder + "\nAt: " + new Date(scheduledAtMillis)
+        ).queue(c.get(), ignore));
+    }
+
+    private static boolean allShardsConnected() {
+        for(MantaroShard shard : MantaroBot.getInstance().getShardList()) {
+            if(shard == null || shard.getStatus() != JDA.Status.CONNECTED)
+                return false;
+        }
+
+        return true;
     }
 
     public Reminder cancel() {
         removeCurrent();
-        scheduledReminder.cancel(true);
+        MantaroBot.getTimers().cancel("reminder:" + id);
+        deleteAsync();
         return this;
     }
 
@@ -97,6 +132,19 @@ public class Reminder {
         });
     }
 
+    @Nonnull
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @JsonIgnore
+    @Nonnull
+    @Override
+    public String getTableName() {
+        return DB_TABLE;
+    }
+
     public static class Builder {
         private long current;
         private String reminder;
@@ -140,7 +188,13 @@ public class Reminder {
             if(current <= 0)
                 throw new IllegalArgumentException("Current time must be positive and >0");
 
-            return new Reminder(UUID.randomUUID().toString(), userId, reminder, current, time, offset);
+            DBUser user = MantaroData.db().getUser(userId);
+            user.getData().setReminderN(user.getData().getReminderN() + 1);
+            user.saveAsync();
+
+            Reminder r = new Reminder(UUID.randomUUID().toString(), userId, reminder, current, time, offset);
+            r.saveAsync();
+            return r;
         }
     }
 }
@@ -18,26 +18,32 @@ package net.kodehawa.mantarobot.commands.utils.birthday;
 
 import com.rethinkdb.model.OptArgs;
 import com.rethinkdb.net.Cursor;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import lombok.extern.slf4j.Slf4j;
 import net.kodehawa.mantarobot.data.MantaroData;
 
-import java.util.HashMap;
-import java.util.List;
+import java.time.LocalDate;
+import java.time.MonthDay;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import static com.rethinkdb.RethinkDB.r;
 
 /**
- * Caches the birthday date of all users seen on bot startup and adds them to a local ConcurrentHashMap.
- * This will later be used on {@link BirthdayTask}
+ * Caches the birthday date of all users seen on bot startup, indexed by the day of the year they were born on.
+ * This will later be used on {@link BirthdayTask}, which only needs to look at the users born today and yesterday.
  */
 @Slf4j
 public class BirthdayCacher {
-    public Map<String, String> cachedBirthdays = new ConcurrentHashMap<>();
+    //Buckets are laid out as the days of a leap year, so the 29th of February gets its own.
+    private static final int LEAP_YEAR = 2000;
     public volatile boolean isDone;
+    //Replaced as a whole when a new cache finishes building, so readers never see a half-built or mismatched index.
+    private volatile Snapshot snapshot = new Snapshot(newDays(), new TLongObjectHashMap<>());
     private ExecutorService executorService = Executors.newFixedThreadPool(1);
 
     public BirthdayCacher() {
@@ -45,30 +51,112 @@ public class BirthdayCacher {
         cache();
     }
 
+    private static TLongList[] newDays() {
+        TLongList[] days = new TLongList[366];
+        for(int i = 0; i < days.length; i++) {
+            days[i] = new TLongArrayList();
+        }
+        return days;
+    }
+
+    private static int dayIndex(int month, int day) {
+        return MonthDay.of(month, day).atYear(LEAP_YEAR).getDayOfYear() - 1;
+    }
+
+    @SuppressWarnings("unchecked")
     public void cache() {
         executorService.submit(() -> {
             try {
-                Cursor<Map> m = r.table("users").run(MantaroData.conn(), OptArgs.of("read_mode", "outdated"));
-                cachedBirthdays.clear();
-                List<Map> m1 = m.toList();
+                TLongList[] newDays = newDays();
+                TLongObjectMap<String> newBirthdays = new TLongObjectHashMap<>();
+
+                //Only bring the fields we need, and go through them as they come instead of loading the whole table into a list.
+                Cursor<Map> m = r.table("users")
+                        .pluck("id", r.hashMap("data", "birthday"))
+                        .run(MantaroData.conn(), OptArgs.of("read_mode", "outdated"));
 
-                for(Map r : m1) {
+                while(m.hasNext()) {
+                    Map r = m.next();
                     //Blame rethinkdb for the casting hell thx
-                    String birthday = (String) ((HashMap) r.get("data")).get("birthday");
-                    if(birthday != null && !birthday.isEmpty()) {
+                    Object data = r.get("data");
+                    String birthday = data instanceof Map ? (String) ((Map) data).get("birthday") : null;
+                    if(birthday == null || birthday.length() < 5)
+                        continue;
+
+                    try {
+                        long id = Long.parseLong(String.valueOf(r.get("id")));
+                        int day = Integer.parseInt(birthday.substring(0, 2));
+                        int month = Integer.parseInt(birthday.substring(3, 5));
+                        newDays[dayIndex(month, day)].add(id);
+                        newBirthdays.put(id, birthday);
                         log.debug("-> PROCESS: {}", r);
-                        cachedBirthdays.put(String.valueOf(r.get("id")), birthday);
+                    } catch(Exception e) {
+                        log.debug("-> SKIP (invalid birthday): {}", r);
                     }
                 }
 
-                log.debug("-> [CACHE] Birthdays: {}", cachedBirthdays);
-
                 m.close();
+                snapshot = new Snapshot(newDays, newBirthdays);
                 isDone = true;
-                log.info("Cached all birthdays!");
+                log.info("Cached all birthdays! ({} users)", newBirthdays.size());
             } catch(Exception e) {
                 e.printStackTrace();
             }
         });
     }
+
+    /**
+     * Use this instead of calling the lookups on the cacher one after another when their results have to match,
+     * as the cache could get replaced in between.
+     *
+     * @return The current version of the cache, which never changes.
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public TLongList getBirthdaysOn(LocalDate date) {
+        return snapshot.getBirthdaysOn(date);
+    }
+
+    public String getBirthday(long userId) {
+        return snapshot.getBirthday(userId);
+    }
+
+    public boolean isEmpty() {
+        return snapshot.isEmpty();
+    }
+
+    /**
+     * One version of the cache: both indexes, built together and never modified after being published.
+     */
+    public static class Snapshot {
+        private final TLongList[] days;
+        private final TLongObjectMap<String> birthdays;
+
+        private Snapshot(TLongList[] days, TLongObjectMap<String> birthdays) {
+            this.days = days;
+            this.birthdays = birthdays;
+        }
+
+        /**
+         * @param date The date to look up.
+         * @return The ids of the users born on the day and month of the given date.
+         */
+        public TLongList getBirthdaysOn(LocalDate date) {
+            return days[dayIndex(date.getMonthValue(), date.getDayOfMonth())];
+        }
+
+        /**
+         * @param userId The id of the user.
+         * @return The cached birthday of the user, formatted as dd-MM-yyyy, or null if they don't have one.
+         */
+        public String getBirthday(long userId) {
+            return birthdays.get(userId);
+        }
+
+        public boolean isEmpty() {
+            return birthdays.isEmpty();
+        }
+    }
 }
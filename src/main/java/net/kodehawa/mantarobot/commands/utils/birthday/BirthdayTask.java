@@ -16,6 +16,9 @@
 
 package net.kodehawa.mantarobot.commands.utils.birthday;
 
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
 import io.sentry.Sentry;
 import lombok.extern.slf4j.Slf4j;
 import net.dv8tion.jda.core.JDA;
@@ -23,23 +26,43 @@ import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.entities.Member;
 import net.dv8tion.jda.core.entities.Role;
 import net.dv8tion.jda.core.entities.TextChannel;
-import net.dv8tion.jda.core.utils.cache.SnowflakeCacheView;
+import net.dv8tion.jda.core.entities.User;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
 import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
-import org.apache.commons.lang3.time.FastDateFormat;
 
-import java.util.Calendar;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class BirthdayTask {
-    private static FastDateFormat dateFormat = FastDateFormat.getInstance("dd-MM-yyyy");
+    private static final TLongList EMPTY = new TLongArrayList(0);
     private ManagedDatabase db = MantaroData.db();
 
+    //The guilds of this shard each of the users is in, with the users that are in each of them.
+    private static Map<Guild, TLongList> byGuild(JDA jda, TLongList userIds) {
+        Map<Guild, TLongList> result = new HashMap<>();
+        for(TLongIterator it = userIds.iterator(); it.hasNext(); ) {
+            long userId = it.next();
+            User user = jda.getUserById(userId);
+            if(user == null)
+                continue;
+
+            for(Guild guild : user.getMutualGuilds()) {
+                result.computeIfAbsent(guild, g -> new TLongArrayList()).add(userId);
+            }
+        }
+
+        return result;
+    }
+
     public void handle(int shardId) {
         try {
             BirthdayCacher cache = MantaroBot.getInstance().getBirthdayCacher();
@@ -52,13 +75,19 @@ public class BirthdayTask {
 
             log.info("Checking birthdays in shard {} to assign roles...", jda.getShardInfo() == null ? 0 : jda.getShardInfo().getShardId());
             long start = System.currentTimeMillis();
-            Calendar cal = Calendar.getInstance();
-            String now = dateFormat.format(cal.getTime()).substring(0, 5);
-            Map<String, String> cached = cache.cachedBirthdays;
-            SnowflakeCacheView<Guild> guilds = jda.getGuildCache();
+            LocalDate today = LocalDate.now();
+            //Only the people born today need the role, and only the ones born yesterday could still have it.
+            BirthdayCacher.Snapshot birthdays = cache.snapshot();
+            //Nothing changes on guilds none of them are in, so only those get their settings fetched.
+            Map<Guild, TLongList> birthdaysToday = byGuild(jda, birthdays.getBirthdaysOn(today));
+            Map<Guild, TLongList> birthdaysYesterday = byGuild(jda, birthdays.getBirthdaysOn(today.minusDays(1)));
+            Set<Guild> guilds = new HashSet<>(birthdaysToday.keySet());
+            guilds.addAll(birthdaysYesterday.keySet());
+            //Fetch the settings of all of them at once instead of doing one request per guild.
+            Map<String, DBGuild> dbGuilds = db.getGuilds(guilds.stream().map(Guild::getId).collect(Collectors.toList()));
 
             for(Guild guild : guilds) {
-                GuildData tempData = db.getGuild(guild).getData();
+                GuildData tempData = dbGuilds.get(guild.getId()).getData();
                 if(tempData.getBirthdayChannel() != null && tempData.getBirthdayRole() != null) {
                     Role birthdayRole = guild.getRoleById(tempData.getBirthdayRole());
                     TextChannel channel = guild.getTextChannelById(tempData.getBirthdayChannel());
@@ -73,53 +102,45 @@ public class BirthdayTask {
                         if(birthdayRole.isManaged())
                             continue;
 
-                        Map<String, String> guildMap = cached.entrySet().stream().filter(map -> guild.getMemberById(map.getKey()) != null)
-                                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-
-                        for(Map.Entry<String, String> data : guildMap.entrySet()) {
-                            Member member = guild.getMemberById(data.getKey());
-                            String birthday = data.getValue();
-
-                            if(birthday == null) {
-                                log.debug("Birthday is null? Continuing to next iteration...");
-                                continue; //shouldn't happen
-                            }
-                            //else start the assigning
-
-                            //tada!
-                            if(birthday.substring(0, 5).equals(now)) {
-                                log.debug("Assigning birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
-                                if(!member.getRoles().contains(birthdayRole)) {
-                                    try {
-                                        guild.getController().addSingleRoleToMember(member, birthdayRole)
-                                                .reason("Birthday assigner. If you see this happening for every member of your server, or in unintended ways, please do ~>opts birthday disable")
-                                                .queue(s -> {
+                        //tada!
+                        for(TLongIterator it = birthdaysToday.getOrDefault(guild, EMPTY).iterator(); it.hasNext(); ) {
+                            Member member = guild.getMemberById(it.next());
+                            if(member == null || member.getRoles().contains(birthdayRole))
+                                continue;
+
+                            log.debug("Assigning birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
+                            try {
+                                guild.getController().addSingleRoleToMember(member, birthdayRole)
+                                        .reason("Birthday assigner. If you see this happening for every member of your server, or in unintended ways, please do ~>opts birthday disable")
+                                        .queue(s -> {
                                                     channel.sendMessage(String.format(EmoteReference.POPPER + "**%s is a year older now! Wish them a happy birthday.** :tada:",
                                                             member.getEffectiveName())).queue();
                                                     MantaroBot.getInstance().getStatsClient().increment("birthdays_logged");
                                                 }
                                         );
-                                        log.debug("Assigned birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
-                                        i++;
-                                        //Something went boom, ignore and continue
-                                    } catch(Exception e) {
-                                        log.debug("Something went boom while assigning a birthday role?...");
-                                    }
-                                }
-                            } else {
-                                //day passed
-                                if(member.getRoles().contains(birthdayRole)) {
-                                    try {
-                                        log.debug("Removing birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
-                                        guild.getController().removeRolesFromMember(member, birthdayRole)
-                                                .reason("Birthday assigner. If you see this happening for every member of your server, or in unintended ways, please do ~>opts birthday disable")
-                                                .queue();
-                                        r++;
-                                        //Something went boom, ignore and continue
-                                    } catch(Exception e) {
-                                        log.debug("Something went boom while removing a birthday role?...");
-                                    }
-                                }
+                                log.debug("Assigned birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
+                                i++;
+                                //Something went boom, ignore and continue
+                            } catch(Exception e) {
+                                log.debug("Something went boom while assigning a birthday role?...");
+                            }
+                        }
+
+                        //day passed
+                        for(TLongIterator it = birthdaysYesterday.getOrDefault(guild, EMPTY).iterator(); it.hasNext(); ) {
+                            Member member = guild.getMemberById(it.next());
+                            if(member == null || !member.getRoles().contains(birthdayRole))
+                                continue;
+
+                            try {
+                                log.debug("Removing birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
+                                guild.getController().removeRolesFromMember(member, birthdayRole)
+                                        .reason("Birthday assigner. If you see this happening for every member of your server, or in unintended ways, please do ~>opts birthday disable")
+                                        .queue();
+                                r++;
+                                //Something went boom, ignore and continue
+                            } catch(Exception e) {
+                                log.debug("Something went boom while removing a birthday role?...");
                             }
                         }
                     }
@@ -18,11 +18,13 @@ package net.kodehawa.mantarobot.core;
 
 import com.google.common.base.Preconditions;
 import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.entities.Member;
 import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.commands.info.stats.manager.CategoryStatsManager;
 import net.kodehawa.mantarobot.commands.info.stats.manager.CommandStatsManager;
+import net.kodehawa.mantarobot.core.metrics.CommandLatency;
 import net.kodehawa.mantarobot.core.modules.commands.AliasCommand;
 import net.kodehawa.mantarobot.core.modules.commands.SimpleTreeCommand;
 import net.kodehawa.mantarobot.core.modules.commands.SubCommand;
@@ -30,19 +32,25 @@ import net.kodehawa.mantarobot.core.modules.commands.TreeCommand;
 import net.kodehawa.mantarobot.core.modules.commands.base.Category;
 import net.kodehawa.mantarobot.core.modules.commands.base.Command;
 import net.kodehawa.mantarobot.core.modules.commands.base.CommandPermission;
+import net.kodehawa.mantarobot.core.processor.core.MessageContext;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.Blacklist;
 import net.kodehawa.mantarobot.db.entities.DBGuild;
-import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
+import net.kodehawa.mantarobot.db.entities.helpers.GuildPermissionIndex;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 
 @Slf4j
 public class CommandRegistry {
 
     private final Map<String, Command> commands;
     private final Config conf = MantaroData.config().get();
+    //Looks up commands that only exist on some guilds (custom commands), by guild and name.
+    private BiFunction<Guild, String, Command> guildCommands = (guild, name) -> null;
 
     public CommandRegistry(Map<String, Command> commands) {
         this.commands = Preconditions.checkNotNull(commands);
@@ -56,70 +64,126 @@ public class CommandRegistry {
         return commands;
     }
 
+    /**
+     * Looks up a command by name, including the ones that only exist on the given guild.
+     *
+     * @param guild The guild the command would be run on.
+     * @param name  The name of the command.
+     * @return The command, or null if there's no command with that name there.
+     */
+    public Command getCommand(Guild guild, String name) {
+        Command command = commands.get(name);
+        return command == null ? guildCommands.apply(guild, name) : command;
+    }
+
+    public void setGuildCommands(BiFunction<Guild, String, Command> guildCommands) {
+        this.guildCommands = Preconditions.checkNotNull(guildCommands);
+    }
+
     //BEWARE OF INSTANCEOF CALLS
     //I know there are better approaches to this, THIS IS JUST A WORKAROUND, DON'T TRY TO REPLICATE THIS.
     public boolean process(GuildMessageReceivedEvent event, String cmdName, String content) {
-        long start = System.currentTimeMillis();
-        Command command = commands.get(cmdName);
+        return process(new MessageContext(event), cmdName, content);
+    }
+
+    public boolean process(MessageContext context, String cmdName, String content) {
+        GuildMessageReceivedEvent event = context.getEvent();
+        CommandLatency latency = CommandLatency.getInstance();
+        long start = System.nanoTime();
+        String name = cmdName;
+        Command command = commands.get(name);
 
         if(command == null) {
-            command = commands.get(cmdName.toLowerCase());
+            name = cmdName.toLowerCase();
+            command = commands.get(name);
 
-            if(command == null)
-                return false;
+            if(command == null) {
+                command = guildCommands.apply(event.getGuild(), cmdName);
+                //Custom commands can have any name, don't keep a histogram for each one of them.
+                name = "custom";
+            }
         }
 
+        long resolved = System.nanoTime();
+        latency.record(CommandLatency.Phase.LOOKUP, resolved - start);
+
+        if(command == null)
+            return false;
+
         //Variable used in lambda expression should be final or effectively final...
         final Command cmd = command;
 
-        if(MantaroData.db().getMantaroData().getBlackListedUsers().contains(event.getAuthor().getId())) {
+        long guildLookup = context.getGuildLookupNanos();
+        boolean allowed = canRun(context, cmd, cmdName);
+        //The guild lookup (if it wasn't done while matching the prefix) is recorded on its own.
+        latency.record(CommandLatency.Phase.PERMISSIONS, System.nanoTime() - resolved - (context.getGuildLookupNanos() - guildLookup));
+
+        if(!allowed)
             return false;
-        }
 
-        DBGuild dbg = MantaroData.db().getGuild(event.getGuild());
-        GuildData data = dbg.getData();
+        MantaroBot.getInstance().getStatsClient().increment("commands");
+        log.debug("Command invoked: {}, by {}#{} with timestamp {}", cmdName, event.getAuthor().getName(), event.getAuthor().getDiscriminator(), new Date(System.currentTimeMillis()));
 
-        if(data.getDisabledCommands().contains(cmd instanceof AliasCommand ? ((AliasCommand) cmd).getOriginalName() : cmdName)) {
-            return false;
+        long executionStart = System.nanoTime();
+        cmd.run(event, cmdName, content);
+        latency.recordExecution(cmd instanceof AliasCommand ? ((AliasCommand) cmd).getOriginalName() : name, System.nanoTime() - executionStart);
+
+        if(cmd.category() != null && cmd.category().name() != null && !cmd.category().name().isEmpty()) {
+            MantaroBot.getInstance().getStatsClient().increment("command", "name:" + cmdName);
+            MantaroBot.getInstance().getStatsClient().increment("category", "name:" + cmd.category().name().toLowerCase());
+            CommandStatsManager.log(cmdName);
+            CategoryStatsManager.log(cmd.category().name().toLowerCase());
         }
 
-        List<String> channelDisabledCommands = data.getChannelSpecificDisabledCommands().get(event.getChannel().getId());
-        if(channelDisabledCommands != null && channelDisabledCommands.contains(cmd instanceof AliasCommand ? ((AliasCommand) cmd).getOriginalName() : cmdName)) {
+        MantaroBot.getInstance().getStatsClient().histogram("command_process_time", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        return true;
+    }
+
+    //Blacklist, disabled commands, categories, channels and roles, and the command's own permission.
+    private boolean canRun(MessageContext context, Command cmd, String cmdName) {
+        GuildMessageReceivedEvent event = context.getEvent();
+
+        if(Blacklist.isUserBlacklisted(event.getAuthor().getIdLong())) {
             return false;
         }
 
-        if(data.getDisabledUsers().contains(event.getAuthor().getId()) && !isAdmin(event.getMember())) {
+        DBGuild dbg = context.getDBGuild();
+        GuildPermissionIndex index = dbg.getPermissionIndex();
+        String originalName = cmd instanceof AliasCommand ? ((AliasCommand) cmd).getOriginalName() : cmdName;
+        Category category = cmd instanceof AliasCommand ? ((AliasCommand) cmd).parentCategory() : cmd.category();
+        int commandId = GuildPermissionIndex.lookupCommandId(originalName);
+        long channelId = event.getChannel().getIdLong();
+
+        if(index.isCommandDisabled(commandId)) {
             return false;
         }
 
-        if(data.getDisabledChannels().contains(event.getChannel().getId()) && (cmd instanceof AliasCommand ? ((AliasCommand) cmd).parentCategory() != Category.MODERATION : cmd.category() != Category.MODERATION)) {
+        if(index.isCommandDisabled(commandId, channelId)) {
             return false;
         }
 
-        if(conf.isPremiumBot() && (cmd instanceof AliasCommand ? ((AliasCommand) cmd).parentCategory() == Category.CURRENCY : cmd.category() == Category.CURRENCY)) {
+        if(index.isUserDisabled(event.getAuthor().getIdLong()) && !isAdmin(event.getMember())) {
             return false;
         }
 
-        if(data.getDisabledCategories().contains(cmd instanceof AliasCommand ? ((AliasCommand) cmd).parentCategory() : cmd.category())) {
+        if(index.isChannelDisabled(channelId) && category != Category.MODERATION) {
             return false;
         }
 
-        if(data.getChannelSpecificDisabledCategories().computeIfAbsent(event.getChannel().getId(), c ->
-                new ArrayList<>()).contains(cmd instanceof AliasCommand ? ((AliasCommand) cmd).parentCategory() : cmd.category())) {
+        if(conf.isPremiumBot() && category == Category.CURRENCY) {
             return false;
         }
 
-        if(!data.getDisabledRoles().isEmpty() && event.getMember().getRoles().stream().anyMatch(r -> data.getDisabledRoles().contains(r.getId())) && !isAdmin(event.getMember())) {
+        if(index.isCategoryDisabled(category)) {
             return false;
         }
 
-        HashMap<String, List<String>> roleSpecificDisabledCommands = data.getRoleSpecificDisabledCommands();
-        if(event.getMember().getRoles().stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(r.getId(), s -> new ArrayList<>()).contains(cmd instanceof AliasCommand ? ((AliasCommand) cmd).getOriginalName() : cmdName)) && !isAdmin(event.getMember())) {
+        if(index.isCategoryDisabled(category, channelId)) {
             return false;
         }
 
-        HashMap<String, List<Category>> roleSpecificDisabledCategories = data.getRoleSpecificDisabledCategories();
-        if(event.getMember().getRoles().stream().anyMatch(r -> roleSpecificDisabledCategories.computeIfAbsent(r.getId(), s -> new ArrayList<>()).contains(cmd instanceof AliasCommand ? ((AliasCommand) cmd).parentCategory() : cmd.category())) && !isAdmin(event.getMember())) {
+        if(index.hasRoleRestrictions() && index.isDisabledForRoles(event.getMember().getRoles(), commandId, category) && !isAdmin(event.getMember())) {
             return false;
         }
 
@@ -135,20 +199,6 @@ public class CommandRegistry {
             return false;
         }
 
-        long end = System.currentTimeMillis();
-        MantaroBot.getInstance().getStatsClient().increment("commands");
-        log.debug("Command invoked: {}, by {}#{} with timestamp {}", cmdName, event.getAuthor().getName(), event.getAuthor().getDiscriminator(), new Date(System.currentTimeMillis()));
-        cmd.run(event, cmdName, content);
-
-        if(cmd.category() != null && cmd.category().name() != null && !cmd.category().name().isEmpty()) {
-            MantaroBot.getInstance().getStatsClient().increment("command", "name:" + cmdName);
-            MantaroBot.getInstance().getStatsClient().increment("category", "name:" + cmd.category().name().toLowerCase());
-            CommandStatsManager.log(cmdName);
-            CategoryStatsManager.log(cmd.category().name().toLowerCase());
-        }
-
-        MantaroBot.getInstance().getStatsClient().histogram("command_process_time", (end - start));
-
         return true;
     }
 
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.timgroup.statsd.StatsDClient;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.data.Config;
+import net.kodehawa.mantarobot.data.MantaroData;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide executor for incoming guild messages, shared by every shard.
+ * It runs on a fixed amount of threads, so a burst of slow commands queues up instead of spawning new threads.
+ * <p>
+ * Every guild gets its own queue, and the workers go through the guilds with pending work in round-robin, taking one message
+ * from each, so a single noisy guild can't starve the rest.
+ * Messages that look like commands get dropped when their guild already has too many pending, when the whole queue is full,
+ * or when they waited on the queue for too long (whoever sent them probably gave up already). Whoever submitted them gets
+ * told, so the user can be let know.
+ * <p>
+ * Everything else (plain chat, which only feeds the experience handler) goes on a separate background lane: it doesn't count
+ * towards the per-guild limit, only runs when the guild has no commands pending, and gets dropped silently when the scheduler
+ * is over its limit.
+ * <p>
+ * Queue depth, wait time, run time and dropped messages are reported to StatsD.
+ */
+@Slf4j
+public class CommandScheduler {
+    private static final CommandScheduler INSTANCE = new CommandScheduler(MantaroData.config().get());
+
+    private final Map<Long, GuildQueue> queues = new ConcurrentHashMap<>();
+    private final BlockingQueue<GuildQueue> ready = new LinkedBlockingQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger pendingBackground = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final int maxPending;
+    private final int maxPendingPerGuild;
+    private final long maxWaitMs;
+
+    private CommandScheduler(Config config) {
+        this.maxPending = config.commandQueueSize;
+        this.maxPendingPerGuild = config.commandGuildQueueSize;
+        this.maxWaitMs = config.commandMaxWaitMs;
+
+        ThreadFactory factory = new ThreadFactoryBuilder()
+                .setNameFormat("Mantaro-CommandScheduler Thread-%d")
+                .setDaemon(true)
+                .build();
+        for(int i = 0; i < config.commandThreads; i++) {
+            factory.newThread(this::work).start();
+        }
+
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Mantaro-CommandScheduler Reporter").setDaemon(true).build())
+                .scheduleAtFixedRate(this::report, 10, 10, TimeUnit.SECONDS);
+    }
+
+    public static CommandScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues a command for the given guild.
+     *
+     * @param guildId   The guild the command comes from.
+     * @param task      The task to run.
+     * @param onDropped Called (on the submitting thread or on a worker) if the command gets rejected or times out on the queue.
+     * @return Whether the task was queued, false if it got rejected because the guild or the whole scheduler is over its limit.
+     */
+    public boolean submit(long guildId, Runnable task, Runnable onDropped) {
+        if(pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            drop("global", onDropped);
+            return false;
+        }
+
+        Task queued = new Task(task, onDropped);
+        //Added while holding the map entry, so a worker can't remove the queue in between and split the guild in two queues.
+        GuildQueue queue = queues.compute(guildId, (id, q) -> {
+            if(q == null)
+                q = new GuildQueue(id);
+
+            if(q.size.incrementAndGet() > maxPendingPerGuild) {
+                q.size.decrementAndGet();
+            } else {
+                q.tasks.add(queued);
+                queued.added = true;
+            }
+
+            return q;
+        });
+
+        if(!queued.added) {
+            pending.decrementAndGet();
+            drop("guild", onDropped);
+            return false;
+        }
+
+        schedule(queue);
+        return true;
+    }
+
+    /**
+     * Queues a low priority task (a message that isn't a command) for the given guild.
+     * It only runs when the guild has no commands pending, and gets dropped silently when the scheduler is over its limit.
+     *
+     * @param guildId The guild the message comes from.
+     * @param task    The task to run.
+     * @return Whether the task was queued.
+     */
+    public boolean submitBackground(long guildId, Runnable task) {
+        if(pendingBackground.incrementAndGet() > maxPending) {
+            pendingBackground.decrementAndGet();
+            drop("background", null);
+            return false;
+        }
+
+        GuildQueue queue = queues.compute(guildId, (id, q) -> {
+            if(q == null)
+                q = new GuildQueue(id);
+
+            q.background.add(new Task(task, null));
+            return q;
+        });
+        schedule(queue);
+        return true;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    private void schedule(GuildQueue queue) {
+        if(queue.scheduled.compareAndSet(false, true)) {
+            ready.add(queue);
+        }
+    }
+
+    private void work() {
+        //noinspection InfiniteLoopStatement
+        while(true) {
+            GuildQueue queue;
+            try {
+                queue = ready.take();
+            } catch(InterruptedException e) {
+                return;
+            }
+
+            //Commands always go first.
+            Task task = queue.tasks.poll();
+            if(task != null) {
+                queue.size.decrementAndGet();
+                pending.decrementAndGet();
+            } else {
+                task = queue.background.poll();
+                if(task != null) {
+                    pendingBackground.decrementAndGet();
+                }
+            }
+
+            //Back to the end of the line if it has more pending, so the rest of the guilds get a turn first.
+            if(!queue.isEmpty()) {
+                ready.add(queue);
+            } else {
+                queue.scheduled.set(false);
+                //Something could have been added between the check and resetting the flag.
+                if(!queue.isEmpty() && queue.scheduled.compareAndSet(false, true)) {
+                    ready.add(queue);
+                } else {
+                    //Tasks are only added while holding the map entry, so if it's still empty here nothing can be added to it anymore.
+                    queues.computeIfPresent(queue.guildId, (id, q) -> q == queue && q.isEmpty() && !q.scheduled.get() ? null : q);
+                }
+            }
+
+            if(task != null) {
+                run(task);
+            }
+        }
+    }
+
+    private void run(Task task) {
+        StatsDClient statsClient = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getStatsClient();
+        long start = System.currentTimeMillis();
+        long wait = start - task.queuedAt;
+        if(statsClient != null) {
+            statsClient.histogram("command_wait_time", wait);
+        }
+
+        if(wait > maxWaitMs) {
+            drop("timeout", task.onDropped);
+            return;
+        }
+
+        try {
+            task.runnable.run();
+        } catch(Exception e) {
+            log.error("Uncaught error running a command task", e);
+        } finally {
+            if(statsClient != null) {
+                statsClient.histogram("command_run_time", System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    private void drop(String reason, Runnable onDropped) {
+        rejected.incrementAndGet();
+        StatsDClient statsClient = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getStatsClient();
+        if(statsClient != null) {
+            statsClient.increment("command_rejected", "reason:" + reason);
+        }
+
+        if(onDropped != null) {
+            try {
+                onDropped.run();
+            } catch(Exception e) {
+                log.error("Error notifying a dropped command", e);
+            }
+        }
+    }
+
+    private void report() {
+        StatsDClient statsClient = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getStatsClient();
+        if(statsClient != null) {
+            statsClient.gauge("command_queue_depth", pending.get());
+            statsClient.gauge("command_queue_background_depth", pendingBackground.get());
+            statsClient.gauge("command_queue_guilds", queues.size());
+        }
+    }
+
+    private static class GuildQueue {
+        private final long guildId;
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        private final Queue<Task> background = new ConcurrentLinkedQueue<>();
+        //Only counts commands, the background lane has no per-guild limit.
+        private final AtomicInteger size = new AtomicInteger();
+        //Whether it's on the ready queue (or being worked on), so it's never there twice.
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        GuildQueue(long guildId) {
+            this.guildId = guildId;
+        }
+
+        boolean isEmpty() {
+            return tasks.isEmpty() && background.isEmpty();
+        }
+    }
+
+    private static class Task {
+        private final Runnable runnable;
+        private final Runnable onDropped;
+        private final long queuedAt = System.currentTimeMillis();
+        //Whether it made it on its guild's queue, set while holding the map entry.
+        private boolean added;
+
+        Task(Runnable runnable, Runnable onDropped) {
+            this.runnable = runnable;
+            this.onDropped = onDropped;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import io.sentry.Sentry;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.core.listeners.events.PreLoadEvent;
 import net.kodehawa.mantarobot.core.modules.Module;
 import net.kodehawa.mantarobot.core.processor.DefaultCommandProcessor;
@@ -39,10 +40,15 @@ import org.reflections.scanners.SubTypesScanner;
 import org.reflections.scanners.TypeAnnotationsScanner;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static net.kodehawa.mantarobot.core.LoadState.*;
 
@@ -66,6 +72,9 @@ public class MantaroCore {
     @Getter
     @Setter
     private static LoadState loadState = PRELOAD;
+    //Time each module took to be constructed and to register its commands, in milliseconds.
+    @Getter
+    private final Map<String, Long> moduleInitTimes = new ConcurrentHashMap<>();
 
     public MantaroCore(Config config, boolean useBanner, boolean useSentry, boolean isDebug) {
         this.config = config;
@@ -135,8 +144,8 @@ public class MantaroCore {
         if(optsPackage == null)
             throw new IllegalArgumentException("Cannot look for options if you don't specify where!");
 
-        Future<Set<Class<?>>> commands = lookForAnnotatedOn(commandsPackage, Module.class);
-        Future<Set<Class<?>>> options = lookForAnnotatedOn(optsPackage, Option.class);
+        Future<Set<Class<?>>> commands = lookForAnnotatedOn(commandsPackage, Module.class, ModuleIndex.MODULES);
+        Future<Set<Class<?>>> options = lookForAnnotatedOn(optsPackage, Option.class, ModuleIndex.OPTIONS);
 
         if(single) {
             startSingleShardInstance();
@@ -145,29 +154,24 @@ public class MantaroCore {
         }
 
         shardEventBus = new EventBus();
-        for(Class<?> aClass : commands.get()) {
-            try {
-                shardEventBus.register(aClass.newInstance());
-            } catch(Exception e) {
-                log.error("Invalid module: no zero arg public constructor found for " + aClass);
-            }
-        }
-
-        for(Class<?> clazz : options.get()) {
-            try {
-                shardEventBus.register(clazz.newInstance());
-            } catch(Exception e) {
-                log.error("Invalid module: no zero arg public constructor found for " + clazz);
-            }
-        }
+        List<Object> modules = instantiate(commands.get());
+        List<Object> optionModules = instantiate(options.get());
 
         Async.thread("Mantaro EventBus-Post", () -> {
+            long start = System.currentTimeMillis();
             //For now, only used by AsyncInfoMonitor startup and Anime Login Task.
             shardEventBus.post(new PreLoadEvent());
-            //Registers all commands
-            shardEventBus.post(DefaultCommandProcessor.REGISTRY);
-            //Registers all options
-            shardEventBus.post(new OptionRegistryEvent());
+            //Registers all commands and options, one module at a time so we know how long each one takes.
+            for(Object module : modules) {
+                postTo(module, DefaultCommandProcessor.REGISTRY);
+            }
+
+            for(Object module : optionModules) {
+                postTo(module, new OptionRegistryEvent());
+            }
+
+            log.info("Registered {} commands from {} modules in {}ms", DefaultCommandProcessor.REGISTRY.commands().size(), modules.size(),
+                    System.currentTimeMillis() - start);
         });
 
         return this;
@@ -181,9 +185,58 @@ public class MantaroCore {
         loadState = POSTLOAD;
     }
 
-    private Future<Set<Class<?>>> lookForAnnotatedOn(String packageName, Class<? extends Annotation> annotation) {
-        return Async.future("Annotation Lookup (" + annotation.getSimpleName() + ")", () ->
-                new Reflections(packageName, new MethodAnnotationsScanner(), new TypeAnnotationsScanner(), new SubTypesScanner()).getTypesAnnotatedWith(annotation)
-        );
+    private List<Object> instantiate(Set<Class<?>> classes) {
+        List<Object> instances = new ArrayList<>(classes.size());
+        for(Class<?> clazz : classes) {
+            long start = System.nanoTime();
+            try {
+                Object instance = clazz.newInstance();
+                shardEventBus.register(instance);
+                instances.add(instance);
+            } catch(Exception e) {
+                log.error("Invalid module: no zero arg public constructor found for " + clazz);
+                continue;
+            }
+
+            reportInitTime(clazz, "construct", start);
+        }
+
+        return instances;
+    }
+
+    //Posts an event to a single module, instead of to every module registered on the shard event bus.
+    private void postTo(Object module, Object event) {
+        long start = System.nanoTime();
+        EventBus bus = new EventBus(module.getClass().getSimpleName());
+        bus.register(module);
+        bus.post(event);
+        reportInitTime(module.getClass(), "register", start);
+    }
+
+    private void reportInitTime(Class<?> module, String phase, long startNanos) {
+        long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        moduleInitTimes.merge(module.getSimpleName(), took, Long::sum);
+        if(took > 500) {
+            log.warn("Module {} took {}ms to {}", module.getSimpleName(), took, phase);
+        } else {
+            log.debug("Module {} took {}ms to {}", module.getSimpleName(), took, phase);
+        }
+
+        if(MantaroBot.getInstance() != null) {
+            MantaroBot.getInstance().getStatsClient().gauge("module_init_time", took, "module:" + module.getSimpleName(), "phase:" + phase);
+        }
+    }
+
+    private Future<Set<Class<?>>> lookForAnnotatedOn(String packageName, Class<? extends Annotation> annotation, String index) {
+        return Async.future("Annotation Lookup (" + annotation.getSimpleName() + ")", () -> {
+            Set<Class<?>> indexed = ModuleIndex.load(index);
+            if(indexed != null) {
+                indexed.removeIf(clazz -> !clazz.getName().startsWith(packageName + ".") || !clazz.isAnnotationPresent(annotation));
+                return indexed;
+            }
+
+            log.warn("No module index found at {}, scanning {} for @{} instead", index, packageName, annotation.getSimpleName());
+            return new Reflections(packageName, new MethodAnnotationsScanner(), new TypeAnnotationsScanner(), new SubTypesScanner()).getTypesAnnotatedWith(annotation);
+        });
     }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Reads the module indexes generated at build time by the {@code generateModuleIndex} gradle task.
+ * Each index is a list of fully qualified class names (one per line) annotated with a given annotation, so startup doesn't have
+ * to scan the classpath looking for them.
+ */
+@Slf4j
+public class ModuleIndex {
+    public static final String MODULES = "META-INF/mantaro/modules.idx";
+    public static final String OPTIONS = "META-INF/mantaro/options.idx";
+
+    /**
+     * Loads the classes listed on an index.
+     *
+     * @param resource The classpath resource of the index.
+     * @return The listed classes, or null if the index doesn't exist (for example, when running from an IDE without gradle).
+     */
+    public static Set<Class<?>> load(String resource) {
+        ClassLoader loader = ModuleIndex.class.getClassLoader();
+        InputStream stream = loader.getResourceAsStream(resource);
+        if(stream == null)
+            return null;
+
+        Set<Class<?>> classes = new LinkedHashSet<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                try {
+                    classes.add(Class.forName(line, false, loader));
+                } catch(ClassNotFoundException e) {
+                    log.warn("Class {} is on the module index {} but couldn't be found, skipping", line, resource);
+                }
+            }
+        } catch(Exception e) {
+            log.error("Error reading the module index {}", resource, e);
+            return null;
+        }
+
+        return classes;
+    }
+}
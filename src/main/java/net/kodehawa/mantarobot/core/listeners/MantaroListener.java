@@ -40,14 +40,17 @@ import net.dv8tion.jda.core.exceptions.PermissionException;
 import net.dv8tion.jda.core.hooks.EventListener;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.commands.custom.EmbedJSON;
+import net.kodehawa.mantarobot.commands.info.stats.StatsAggregates;
 import net.kodehawa.mantarobot.commands.info.stats.manager.GuildStatsManager;
 import net.kodehawa.mantarobot.commands.info.stats.manager.GuildStatsManager.LoggedEvent;
+import net.kodehawa.mantarobot.commands.music.MantaroAudioManager;
 import net.kodehawa.mantarobot.core.MantaroCore;
 import net.kodehawa.mantarobot.core.listeners.command.CommandListener;
 import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
 import net.kodehawa.mantarobot.core.listeners.events.ShardMonitorEvent;
 import net.kodehawa.mantarobot.core.shard.MantaroShard;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.Blacklist;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
 import net.kodehawa.mantarobot.db.entities.DBGuild;
 import net.kodehawa.mantarobot.db.entities.DBUser;
@@ -129,6 +132,8 @@ public class MantaroListener implements EventListener {
 
     @Override
     public void onEvent(Event event) {
+        StatsAggregates.getInstance().onEvent(shardId, event);
+
         if(event instanceof ShardMonitorEvent) {
             if(MantaroBot.getInstance().getShardedMantaro().getShards()[shardId].getEventManager().getLastJDAEventTimeDiff() > 30000)
                 return;
@@ -136,6 +141,14 @@ public class MantaroListener implements EventListener {
             return;
         }
 
+        if(event instanceof ReadyEvent) {
+            //Bring back the music queues that were playing on this shard before it went down.
+            MantaroAudioManager audioManager = MantaroBot.getInstance().getAudioManager();
+            if(audioManager != null)
+                audioManager.getSnapshotter().restore(event.getJDA());
+            return;
+        }
+
         if(event instanceof GuildMessageReceivedEvent) {
             MantaroBot.getInstance().getStatsClient().increment("messages_received");
             GuildMessageReceivedEvent e = (GuildMessageReceivedEvent) event;
@@ -144,12 +157,12 @@ public class MantaroListener implements EventListener {
         }
 
         if(event instanceof GuildMemberJoinEvent) {
-            shard.getThreadPool().execute(() -> onUserJoin((GuildMemberJoinEvent) event));
+            MantaroShard.getThreadPool().execute(() -> onUserJoin((GuildMemberJoinEvent) event));
             return;
         }
 
         if(event instanceof GuildMemberLeaveEvent) {
-            shard.getThreadPool().execute(() -> onUserLeave((GuildMemberLeaveEvent) event));
+            MantaroShard.getThreadPool().execute(() -> onUserLeave((GuildMemberLeaveEvent) event));
             return;
         }
 
@@ -257,7 +270,7 @@ public class MantaroListener implements EventListener {
     private void handleNewPatron(GenericGuildMemberEvent event) {
         //Only in mantaro's guild...
         if(event.getGuild().getIdLong() == 213468583252983809L && !MantaroData.config().get().isPremiumBot) {
-            shard.getThreadPool().execute(() -> {
+            MantaroShard.getThreadPool().execute(() -> {
                 User user = event.getUser();
                 //who...
                 DBUser dbUser = db.getUser(user);
@@ -422,9 +435,8 @@ public class MantaroListener implements EventListener {
         }
 
         try {
-            if(MantaroData.db().getMantaroData().getBlackListedGuilds().contains(event.getGuild().getId())
-                    || MantaroData.db().getMantaroData().getBlackListedUsers().contains(
-                    event.getGuild().getOwner().getUser().getId())) {
+            if(Blacklist.isGuildBlacklisted(event.getGuild().getIdLong())
+                    || Blacklist.isUserBlacklisted(event.getGuild().getOwner().getUser().getIdLong())) {
                 event.getGuild().leave().queue();
                 return;
             }
@@ -440,15 +452,14 @@ public class MantaroListener implements EventListener {
 
     private void onLeave(GuildLeaveEvent event) {
         try {
-            if(MantaroData.db().getMantaroData().getBlackListedGuilds().contains(event.getGuild().getId())
-                    || MantaroData.db().getMantaroData().getBlackListedUsers().contains(
-                    event.getGuild().getOwner().getUser().getId())) {
+            if(Blacklist.isGuildBlacklisted(event.getGuild().getIdLong())
+                    || Blacklist.isUserBlacklisted(event.getGuild().getOwner().getUser().getIdLong())) {
                 log.info("Left " + event.getGuild() + " because of a blacklist entry. (O:" + event.getGuild().getOwner() + ")");
                 return;
             }
 
             MantaroBot.getInstance().getStatsClient().increment("guild_leave");
-            MantaroBot.getInstance().getAudioManager().getMusicManagers().remove(event.getGuild().getId());
+            MantaroBot.getInstance().getAudioManager().removeMusicManager(event.getGuild().getIdLong());
             GuildStatsManager.log(LoggedEvent.LEAVE);
         } catch(Exception e) {
             if(!(e instanceof NullPointerException) && !(e instanceof IllegalArgumentException)) {
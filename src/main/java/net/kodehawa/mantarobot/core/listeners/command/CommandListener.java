@@ -31,10 +31,12 @@ import net.dv8tion.jda.core.hooks.EventListener;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.commands.currency.profile.Badge;
 import net.kodehawa.mantarobot.commands.custom.EmbedJSON;
+import net.kodehawa.mantarobot.core.CommandScheduler;
 import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
 import net.kodehawa.mantarobot.core.listeners.events.ShardMonitorEvent;
 import net.kodehawa.mantarobot.core.listeners.operations.InteractiveOperations;
 import net.kodehawa.mantarobot.core.processor.core.ICommandProcessor;
+import net.kodehawa.mantarobot.core.processor.core.MessageContext;
 import net.kodehawa.mantarobot.core.shard.MantaroShard;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.DBGuild;
@@ -63,6 +65,7 @@ public class CommandListener implements EventListener {
     @Getter
     private static final Cache<String, Optional<CachedMessage>> messageCache = CacheBuilder.newBuilder().concurrencyLevel(10).maximumSize(65000).build();
     private static final RateLimiter experienceRatelimiter = new RateLimiter(TimeUnit.SECONDS, 18);
+    private static final RateLimiter droppedRatelimiter = new RateLimiter(TimeUnit.SECONDS, 10);
     //Commands ran this session.
     private static int commandTotal = 0;
     private final String[] boomQuotes = {
@@ -112,17 +115,33 @@ public class CommandListener implements EventListener {
             if(msg.getAuthor().isBot() || msg.getAuthor().equals(msg.getJDA().getSelfUser()))
                 return;
 
-            shard.getCommandPool().execute(() -> onCommand(msg));
+            //Plain chat only feeds the experience handler, so it can't take the place of real commands on the queue.
+            if(commandProcessor.isCommand(msg)) {
+                CommandScheduler.getInstance().submit(msg.getGuild().getIdLong(), () -> onCommand(msg), () -> onDropped(msg));
+            } else {
+                CommandScheduler.getInstance().submitBackground(msg.getGuild().getIdLong(), () -> onCommand(msg));
+            }
         }
     }
 
+    private void onDropped(GuildMessageReceivedEvent event) {
+        //Don't pile up more messages on a channel that's already flooded.
+        if(!droppedRatelimiter.process(event.getChannel().getId()))
+            return;
+
+        try {
+            event.getChannel().sendMessage(EmoteReference.ERROR + "I'm too busy to run your command right now, please try again in a bit.").queue();
+        } catch(PermissionException ignored) { }
+    }
+
     private void onCommand(GuildMessageReceivedEvent event) {
         try {
             Member self = event.getGuild().getSelfMember();
             if(!self.getPermissions(event.getChannel()).contains(Permission.MESSAGE_WRITE) && !self.hasPermission(Permission.ADMINISTRATOR))
                 return;
 
-            if(commandProcessor.run(event)) {
+            MessageContext context = new MessageContext(event);
+            if(commandProcessor.run(context)) {
                 commandTotal++;
             } else {
                 //Only run experience if no command has been executed, avoids weird race conditions when saving player status.
@@ -139,7 +158,7 @@ public class CommandListener implements EventListener {
 
                         Player player = MantaroData.db().getPlayer(event.getAuthor());
                         PlayerData data = player.getData();
-                        DBGuild dbGuild = MantaroData.db().getGuild(event.getGuild());
+                        DBGuild dbGuild = context.getDBGuild();
                         GuildData guildData = dbGuild.getData();
 
                         if(player.isLocked())
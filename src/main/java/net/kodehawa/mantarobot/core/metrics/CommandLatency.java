@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.metrics;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.timgroup.statsd.StatsDClient;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.MantaroBot;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a {@link LatencyHistogram} for every phase of command processing and for the execution of every command.
+ * Percentiles are exported to StatsD every minute (only what was recorded during that minute), and the totals since startup
+ * are exposed through JMX (see {@link CommandLatencyMXBean}) and the latency command.
+ */
+@Slf4j
+public class CommandLatency implements CommandLatencyMXBean {
+    private static final CommandLatency instance = new CommandLatency();
+    private static final double[] EXPORTED_PERCENTILES = {50, 95, 99};
+
+    private final Map<Phase, LatencyHistogram> phases = new EnumMap<>(Phase.class);
+    private final Map<String, LatencyHistogram> commands = new ConcurrentHashMap<>();
+    //Last snapshot sent to StatsD, by tag. Only touched by the executor.
+    private final Map<String, LatencyHistogram.Snapshot> exported = new HashMap<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Mantaro-CommandLatency").setDaemon(true).build()
+    );
+
+    private CommandLatency() {
+        for(Phase phase : Phase.values()) {
+            phases.put(phase, new LatencyHistogram());
+        }
+
+        executor.scheduleAtFixedRate(this::exportSafely, 1, 1, TimeUnit.MINUTES);
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("net.kodehawa.mantarobot:type=CommandLatency"));
+        } catch(Exception e) {
+            log.warn("Couldn't register the command latency MBean", e);
+        }
+    }
+
+    public static CommandLatency getInstance() {
+        return instance;
+    }
+
+    public void record(Phase phase, long nanos) {
+        phases.get(phase).record(nanos);
+    }
+
+    /**
+     * Records how long a command took to run, both on its own histogram and on the {@link Phase#EXECUTION} one.
+     *
+     * @param command The name of the command.
+     * @param nanos   How long it took, in nanoseconds.
+     */
+    public void recordExecution(String command, long nanos) {
+        record(Phase.EXECUTION, nanos);
+        commands.computeIfAbsent(command, c -> new LatencyHistogram()).record(nanos);
+    }
+
+    public LatencyHistogram.Snapshot snapshot(Phase phase) {
+        return phases.get(phase).snapshot();
+    }
+
+    /**
+     * @return A snapshot of the execution time of every command that has been run at least once, by name.
+     */
+    public Map<String, LatencyHistogram.Snapshot> commandSnapshots() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new HashMap<>();
+        commands.forEach((name, histogram) -> snapshots.put(name, histogram.snapshot()));
+        return snapshots;
+    }
+
+    /**
+     * @param limit Maximum amount of commands to return.
+     * @return The commands with the highest p99 execution time, slowest first.
+     */
+    public List<Map.Entry<String, LatencyHistogram.Snapshot>> slowest(int limit) {
+        List<Map.Entry<String, LatencyHistogram.Snapshot>> entries = new ArrayList<>(commandSnapshots().entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, LatencyHistogram.Snapshot> e) -> e.getValue().getPercentile(99)).reversed());
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+
+    /**
+     * Formats a snapshot as a single line, in milliseconds.
+     *
+     * @param name     What the snapshot is for.
+     * @param snapshot The snapshot.
+     * @return The formatted line.
+     */
+    public static String format(String name, LatencyHistogram.Snapshot snapshot) {
+        return String.format("%-16s | N: %-8d | p50: %8.2f | p95: %8.2f | p99: %8.2f | max: %9.2f",
+                name, snapshot.getCount(), millis(snapshot.getPercentile(50)), millis(snapshot.getPercentile(95)),
+                millis(snapshot.getPercentile(99)), millis(snapshot.getMax())
+        );
+    }
+
+    @Override
+    public String[] getPhases() {
+        return Arrays.stream(Phase.values())
+                .map(phase -> format(phase.name().toLowerCase(), snapshot(phase)))
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public String[] getSlowestCommands() {
+        return slowest(Integer.MAX_VALUE).stream()
+                .map(entry -> format(entry.getKey(), entry.getValue()))
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public double getPercentile(String name, double percentile) {
+        LatencyHistogram histogram = commands.get(name);
+        if(histogram == null) {
+            for(Phase phase : Phase.values()) {
+                if(phase.name().equalsIgnoreCase(name))
+                    histogram = phases.get(phase);
+            }
+        }
+
+        return histogram == null ? -1 : millis(histogram.snapshot().getPercentile(percentile));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000D;
+    }
+
+    private void export() {
+        StatsDClient statsClient = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getStatsClient();
+        if(statsClient == null)
+            return;
+
+        phases.forEach((phase, histogram) -> export(statsClient, "phase:" + phase.name().toLowerCase(), histogram));
+        commands.forEach((name, histogram) -> export(statsClient, "command:" + name, histogram));
+    }
+
+    private void export(StatsDClient statsClient, String tag, LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        LatencyHistogram.Snapshot interval = snapshot.since(exported.put(tag, snapshot));
+        if(interval.getCount() == 0)
+            return;
+
+        for(double percentile : EXPORTED_PERCENTILES) {
+            statsClient.gauge("command_latency.p" + (int) percentile, millis(interval.getPercentile(percentile)), tag);
+        }
+
+        statsClient.gauge("command_latency.max", millis(interval.getMax()), tag);
+        statsClient.count("command_latency.count", interval.getCount(), tag);
+    }
+
+    private void exportSafely() {
+        try {
+            export();
+        } catch(Exception e) {
+            log.error("Error exporting command latencies", e);
+        }
+    }
+
+    /**
+     * The phases a message goes through until the command it triggered returns.
+     * Sending the reply isn't one of them: most commands queue it asynchronously, and there's no way to tell which message
+     * answers which command, so it can't be measured reliably from here.
+     */
+    public enum Phase {
+        //Matching the default and custom prefixes, without the guild lookup. Only recorded for messages that had a prefix.
+        PREFIX,
+        //Fetching the guild data from the database (or cache).
+        GUILD,
+        //Finding the command by name, including the guild's custom commands.
+        LOOKUP,
+        //Blacklist, disabled commands/categories/channels/roles and permission checks, without the guild lookup.
+        PERMISSIONS,
+        //Running the command itself.
+        EXECUTION,
+        //The whole processing of a message that ran a command, from prefix matching until the command returns.
+        TOTAL
+    }
+}
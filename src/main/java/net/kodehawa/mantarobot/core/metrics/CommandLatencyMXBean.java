@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.metrics;
+
+/**
+ * JMX view of {@link CommandLatency}, registered as {@code net.kodehawa.mantarobot:type=CommandLatency}.
+ * Every latency is in milliseconds.
+ */
+public interface CommandLatencyMXBean {
+    /**
+     * @return One line per phase with its count, p50, p95, p99 and max.
+     */
+    String[] getPhases();
+
+    /**
+     * @return One line per command with its execution count, p50, p95, p99 and max, slowest (by p99) first.
+     */
+    String[] getSlowestCommands();
+
+    /**
+     * @param name       The name of a phase (as in {@link CommandLatency.Phase}) or a command.
+     * @param percentile The percentile to look up, between 0 and 100.
+     * @return The latency at that percentile, or -1 if nothing was recorded under that name.
+     */
+    double getPercentile(String name, double percentile);
+}
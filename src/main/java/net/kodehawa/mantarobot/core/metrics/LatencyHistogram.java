@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram, bucketed the same way HdrHistogram does: every power of two (in microseconds) is split into
+ * {@link #SUB_BUCKETS} linear buckets, so any recorded value is reported within ~6% of its real value.
+ * Values go from 1us up to ~2^40us (about 12 days), anything above that is clamped to the last bucket.
+ * Recording is a couple of atomic increments and never allocates, so it's safe to call on every message.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos The latency to record, in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(index(micros));
+        sum.add(micros);
+
+        long current;
+        while(micros > (current = max.get())) {
+            if(max.compareAndSet(current, micros))
+                break;
+        }
+    }
+
+    /**
+     * Copies the current state of the histogram. The copy isn't atomic, a value recorded while copying might only be
+     * partially reflected on it, which doesn't matter at the precision this is used for.
+     *
+     * @return A snapshot of every value recorded so far.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    private static int index(long micros) {
+        if(micros < SUB_BUCKETS)
+            return (int) micros;
+
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+        if(exponent == MAX_EXPONENT && micros >= 1L << (MAX_EXPONENT + 1))
+            return BUCKETS - 1;
+
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    //Highest value (in microseconds) that falls in the given bucket.
+    private static long upperBound(int index) {
+        if(index < SUB_BUCKETS)
+            return index;
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + sub) << shift) + (1L << shift) - 1;
+    }
+
+    /**
+     * Immutable copy of a {@link LatencyHistogram}. Every value is in microseconds.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMax() {
+            for(int i = counts.length - 1; i >= 0; i--) {
+                if(counts[i] != 0)
+                    return Math.min(upperBound(i), max);
+            }
+
+            return 0;
+        }
+
+        /**
+         * @param percentile The percentile to look up, between 0 and 100.
+         * @return The value below which the given percentage of the recorded values fall, 0 if nothing was recorded.
+         */
+        public long getPercentile(double percentile) {
+            if(count == 0)
+                return 0;
+
+            long target = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100));
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= target)
+                    return Math.min(upperBound(i), max);
+            }
+
+            return getMax();
+        }
+
+        /**
+         * Returns what was recorded between an older snapshot of the same histogram and this one.
+         * The maximum can't be split by interval, so it's capped by the highest bucket that got values in between.
+         *
+         * @param previous The older snapshot, can be null.
+         * @return A snapshot of the values recorded after the older one was taken.
+         */
+        public Snapshot since(Snapshot previous) {
+            if(previous == null)
+                return this;
+
+            long[] delta = new long[counts.length];
+            for(int i = 0; i < counts.length; i++) {
+                delta[i] = counts[i] - previous.counts[i];
+            }
+
+            return new Snapshot(delta, count - previous.count, sum - previous.sum, max);
+        }
+    }
+}
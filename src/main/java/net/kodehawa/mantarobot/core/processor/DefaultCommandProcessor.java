@@ -21,11 +21,14 @@ import net.dv8tion.jda.core.Permission;
 import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.core.CommandRegistry;
+import net.kodehawa.mantarobot.core.metrics.CommandLatency;
 import net.kodehawa.mantarobot.core.processor.core.ICommandProcessor;
+import net.kodehawa.mantarobot.core.processor.core.MessageContext;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 
-import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import static net.kodehawa.mantarobot.utils.StringUtils.splitArgs;
 
@@ -33,36 +36,42 @@ import static net.kodehawa.mantarobot.utils.StringUtils.splitArgs;
 public class DefaultCommandProcessor implements ICommandProcessor {
 
     public static final CommandRegistry REGISTRY = new CommandRegistry();
+    private static final PrefixMatcher PREFIXES = new PrefixMatcher(MantaroData.config().get().prefix);
 
     @Override
-    public boolean run(GuildMessageReceivedEvent event) {
+    public boolean isCommand(GuildMessageReceivedEvent event) {
+        String rawCmd = event.getMessage().getContentRaw();
+        if(PREFIXES.match(rawCmd) != -1)
+            return true;
+
+        //If the guild isn't cached we can't tell without going to the database, it gets cached once the message is processed.
+        DBGuild dbGuild = MantaroData.db().peekCachedGuild(event.getGuild().getId());
+        return dbGuild == null || PrefixMatcher.match(rawCmd, dbGuild.getData().getGuildCustomPrefix()) != -1;
+    }
+
+    @Override
+    public boolean run(MessageContext context) {
+        GuildMessageReceivedEvent event = context.getEvent();
         //When did we start processing this command?...
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         //The command executed, in raw form.
         String rawCmd = event.getMessage().getContentRaw();
-        //Mantaro prefixes.
-        String[] prefix = MantaroData.config().get().prefix;
-        //Guild-specific prefix.
-        String customPrefix = MantaroData.db().getGuild(event.getGuild()).getData().getGuildCustomPrefix();
-        //What prefix did this person use.
-        String usedPrefix = null;
-        //Lower-case raw cmd check, only used for prefix checking.
-        String lowerRawCmd = rawCmd.toLowerCase();
-
-        for(String s : prefix) {
-            if(lowerRawCmd.startsWith(s)) usedPrefix = s;
-        }
+        //Length of the prefix this person used, checking Mantaro prefixes first and the guild-specific one afterwards.
+        int prefixLength = PREFIXES.match(rawCmd);
 
-        if(usedPrefix != null && lowerRawCmd.startsWith(usedPrefix.toLowerCase())) {
-            rawCmd = rawCmd.substring(usedPrefix.length());
+        if(prefixLength == -1) {
+            prefixLength = PrefixMatcher.match(rawCmd, context.getCustomPrefix());
         }
-        else if(customPrefix != null && lowerRawCmd.startsWith(customPrefix.toLowerCase())) {
-            rawCmd = rawCmd.substring(customPrefix.length());
-        }
-        else if(usedPrefix == null) {
+
+        if(prefixLength == -1) {
             return false;
         }
 
+        //Only messages with a prefix count, or this would mostly measure plain chat. The guild lookup is recorded on its own.
+        CommandLatency.getInstance().record(CommandLatency.Phase.PREFIX, System.nanoTime() - start - context.getGuildLookupNanos());
+
+        rawCmd = rawCmd.substring(prefixLength);
+
         String[] parts = splitArgs(rawCmd, 2);
         String cmdName = parts[0], content = parts[1];
 
@@ -74,10 +83,14 @@ public class DefaultCommandProcessor implements ICommandProcessor {
             return false;
         }
 
-        REGISTRY.process(event, cmdName, content);
+        boolean ran = REGISTRY.process(context, cmdName, content);
+
+        long elapsed = System.nanoTime() - start;
+        if(ran) {
+            CommandLatency.getInstance().record(CommandLatency.Phase.TOTAL, elapsed);
+        }
 
-        long end = System.currentTimeMillis();
-        MantaroBot.getInstance().getStatsClient().histogram("command_query_time", end - start);
+        MantaroBot.getInstance().getStatsClient().histogram("command_query_time", TimeUnit.NANOSECONDS.toMillis(elapsed));
 
         return true;
     }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Case-insensitive prefix matcher, dispatched by the first character of the message.
+ * Most messages aren't commands, so a message that can't start with any prefix gets rejected with a single array lookup
+ * and without allocating anything.
+ */
+public class PrefixMatcher {
+    private static final String[] NONE = new String[0];
+    //Prefixes bucketed by their lower-cased first character, longest first. Non-ASCII first characters go to the fallback bucket.
+    private final String[][] table = new String[128][];
+    private final String[] fallback;
+
+    public PrefixMatcher(String... prefixes) {
+        List<List<String>> buckets = new ArrayList<>(128);
+        for(int i = 0; i < 128; i++) buckets.add(new ArrayList<>());
+        List<String> other = new ArrayList<>();
+
+        for(String prefix : prefixes) {
+            if(prefix == null || prefix.isEmpty())
+                continue;
+
+            char c = Character.toLowerCase(prefix.charAt(0));
+            if(c < 128) {
+                buckets.get(c).add(prefix);
+                //Upper-cased letters have to land on the same bucket as their lower-cased counterpart.
+                char upper = Character.toUpperCase(c);
+                if(upper != c && upper < 128)
+                    buckets.get(upper).add(prefix);
+            } else {
+                other.add(prefix);
+            }
+        }
+
+        for(int i = 0; i < 128; i++) {
+            table[i] = sorted(buckets.get(i));
+        }
+
+        fallback = sorted(other);
+    }
+
+    private static String[] sorted(List<String> prefixes) {
+        if(prefixes.isEmpty())
+            return NONE;
+
+        String[] array = prefixes.toArray(new String[0]);
+        Arrays.sort(array, Comparator.comparingInt(String::length).reversed());
+        return array;
+    }
+
+    /**
+     * Matches the start of the message against the configured prefixes.
+     *
+     * @param message The raw message content.
+     * @return The length of the longest matching prefix, or -1 if none matched.
+     */
+    public int match(String message) {
+        if(message.isEmpty())
+            return -1;
+
+        char c = message.charAt(0);
+        String[] candidates = c < 128 ? table[c] : fallback;
+
+        for(String prefix : candidates) {
+            if(message.regionMatches(true, 0, prefix, 0, prefix.length()))
+                return prefix.length();
+        }
+
+        return -1;
+    }
+
+    /**
+     * Matches the start of the message against a single (usually guild-specific) prefix, ignoring case.
+     *
+     * @param message The raw message content.
+     * @param prefix  The prefix to check, can be null.
+     * @return The length of the prefix if it matched, -1 otherwise.
+     */
+    public static int match(String message, String prefix) {
+        if(prefix == null || prefix.isEmpty())
+            return -1;
+
+        return message.regionMatches(true, 0, prefix, 0, prefix.length()) ? prefix.length() : -1;
+    }
+}
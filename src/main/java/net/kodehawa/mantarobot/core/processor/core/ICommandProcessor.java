@@ -23,5 +23,20 @@ import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
  * Yeah that's what's this for.
  */
 public interface ICommandProcessor {
-    boolean run(GuildMessageReceivedEvent event);
+    boolean run(MessageContext context);
+
+    default boolean run(GuildMessageReceivedEvent event) {
+        return run(new MessageContext(event));
+    }
+
+    /**
+     * Cheap check, done on the event thread before the message is queued, to tell commands apart from plain chat.
+     * It must not block, and should rather say yes when it can't tell.
+     *
+     * @param event The message.
+     * @return Whether the message might be a command.
+     */
+    default boolean isCommand(GuildMessageReceivedEvent event) {
+        return true;
+    }
 }
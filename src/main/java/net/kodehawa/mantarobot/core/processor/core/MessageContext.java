@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.processor.core;
+
+import lombok.Getter;
+import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
+import net.kodehawa.mantarobot.core.metrics.CommandLatency;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
+
+/**
+ * Holds the state shared by everything that handles a single message (processor, registry, experience handler),
+ * so the guild data is looked up at most once per message.
+ * Not thread-safe: a context belongs to the thread processing its message.
+ */
+public class MessageContext {
+    @Getter
+    private final GuildMessageReceivedEvent event;
+    private DBGuild dbGuild;
+    //How long fetching the guild data took so far, in nanoseconds, 0 if it wasn't fetched yet.
+    @Getter
+    private long guildLookupNanos;
+
+    public MessageContext(GuildMessageReceivedEvent event) {
+        this.event = event;
+    }
+
+    /**
+     * @return The {@link DBGuild} of the guild this message was sent in, fetched on first access.
+     */
+    public DBGuild getDBGuild() {
+        if(dbGuild == null) {
+            long start = System.nanoTime();
+            dbGuild = MantaroData.db().getGuild(event.getGuild());
+            recordGuildLookup(start);
+        }
+
+        return dbGuild;
+    }
+
+    /**
+     * Gets the custom prefix of the guild this message was sent in. Unlike {@link #getDBGuild()} this doesn't copy the guild
+     * data, so plain chat doesn't pay for a copy it'll never use.
+     *
+     * @return The custom prefix of the guild, or null if it doesn't have one.
+     */
+    public String getCustomPrefix() {
+        if(dbGuild != null)
+            return dbGuild.getData().getGuildCustomPrefix();
+
+        long start = System.nanoTime();
+        String prefix = MantaroData.db().getGuildCustomPrefix(event.getGuild().getId());
+        recordGuildLookup(start);
+        return prefix;
+    }
+
+    private void recordGuildLookup(long start) {
+        long elapsed = System.nanoTime() - start;
+        guildLookupNanos += elapsed;
+        CommandLatency.getInstance().record(CommandLatency.Phase.GUILD, elapsed);
+    }
+}
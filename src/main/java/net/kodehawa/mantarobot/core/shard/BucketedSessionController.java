@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.shard;
+
+import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.utils.SessionControllerAdapter;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session controller that lets shards from different buckets identify at the same time.
+ * Every shard goes to bucket {@code shardId % concurrency}, and each bucket identifies one shard every five seconds, the same way
+ * {@link SessionControllerAdapter} does for every shard. With a concurrency of 1 it behaves the same as the default controller.
+ * <p>
+ * Only use a concurrency higher than 1 if Discord allows it for this bot, or the extra identifies will get rate limited.
+ */
+@Slf4j
+public class BucketedSessionController extends SessionControllerAdapter {
+    private static final long IDENTIFY_INTERVAL_MS = TimeUnit.SECONDS.toMillis(5);
+
+    private final Bucket[] buckets;
+
+    public BucketedSessionController(int concurrency) {
+        buckets = new Bucket[Math.max(concurrency, 1)];
+        for(int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(i);
+        }
+    }
+
+    @Override
+    public void appendSession(SessionConnectNode node) {
+        bucket(node).append(node);
+    }
+
+    @Override
+    public void removeSession(SessionConnectNode node) {
+        bucket(node).queue.remove(node);
+    }
+
+    private Bucket bucket(SessionConnectNode node) {
+        JDA.ShardInfo info = node.getShardInfo();
+        return buckets[info == null ? 0 : info.getShardId() % buckets.length];
+    }
+
+    private static class Bucket {
+        private final int id;
+        private final Queue<SessionConnectNode> queue = new ConcurrentLinkedQueue<>();
+        private long lastIdentify;
+        private Thread worker;
+
+        Bucket(int id) {
+            this.id = id;
+        }
+
+        synchronized void append(SessionConnectNode node) {
+            queue.add(node);
+            if(worker == null) {
+                worker = new Thread(this::work, "SessionController-Bucket-" + id);
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+
+        private void work() {
+            try {
+                while(true) {
+                    SessionConnectNode node;
+                    synchronized(this) {
+                        node = queue.poll();
+                        if(node == null) {
+                            worker = null;
+                            return;
+                        }
+                    }
+
+                    //Shards added after this bucket went idle still have to wait for the interval to pass.
+                    long wait = lastIdentify + IDENTIFY_INTERVAL_MS - System.currentTimeMillis();
+                    if(wait > 0)
+                        Thread.sleep(wait);
+
+                    try {
+                        node.run(queue.isEmpty());
+                    } catch(InterruptedException e) {
+                        throw e;
+                    } catch(Exception e) {
+                        log.error("Error identifying shard {} on bucket {}", node.getShardInfo(), id, e);
+                    }
+
+                    lastIdentify = System.currentTimeMillis();
+                }
+            } catch(InterruptedException e) {
+                log.warn("Identify worker for bucket {} was interrupted", id);
+                synchronized(this) {
+                    worker = null;
+                }
+            }
+        }
+    }
+}
@@ -39,9 +39,8 @@ import net.kodehawa.mantarobot.core.listeners.operations.ReactionOperations;
 import net.kodehawa.mantarobot.core.processor.core.ICommandProcessor;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.utils.Utils;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
 import org.apache.commons.lang3.time.DateUtils;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +50,7 @@ import java.util.Calendar;
 import java.util.Objects;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static net.kodehawa.mantarobot.data.MantaroData.config;
 import static net.kodehawa.mantarobot.utils.Utils.pretty;
@@ -63,7 +63,9 @@ import static net.kodehawa.mantarobot.utils.Utils.pretty;
  * This also handles posting stats to dbots/dbots.org/carbonitex. Because uh... no other class was fit for it.
  */
 public class MantaroShard implements JDA {
-    private static SessionController sessionController = new SessionControllerAdapter();
+    //Paces the identifies of every shard, see BucketedSessionController.
+    private static SessionController sessionController = MantaroData.config().get().identifyConcurrency > 1 ?
+            new BucketedSessionController(MantaroData.config().get().identifyConcurrency) : new SessionControllerAdapter();
     private final Logger log;
     private static final VoiceChannelListener VOICE_CHANNEL_LISTENER = new VoiceChannelListener();
     private final CommandListener commandListener;
@@ -81,13 +83,36 @@ public class MantaroShard implements JDA {
 
     @Getter
     public final MantaroEventManager manager;
+    private static final Logger poolLog = LoggerFactory.getLogger("MantaroShard-Executor");
+    private static final AtomicLong droppedTasks = new AtomicLong();
+    //Shared by every shard. Bounded, so a slow API can't make it spawn threads without limit: when it's full, the oldest queued task gets dropped.
+    //Commands go through the CommandScheduler instead.
     @Getter
-    private final ExecutorService threadPool;
-    @Getter
-    private final ExecutorService commandPool;
+    private static final ExecutorService threadPool = new ThreadPoolExecutor(8, 8, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(2000),
+            new ThreadFactoryBuilder().setNameFormat("MantaroShard-Executor Thread-%d").setDaemon(true).build(),
+            MantaroShard::dropOldest);
     @Delegate
     private JDA jda;
 
+    //Same as DiscardOldestPolicy, but counted and logged. Running it on the caller instead would stall the gateway thread that submitted it.
+    private static void dropOldest(Runnable task, ThreadPoolExecutor executor) {
+        if(executor.isShutdown())
+            return;
+
+        Runnable dropped = executor.getQueue().poll();
+        executor.execute(task);
+        if(dropped == null)
+            return;
+
+        long total = droppedTasks.incrementAndGet();
+        //Once it's full it stays full for a while, don't log every single one.
+        if(total == 1 || total % 100 == 0)
+            poolLog.warn("Shard executor is full, dropped its oldest queued task ({} dropped so far)", total);
+
+        if(MantaroBot.getInstance() != null && MantaroBot.getInstance().getStatsClient() != null)
+            MantaroBot.getInstance().getStatsClient().increment("shard_executor_dropped");
+    }
+
     /**
      * Builds a new instance of a MantaroShard.
      *
@@ -104,19 +129,6 @@ public class MantaroShard implements JDA {
         this.totalShards = totalShards;
         this.manager = manager;
 
-        ThreadFactory normalTPNamedFactory =
-                new ThreadFactoryBuilder()
-                        .setNameFormat("MantaroShard-Executor[" + shardId + "/" + totalShards + "] Thread-%d")
-                        .build();
-
-        ThreadFactory commandTPNamedFactory =
-                new ThreadFactoryBuilder()
-                        .setNameFormat("MantaroShard-Command[" + shardId + "/" + totalShards + "] Thread-%d")
-                        .build();
-
-        threadPool = Executors.newCachedThreadPool(normalTPNamedFactory);
-        commandPool = Executors.newCachedThreadPool(commandTPNamedFactory);
-
         log = LoggerFactory.getLogger("MantaroShard-" + shardId);
         mantaroListener = new MantaroListener(shardId, this);
         commandListener = new CommandListener(shardId, this, commandProcessor);
@@ -127,7 +139,8 @@ public class MantaroShard implements JDA {
     /**
      * Starts a new Shard.
      * This method builds a {@link JDA} instance and then attempts to start it up.
-     * This locks until the shard finds a status of AWAITING_LOGIN_CONFIRMATION + 5 seconds.
+     * This doesn't wait for the shard to connect: the identify is queued on the shared {@link SessionController}, and {@link ShardBootOrchestrator}
+     * waits for the shards when booting.
      * <p>
      * The newly-started shard will have auto reconnect enabled, a core pool size of 18 and a new NAS instance. The rest is defined either on global or instance
      * variables.
@@ -162,12 +175,7 @@ public class MantaroShard implements JDA {
                 .useSharding(shardId, totalShards)
                 .setGame(Game.playing("Hold on to your seatbelts!"));
 
-        if(shardId < getTotalShards() - 1) {
-            jda = jdaBuilder.buildAsync();
-        } else {
-            //Block until all shards start up properly.
-            jda = jdaBuilder.buildBlocking();
-        }
+        jda = jdaBuilder.buildAsync();
 
         //Assume everything is alright~
         addListeners();
@@ -219,16 +227,21 @@ public class MantaroShard implements JDA {
                     guilds.addAndGet((int) jda.getGuildCache().size());
                 });
             }
-            String newStatus = new JSONObject(Utils.wgetResty(config.apiTwoUrl + "/mantaroapi/splashes/random", null)).getString("splash")
-                    .replace("%ramgb%", String.valueOf(((long) (Runtime.getRuntime().maxMemory() * 1.2D)) >> 30L))
-                    .replace("%usercount%", users.toString())
-                    .replace("%guildcount%", guilds.toString())
-                    .replace("%shardcount%", String.valueOf(getTotalShards()))
-                    .replace("%prettyusercount%", pretty(users.get()))
-                    .replace("%prettyguildcount%", pretty(guilds.get()));
-
-            getJDA().getPresence().setGame(Game.playing(String.format("%shelp | %s | [%d]", config().get().prefix[0], newStatus, getId())));
-            log.debug("Changed status to: " + newStatus);
+            AsyncHttp.getJson(config.apiTwoUrl + "/mantaroapi/splashes/random").thenAccept(splash -> {
+                String newStatus = splash.getString("splash")
+                        .replace("%ramgb%", String.valueOf(((long) (Runtime.getRuntime().maxMemory() * 1.2D)) >> 30L))
+                        .replace("%usercount%", users.toString())
+                        .replace("%guildcount%", guilds.toString())
+                        .replace("%shardcount%", String.valueOf(getTotalShards()))
+                        .replace("%prettyusercount%", pretty(users.get()))
+                        .replace("%prettyguildcount%", pretty(guilds.get()));
+
+                getJDA().getPresence().setGame(Game.playing(String.format("%shelp | %s | [%d]", config().get().prefix[0], newStatus, getId())));
+                log.debug("Changed status to: " + newStatus);
+            }).exceptionally(t -> {
+                log.warn("Couldn't fetch a new splash for shard {}", getId(), t);
+                return null;
+            });
         };
 
         changeStatus.run();
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.shard;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.timgroup.statsd.StatsDClient;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.core.JDA;
+import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.utils.SentryHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boots the shards of this node.
+ * Shards are built (listeners, event manager, JDA builder...) several at a time, and they're all handed to the shared session
+ * controller right away, which paces the identifies so the gateway rate limit is still respected (see {@link BucketedSessionController}).
+ * After that it waits for every shard to connect, recording how long each one took, until they all connected or the boot stalls.
+ */
+@Slf4j
+public class ShardBootOrchestrator {
+    //Time it took each shard to connect, counting from the start of the boot, in milliseconds.
+    @Getter
+    private final Map<Integer, Long> bootTimes = new ConcurrentHashMap<>();
+    private static final int BUILD_ATTEMPTS = 3;
+    private static final long BUILD_RETRY_DELAY = TimeUnit.SECONDS.toMillis(5);
+
+    private final int threads;
+    private final long stallTimeout;
+
+    /**
+     * @param threads      How many shards can be built at once.
+     * @param stallTimeout How long (in milliseconds) to keep waiting for the shards to connect when none of them did in the meantime.
+     */
+    public ShardBootOrchestrator(int threads, long stallTimeout) {
+        this.threads = Math.max(threads, 1);
+        this.stallTimeout = stallTimeout;
+    }
+
+    /**
+     * Builds the given shards and blocks until all of them are connected.
+     * Shards that fail to build get retried a couple of times, and the boot fails if one of them still can't be built.
+     * If no shard connects for longer than the stall timeout, this stops waiting and leaves the shards still connecting
+     * to the shard watcher, so one shard stuck reconnecting can't hold the rest of the bot back.
+     *
+     * @param shards  Where the built shards are stored, by id.
+     * @param ids     The ids of the shards to build.
+     * @param factory Builds (and starts) a shard.
+     * @throws IllegalStateException If a shard couldn't be built.
+     */
+    public void boot(MantaroShard[] shards, List<Integer> ids, ShardFactory factory) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("ShardBoot-%d").setDaemon(true).build()
+        );
+
+        List<Integer> failed = Collections.synchronizedList(new ArrayList<>());
+        for(int id : ids) {
+            executor.execute(() -> {
+                for(int attempt = 1; ; attempt++) {
+                    long buildStart = System.currentTimeMillis();
+                    try {
+                        shards[id] = factory.create(id);
+                        log.debug("Built shard #{} in {}ms", id, System.currentTimeMillis() - buildStart);
+                        return;
+                    } catch(Exception e) {
+                        log.error("Error building shard #{} (attempt {} of {})", id, attempt, BUILD_ATTEMPTS, e);
+                        if(attempt >= BUILD_ATTEMPTS) {
+                            SentryHelper.captureException("Error building shard #" + id, e, ShardBootOrchestrator.class);
+                            failed.add(id);
+                            return;
+                        }
+                    }
+
+                    try {
+                        Thread.sleep(BUILD_RETRY_DELAY * attempt);
+                    } catch(InterruptedException e) {
+                        failed.add(id);
+                        return;
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        if(!failed.isEmpty()) {
+            throw new IllegalStateException("Couldn't build shards " + failed);
+        }
+
+        log.info("Built {} shards in {}ms, waiting for them to connect", ids.size(), System.currentTimeMillis() - start);
+
+        List<Integer> pending = new ArrayList<>(ids);
+        long lastReport = start;
+        long lastProgress = System.currentTimeMillis();
+        while(!pending.isEmpty()) {
+            for(Iterator<Integer> iterator = pending.iterator(); iterator.hasNext(); ) {
+                int id = iterator.next();
+                JDA jda = shards[id].getJDA();
+                if(jda != null && jda.getStatus() == JDA.Status.CONNECTED) {
+                    iterator.remove();
+                    lastProgress = System.currentTimeMillis();
+                    onConnected(id, lastProgress - start);
+                }
+            }
+
+            if(!pending.isEmpty() && System.currentTimeMillis() - lastProgress > stallTimeout) {
+                log.warn("No shard connected in the last {}ms, not waiting anymore for {}. The shard watcher will take care of them.",
+                        stallTimeout, pending.size() > 10 ? pending.size() + " shards" : pending);
+                return;
+            }
+
+            if(System.currentTimeMillis() - lastReport > TimeUnit.SECONDS.toMillis(30)) {
+                lastReport = System.currentTimeMillis();
+                log.info("{} of {} shards connected, still waiting for {}", ids.size() - pending.size(), ids.size(),
+                        pending.size() > 10 ? pending.size() + " shards" : pending);
+            }
+
+            Thread.sleep(250);
+        }
+    }
+
+    public long getSlowestBootTime() {
+        return bootTimes.isEmpty() ? 0 : Collections.max(bootTimes.values());
+    }
+
+    private void onConnected(int id, long took) {
+        bootTimes.put(id, took);
+        log.debug("Shard #{} connected {}ms after the boot started", id, took);
+
+        StatsDClient statsClient = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getStatsClient();
+        if(statsClient != null)
+            statsClient.gauge("shard_boot_time", took, "shard:" + id);
+    }
+
+    @FunctionalInterface
+    public interface ShardFactory {
+        MantaroShard create(int id) throws Exception;
+    }
+}
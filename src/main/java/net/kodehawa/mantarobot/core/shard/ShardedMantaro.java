@@ -74,6 +74,8 @@ public class ShardedMantaro {
     @Getter
     private final int totalShards;
     @Getter
+    private final ShardBootOrchestrator bootOrchestrator = new ShardBootOrchestrator(config.shardBootThreads, config.shardBootStallTimeout);
+    @Getter
     private TUnmodifiableLongSet discordBotsUpvoters = new TUnmodifiableLongSet(new TLongHashSet());
     private final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -122,20 +124,23 @@ public class ShardedMantaro {
             MantaroCore.setLoadState(LoadState.LOADING_SHARDS);
             log.info("Spawning shards...");
             long start = System.currentTimeMillis();
+            List<Integer> ids = new ArrayList<>();
+            MantaroEventManager[] shardManagers = new MantaroEventManager[totalShards];
             for(int i = 0; i < totalShards; i++) {
                 if(MantaroData.config().get().upToShard != 0 && i > MantaroData.config().get().upToShard) continue;
 
-                log.info("Starting shard #" + i + " of " + totalShards);
-
                 //The custom event manager instance is important so we can track when we received the last event, or if we're receiving events at all.
-                MantaroEventManager manager = new MantaroEventManager();
-                managers.add(manager);
-
-                //Builds the new MantaroShard instance, which will start the shard.
-                shards[i] = new MantaroShard(i, totalShards, manager, processor);
-                log.debug("Finished loading shard #" + i + ".");
+                shardManagers[i] = new MantaroEventManager();
+                managers.add(shardManagers[i]);
+                ids.add(i);
             }
 
+            //Builds the new MantaroShard instances, which will start the shards, and waits for all of them to connect.
+            bootOrchestrator.boot(shards, ids, id -> {
+                log.info("Starting shard #" + id + " of " + totalShards);
+                return new MantaroShard(id, totalShards, shardManagers[id], processor);
+            });
+
             //Beep-boop, we finished loading!
             this.startPostLoadProcedure(start);
         } catch(Exception e) {
@@ -35,6 +35,10 @@ public class Config {
     public String carbonToken;
     public String cleverbotKey;
     public String cleverbotUser;
+    public int commandGuildQueueSize = 10; //pending commands per guild, anything over this gets dropped
+    public long commandMaxWaitMs = 30000; //commands that waited longer than this on the queue get dropped
+    public int commandQueueSize = 5000; //pending commands across all guilds
+    public int commandThreads = 64;
     public int connectionWatcherPort = 26000;
     public String consoleChannel = "266231083341840385";
     public String crossBotHost;
@@ -47,6 +51,13 @@ public class Config {
     public String dbUser;
     public String dbotsToken;
     public String dbotsorgToken;
+    public int guildCacheSize = 10000;
+    public long guildCacheTtlMs = 300000; //5 minutes
+    public int httpMaxRequests = 64; //concurrent outgoing requests, across all hosts
+    public int httpMaxRequestsPerHost = 8;
+    public int httpRetries = 2;
+    public long httpTimeoutMs = 10000;
+    public int identifyConcurrency = 1; //shards allowed to identify at once, only raise it if discord allows it for the bot
     public boolean isBeta = false;
     public boolean isPremiumBot = false;
     public int maxJdaReconnectDelay = 3; //3 seconds
@@ -59,6 +70,8 @@ public class Config {
     public RedisInfo redis = new RedisInfo();
     public String remoteNode;
     public String sentryDSN;
+    public long shardBootStallTimeout = 300000; //stop waiting for shards to connect on boot if none did in this long, the shard watcher handles the rest
+    public int shardBootThreads = 4; //how many shards are built at once, identifies are still paced by the session controller
     public int shardWatcherTimeout = 1500; //wait 1500ms for the handlers to run
     public int shardWatcherWait = 600000; //run once every 600 seconds (10 minutes)
     public String shardWebhookUrl;
@@ -70,6 +83,9 @@ public class Config {
     public int upToShard = 0;
     public String weatherAppId;
     public String webhookUrl;
+    public int writeBehindBatchSize = 200;
+    public int writeBehindMaxBacklog = 20000;
+    public long writeBehindWindowMs = 1000;
     public String weebapiKey;
     public String apiTwoUrl = "http://127.0.0.1:5874";
     public boolean needApi = true;
@@ -27,6 +27,7 @@ import org.redisson.api.LocalCachedMapOptions;
 import org.redisson.api.RMap;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
 import org.redisson.codec.JsonJacksonCodec;
 
 import java.util.concurrent.Callable;
@@ -100,7 +101,8 @@ public class MantaroData {
                         map(client, "players", i.players),
                         map(client, "users", i.users),
                         map(client, "premium-keys", i.premiumKeys),
-                        client.getBucket("mantaro")
+                        client.getBucket("mantaro"),
+                        client.getTopic("guild-cache", StringCodec.INSTANCE)
                 );
             } else {
                 db = new ManagedDatabase(conn());
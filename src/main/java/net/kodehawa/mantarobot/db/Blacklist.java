@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.MantaroObj;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory copy of the user and guild blacklists saved on {@link MantaroObj}, so checking them on every command doesn't
+ * need to fetch the global document and walk a list.
+ * It's loaded on first use and rebuilt every time the global document is saved on this node. Saves done on other nodes are
+ * picked up by reloading it every {@link #REFRESH_INTERVAL}.
+ */
+@Slf4j
+public class Blacklist {
+    private static final long REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    private static volatile TLongSet users;
+    private static volatile TLongSet guilds;
+
+    static {
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Mantaro-Blacklist");
+            t.setDaemon(true);
+            return t;
+        }).scheduleWithFixedDelay(Blacklist::refreshSafely, REFRESH_INTERVAL, REFRESH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public static boolean isUserBlacklisted(long userId) {
+        ensureLoaded();
+        return users.contains(userId);
+    }
+
+    public static boolean isGuildBlacklisted(long guildId) {
+        ensureLoaded();
+        return guilds.contains(guildId);
+    }
+
+    /**
+     * Rebuilds the blacklists from the given global document.
+     *
+     * @param obj The global document that's being saved.
+     */
+    public static void update(MantaroObj obj) {
+        TLongSet newUsers = ids(obj.getBlackListedUsers());
+        TLongSet newGuilds = ids(obj.getBlackListedGuilds());
+        //Users goes last, as it's what tells ensureLoaded that everything is there.
+        guilds = newGuilds;
+        users = newUsers;
+    }
+
+    private static void ensureLoaded() {
+        if(users == null) {
+            synchronized(Blacklist.class) {
+                if(users == null) {
+                    update(MantaroData.db().getMantaroData());
+                }
+            }
+        }
+    }
+
+    private static void refreshSafely() {
+        //Not loaded yet, the first lookup will do it.
+        if(users == null)
+            return;
+
+        try {
+            update(MantaroData.db().getMantaroData());
+        } catch(Exception e) {
+            log.error("Error refreshing the blacklists, keeping the old ones", e);
+        }
+    }
+
+    private static TLongSet ids(List<String> ids) {
+        TLongSet set = new TLongHashSet();
+        if(ids == null)
+            return set;
+
+        for(String id : ids) {
+            try {
+                set.add(Long.parseLong(id));
+            } catch(NumberFormatException ignored) {}
+        }
+        return set;
+    }
+}
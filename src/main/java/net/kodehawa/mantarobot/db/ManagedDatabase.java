@@ -16,6 +16,11 @@
 
 package net.kodehawa.mantarobot.db;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.rethinkdb.net.Connection;
 import com.rethinkdb.net.Cursor;
 import lombok.extern.slf4j.Slf4j;
@@ -24,21 +29,109 @@ import net.dv8tion.jda.core.entities.Member;
 import net.dv8tion.jda.core.entities.User;
 import net.dv8tion.jda.core.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.ExtraRuntimeOptions;
+import net.kodehawa.mantarobot.commands.utils.Reminder;
+import net.kodehawa.mantarobot.data.Config;
+import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.*;
+import net.kodehawa.mantarobot.db.leaderboard.Leaderboards;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static com.rethinkdb.RethinkDB.r;
 
 @Slf4j
 public class ManagedDatabase {
     private final Connection conn;
+    //In-process, write-through cache for guilds. Sits in front of whatever getGuild is backed by (rethink or redis).
+    //The cached instances are never handed out (only copies of them are), so they never change while on the cache.
+    private final LoadingCache<String, DBGuild> guildCache;
+    private final WriteBehindQueue writeQueue;
 
     public ManagedDatabase(@Nonnull Connection conn) {
         this.conn = conn;
+        Config config = MantaroData.config().get();
+        this.guildCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(10)
+                .maximumSize(config.guildCacheSize)
+                .expireAfterWrite(config.guildCacheTtlMs, TimeUnit.MILLISECONDS)
+                .build(CacheLoader.from(guildId -> fetchGuild(guildId).copy()));
+        this.writeQueue = new WriteBehindQueue(this::saveAll, config.writeBehindWindowMs, config.writeBehindMaxBacklog, config.writeBehindBatchSize);
+    }
+
+    /**
+     * Creates the tables and secondary indexes used by the lookups on this class if they don't exist yet.
+     * The first time this runs it also fills in the guildId and name fields of custom commands saved before they existed.
+     */
+    @SuppressWarnings("unchecked")
+    public void createIndexes() {
+        List<String> tables = r.tableList().run(conn);
+        if(!tables.contains(Reminder.DB_TABLE)) {
+            log.info("Creating reminders table...");
+            r.tableCreate(Reminder.DB_TABLE).run(conn);
+        }
+
+        for(String table : new String[]{Mute.DB_TABLE, TempBan.DB_TABLE}) {
+            if(!tables.contains(table)) {
+                log.info("Creating {} table...", table);
+                r.tableCreate(table).run(conn);
+                r.table(table).indexCreate("expiration").run(conn);
+                r.table(table).indexWait().run(conn);
+            }
+        }
+
+        Map<String, Object> mantaro = r.table(MantaroObj.DB_TABLE).get("mantaro").run(conn);
+        if(mantaro != null && (mantaro.containsKey("mutes") || mantaro.containsKey("tempBans"))) {
+            log.info("Moving mutes and temporary bans out of the global document, this will only happen once...");
+            //Mutes were userId -> {left: guildId, right: expiration}, and temporary bans guildId:userId -> expiration.
+            r.table(Mute.DB_TABLE).insert(
+                    r.table(MantaroObj.DB_TABLE).get("mantaro").g("mutes").default_(r.hashMap()).coerceTo("array")
+                            .map(entry -> r.hashMap("id", entry.nth(1).g("left").add(":").add(entry.nth(0)))
+                                    .with("guildId", entry.nth(1).g("left"))
+                                    .with("userId", entry.nth(0))
+                                    .with("expiration", entry.nth(1).g("right")))
+            ).optArg("conflict", "replace").run(conn);
+            r.table(TempBan.DB_TABLE).insert(
+                    r.table(MantaroObj.DB_TABLE).get("mantaro").g("tempBans").default_(r.hashMap()).coerceTo("array")
+                            .map(entry -> r.hashMap("id", entry.nth(0))
+                                    .with("guildId", entry.nth(0).split(":").nth(0))
+                                    .with("userId", entry.nth(0).split(":").nth(1))
+                                    .with("expiration", entry.nth(1)))
+            ).optArg("conflict", "replace").run(conn);
+            r.table(MantaroObj.DB_TABLE).get("mantaro").replace(obj -> obj.without("mutes", "tempBans")).run(conn);
+            //Don't leave the old document on whatever sits in front of rethink.
+            MantaroObj obj = r.table(MantaroObj.DB_TABLE).get("mantaro").run(conn, MantaroObj.class);
+            if(obj != null) cache(obj);
+        }
+
+        List<String> commandIndexes = r.table(CustomCommand.DB_TABLE).indexList().run(conn);
+        if(!commandIndexes.contains("guildId") || !commandIndexes.contains("name")) {
+            log.info("Migrating custom commands to indexed guildId/name fields, this will only happen once...");
+            r.table(CustomCommand.DB_TABLE)
+                    .filter(command -> command.hasFields("guildId", "name").not())
+                    .update(command -> r.hashMap("guildId", command.g("id").split(":", 1).nth(0))
+                            .with("name", command.g("id").split(":", 1).nth(1)))
+                    .run(conn);
+
+            if(!commandIndexes.contains("guildId"))
+                r.table(CustomCommand.DB_TABLE).indexCreate("guildId").run(conn);
+            if(!commandIndexes.contains("name"))
+                r.table(CustomCommand.DB_TABLE).indexCreate("name").run(conn);
+        }
+
+        List<String> playerIndexes = r.table(Player.DB_TABLE).indexList().run(conn);
+        if(!playerIndexes.contains("scope")) {
+            log.info("Creating scope index on players...");
+            //Player ids are userId:scope, where "g" is the global scope.
+            r.table(Player.DB_TABLE).indexCreate("scope", player -> player.g("id").split(":").nth(1)).run(conn);
+        }
+
+        r.table(CustomCommand.DB_TABLE).indexWait().run(conn);
+        r.table(Player.DB_TABLE).indexWait().run(conn);
     }
 
     private static void log(String message, Object... fmtArgs) {
@@ -56,6 +149,9 @@ public class ManagedDatabase {
     @Nullable
     @CheckReturnValue
     public CustomCommand getCustomCommand(@Nonnull String guildId, @Nonnull String name) {
+        CustomCommand pending = pending(CustomCommand.DB_TABLE, guildId + ":" + name);
+        if(pending != null) return pending;
+
         log("Requesting custom command {}:{} from rethink", guildId, name);
         return r.table(CustomCommand.DB_TABLE).get(guildId + ":" + name).run(conn, CustomCommand.class);
     }
@@ -90,8 +186,7 @@ public class ManagedDatabase {
     @CheckReturnValue
     public List<CustomCommand> getCustomCommands(@Nonnull String guildId) {
         log("Requesting all custom commands from guild {} from rethink", guildId);
-        String pattern = '^' + guildId + ':';
-        Cursor<CustomCommand> c = r.table(CustomCommand.DB_TABLE).filter(quote -> quote.g("id").match(pattern)).run(conn, CustomCommand.class);
+        Cursor<CustomCommand> c = r.table(CustomCommand.DB_TABLE).getAll(guildId).optArg("index", "guildId").run(conn, CustomCommand.class);
         return c.toList();
     }
 
@@ -111,14 +206,84 @@ public class ManagedDatabase {
     @CheckReturnValue
     public List<CustomCommand> getCustomCommandsByName(@Nonnull String name) {
         log("Requesting all custom commands named {} from rethink", name);
-        String pattern = ':' + name + '$';
-        Cursor<CustomCommand> c = r.table(CustomCommand.DB_TABLE).filter(quote -> quote.g("id").match(pattern)).run(conn, CustomCommand.class);
+        Cursor<CustomCommand> c = r.table(CustomCommand.DB_TABLE).getAll(name).optArg("index", "name").run(conn, CustomCommand.class);
+        return c.toList();
+    }
+
+    /**
+     * Looks up custom commands whose name matches a regex. This can't use the name index, so only use it when the name isn't known.
+     *
+     * @param pattern The regex to match the names against.
+     * @return The matching custom commands.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public List<CustomCommand> getCustomCommandsMatching(@Nonnull String pattern) {
+        log("Requesting all custom commands matching {} from rethink", pattern);
+        String anchored = '^' + pattern + '$';
+        Cursor<CustomCommand> c = r.table(CustomCommand.DB_TABLE).filter(command -> command.g("name").match(anchored)).run(conn, CustomCommand.class);
         return c.toList();
     }
 
     @Nonnull
     @CheckReturnValue
     public DBGuild getGuild(@Nonnull String guildId) {
+        return cachedGuild(guildId).copy();
+    }
+
+    /**
+     * Gets the custom prefix of a guild. This goes through the guild cache like {@link #getGuild(String)}, but without copying
+     * the guild, so it's cheap enough to call for every message.
+     *
+     * @param guildId The id of the guild.
+     * @return The custom prefix of the guild, or null if it doesn't have one.
+     */
+    @Nullable
+    @CheckReturnValue
+    public String getGuildCustomPrefix(@Nonnull String guildId) {
+        return cachedGuild(guildId).getData().getGuildCustomPrefix();
+    }
+
+    //The instance on the cache, loading it if needed. Must never be modified nor handed out.
+    private DBGuild cachedGuild(String guildId) {
+        try {
+            return guildCache.getUnchecked(guildId);
+        } catch(UncheckedExecutionException e) {
+            //Don't hide database errors behind the cache wrapper, the command listener handles them on its own.
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up a guild on the in-process guild cache only, never going to the backing storage.
+     * Unlike {@link #getGuild(String)} this doesn't copy it, so it's cheap enough to call for every message, but the returned
+     * guild is the one on the cache: it must only be read, never modified nor saved.
+     *
+     * @param guildId The id of the guild.
+     * @return The cached guild, or null if it isn't cached.
+     */
+    @Nullable
+    @CheckReturnValue
+    public DBGuild peekCachedGuild(@Nonnull String guildId) {
+        return guildCache.getIfPresent(guildId);
+    }
+
+    /**
+     * Loads a guild from the backing storage, skipping the in-process guild cache.
+     * Only called on a cache miss in {@link #getGuild(String)}.
+     *
+     * @param guildId The id of the guild to load.
+     * @return The guild, or a new one if it wasn't saved yet.
+     */
+    @Nonnull
+    @CheckReturnValue
+    protected DBGuild fetchGuild(@Nonnull String guildId) {
+        DBGuild pending = pending(DBGuild.DB_TABLE, guildId);
+        if(pending != null) return pending;
+
         log("Requesting guild {} from rethink", guildId);
         DBGuild guild = r.table(DBGuild.DB_TABLE).get(guildId).run(conn, DBGuild.class);
         return guild == null ? DBGuild.of(guildId) : guild;
@@ -142,9 +307,53 @@ public class ManagedDatabase {
         return getGuild(event.getGuild());
     }
 
+    /**
+     * Gets several guilds at once. Whatever isn't on the guild cache is loaded with a single request.
+     *
+     * @param guildIds The ids of the guilds to get.
+     * @return A map of guild id to guild, containing every requested id (guilds that weren't saved yet get a new object).
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, DBGuild> getGuilds(@Nonnull Collection<String> guildIds) {
+        Map<String, DBGuild> result = new HashMap<>();
+        guildCache.getAllPresent(guildIds).forEach((id, guild) -> result.put(id, guild.copy()));
+        List<String> missing = new ArrayList<>();
+        for(String id : guildIds) {
+            if(!result.containsKey(id))
+                missing.add(id);
+        }
+
+        if(!missing.isEmpty()) {
+            fetchGuilds(missing).forEach((id, guild) -> {
+                DBGuild cached = guild.copy();
+                guildCache.put(id, cached);
+                result.put(id, cached.copy());
+            });
+        }
+
+        return result;
+    }
+
+    /**
+     * Bulk version of {@link #fetchGuild(String)}, called with the guilds missing from the guild cache.
+     *
+     * @param guildIds The ids of the guilds to load.
+     * @return A map of guild id to guild, containing every requested id.
+     */
+    @Nonnull
+    @CheckReturnValue
+    protected Map<String, DBGuild> fetchGuilds(@Nonnull Collection<String> guildIds) {
+        log("Requesting {} guilds from rethink", guildIds.size());
+        return getAll(DBGuild.DB_TABLE, DBGuild.class, guildIds, "", DBGuild::of);
+    }
+
     @Nonnull
     @CheckReturnValue
     public MantaroObj getMantaroData() {
+        MantaroObj pending = pending(MantaroObj.DB_TABLE, "mantaro");
+        if(pending != null) return pending;
+
         log("Requesting MantaroObj from rethink");
         MantaroObj obj = r.table(MantaroObj.DB_TABLE).get("mantaro").run(conn, MantaroObj.class);
         return obj == null ? MantaroObj.create() : obj;
@@ -153,6 +362,9 @@ public class ManagedDatabase {
     @Nonnull
     @CheckReturnValue
     public Player getPlayer(@Nonnull String userId) {
+        Player pending = pending(Player.DB_TABLE, userId + ":g");
+        if(pending != null) return pending;
+
         log("Requesting player {} from rethink", userId);
         Player player = r.table(Player.DB_TABLE).get(userId + ":g").run(conn, Player.class);
         return player == null ? Player.of(userId) : player;
@@ -170,12 +382,24 @@ public class ManagedDatabase {
         return getPlayer(member.getUser());
     }
 
+    /**
+     * Gets several players at once, using a single request.
+     *
+     * @param userIds The ids of the users to get the players of.
+     * @return A map of user id to player, containing every requested id (players that weren't saved yet get a new object).
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, Player> getPlayers(@Nonnull Collection<String> userIds) {
+        log("Requesting {} players from rethink", userIds.size());
+        return getAll(Player.DB_TABLE, Player.class, userIds, ":g", Player::of);
+    }
+
     @Nonnull
     @CheckReturnValue
     public List<Player> getPlayers() {
         log("Requesting all players from rethink");
-        String pattern = ":g$";
-        Cursor<Player> c = r.table(Player.DB_TABLE).filter(quote -> quote.g("id").match(pattern)).run(conn, Player.class);
+        Cursor<Player> c = r.table(Player.DB_TABLE).getAll("g").optArg("index", "scope").run(conn, Player.class);
         return c.toList();
     }
 
@@ -187,23 +411,94 @@ public class ManagedDatabase {
         return c.toList();
     }
 
+    @Nullable
+    @CheckReturnValue
+    public Mute getMute(@Nonnull String guildId, @Nonnull String userId) {
+        String id = guildId + ":" + userId;
+        Mute pending = pending(Mute.DB_TABLE, id);
+        if(pending != null) return pending;
+
+        log("Requesting mute {} from rethink", id);
+        return r.table(Mute.DB_TABLE).get(id).run(conn, Mute.class);
+    }
+
+    /**
+     * @return Every saved mute, sorted by when it expires.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public List<Mute> getMutes() {
+        log("Requesting all mutes from rethink");
+        Cursor<Mute> c = r.table(Mute.DB_TABLE).orderBy().optArg("index", "expiration").run(conn, Mute.class);
+        return c.toList();
+    }
+
+    @Nullable
+    @CheckReturnValue
+    public TempBan getTempBan(@Nonnull String guildId, @Nonnull String userId) {
+        String id = guildId + ":" + userId;
+        TempBan pending = pending(TempBan.DB_TABLE, id);
+        if(pending != null) return pending;
+
+        log("Requesting temporary ban {} from rethink", id);
+        return r.table(TempBan.DB_TABLE).get(id).run(conn, TempBan.class);
+    }
+
+    /**
+     * @return Every saved temporary ban, sorted by when it expires.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public List<TempBan> getTempBans() {
+        log("Requesting all temporary bans from rethink");
+        Cursor<TempBan> c = r.table(TempBan.DB_TABLE).orderBy().optArg("index", "expiration").run(conn, TempBan.class);
+        return c.toList();
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public List<Reminder> getReminders() {
+        log("Requesting all reminders from rethink");
+        Cursor<Reminder> c = r.table(Reminder.DB_TABLE).run(conn, Reminder.class);
+        return c.toList();
+    }
+
     //Also tests if the key is valid or not!
     @Nullable
     @CheckReturnValue
     public PremiumKey getPremiumKey(@Nullable String id) {
         log("Requesting premium key {} from rethink", id);
         if(id == null) return null;
+        PremiumKey pending = pending(PremiumKey.DB_TABLE, id);
+        if(pending != null) return pending;
+
         return r.table(PremiumKey.DB_TABLE).get(id).run(conn, PremiumKey.class);
     }
 
     @Nonnull
     @CheckReturnValue
     public DBUser getUser(@Nonnull String userId) {
+        DBUser pending = pending(DBUser.DB_TABLE, userId);
+        if(pending != null) return pending;
+
         log("Requesting user {} from rethink", userId);
         DBUser user = r.table(DBUser.DB_TABLE).get(userId).run(conn, DBUser.class);
         return user == null ? DBUser.of(userId) : user;
     }
 
+    /**
+     * Gets several users at once, using a single request.
+     *
+     * @param userIds The ids of the users to get.
+     * @return A map of user id to user, containing every requested id (users that weren't saved yet get a new object).
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, DBUser> getUsers(@Nonnull Collection<String> userIds) {
+        log("Requesting {} users from rethink", userIds.size());
+        return getAll(DBUser.DB_TABLE, DBUser.class, userIds, "", DBUser::of);
+    }
+
     @Nonnull
     @CheckReturnValue
     public DBUser getUser(@Nonnull User user) {
@@ -217,6 +512,7 @@ public class ManagedDatabase {
     }
 
     public void save(@Nonnull ManagedObject object) {
+        cache(object);
         log("Saving {} {}:{} to rethink", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
         r.table(object.getTableName())
                 .insert(object)
@@ -224,11 +520,115 @@ public class ManagedDatabase {
                 .runNoReply(conn);
     }
 
+    /**
+     * Updates the caches right away and leaves the write to the {@link WriteBehindQueue}, which coalesces repeated saves
+     * of the same object and writes them in batches.
+     *
+     * @param object The object to save.
+     */
+    public void saveAsync(@Nonnull ManagedObject object) {
+        cache(object);
+        writeQueue.enqueue(object);
+    }
+
     public void delete(@Nonnull ManagedObject object) {
+        uncache(object);
         log("Deleting {} {}:{} from rethink", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
-        r.table(object.getTableName())
+        //Waits for any batch in flight, so it can't write the document back afterwards.
+        writeQueue.discard(object, () -> r.table(object.getTableName())
                 .get(object.getId())
                 .delete()
-                .runNoReply(conn);
+                .runNoReply(conn));
+    }
+
+    @Nonnull
+    public WriteBehindQueue getWriteQueue() {
+        return writeQueue;
+    }
+
+    /**
+     * Called before an object is written to rethink, to keep whatever sits in front of it up to date.
+     *
+     * @param object The object that's being saved.
+     */
+    protected void cache(@Nonnull ManagedObject object) {
+        if(object instanceof DBGuild) {
+            //Whoever saved it can keep changing it afterwards.
+            guildCache.put(object.getId(), ((DBGuild) object).copy());
+        } else if(object instanceof Player) {
+            Leaderboards.update((Player) object);
+        } else if(object instanceof MantaroObj) {
+            Blacklist.update((MantaroObj) object);
+        }
+    }
+
+    /**
+     * Called before an object is deleted from rethink, to drop it from whatever sits in front of it.
+     *
+     * @param object The object that's being deleted.
+     */
+    protected void uncache(@Nonnull ManagedObject object) {
+        if(object instanceof DBGuild) {
+            guildCache.invalidate(object.getId());
+        } else if(object instanceof Player) {
+            Leaderboards.remove((Player) object);
+        }
+    }
+
+    /**
+     * Drops a guild from the in-process guild cache only, so the next lookup loads it again.
+     * Used when another node changes the guild.
+     *
+     * @param guildId The id of the guild.
+     */
+    protected void invalidateCachedGuild(@Nonnull String guildId) {
+        guildCache.invalidate(guildId);
+    }
+
+    //Waits for the reply, so the write-behind queue knows whether the batch has to be retried.
+    private void saveAll(String table, List<ManagedObject> objects) {
+        log("Saving {} objects to rethink table {}", objects.size(), table);
+        Map<String, Object> result = r.table(table)
+                .insert(objects)
+                .optArg("conflict", "replace")
+                .run(conn);
+
+        Object errors = result == null ? null : result.get("errors");
+        if(errors instanceof Number && ((Number) errors).longValue() > 0) {
+            throw new IllegalStateException(errors + " documents failed to be written to " + table + ": " + result.get("first_error"));
+        }
+    }
+
+    //Documents are keyed by the requested id, which is the document id without the suffix (eg. ":g" for players).
+    private <T extends ManagedObject> Map<String, T> getAll(String table, Class<T> type, Collection<String> ids, String suffix, Function<String, T> creator) {
+        Map<String, T> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for(String id : ids) {
+            T pending = pending(table, id + suffix);
+            if(pending != null) {
+                result.put(id, pending);
+            } else {
+                missing.add(id + suffix);
+            }
+        }
+
+        for(List<String> chunk : Lists.partition(missing, 1000)) {
+            Cursor<T> c = r.table(table).getAll(r.args(chunk)).run(conn, type);
+            for(T object : c.toList()) {
+                String id = object.getId();
+                result.put(id.substring(0, id.length() - suffix.length()), object);
+            }
+        }
+
+        for(String id : ids) {
+            result.computeIfAbsent(id, creator);
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends ManagedObject> T pending(String table, String id) {
+        return (T) writeQueue.get(table, id);
     }
 }
@@ -49,6 +49,6 @@ public interface ManagedObject {
     }
 
     default void saveAsync() {
-        MantaroData.queue(this::save);
+        MantaroData.db().saveAsync(this);
     }
 }
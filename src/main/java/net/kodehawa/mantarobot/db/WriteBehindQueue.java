@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.timgroup.statsd.StatsDClient;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
+import net.kodehawa.mantarobot.utils.Mapifier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Write-behind buffer for {@link ManagedObject#saveAsync()}.
+ * Saves of the same document (same table and id) done within a flush window are coalesced into one, and every flush writes
+ * the pending documents as one multi-document insert per table.
+ * The queue keeps its own copy of every saved object, so whoever saved it can keep changing it without racing the write.
+ * Saving never blocks: when the backlog is full, saves of documents that aren't already pending are dropped, and documents
+ * that fail to be written {@link #MAX_ATTEMPTS} times in a row are dropped too.
+ * Whatever is left on the queue gets flushed on shutdown.
+ */
+@Slf4j
+public class WriteBehindQueue {
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final BiConsumer<String, List<ManagedObject>> writer;
+    private final int maxBacklog;
+    private final int batchSize;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Mantaro-WriteBehind");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param writer     Writes a batch of documents to the given table.
+     * @param windowMs   How long saves are held (and coalesced) before being written.
+     * @param maxBacklog Maximum amount of pending documents, saves of new documents past this get dropped.
+     * @param batchSize  Maximum amount of documents written in a single insert.
+     */
+    public WriteBehindQueue(BiConsumer<String, List<ManagedObject>> writer, long windowMs, int maxBacklog, int batchSize) {
+        this.writer = writer;
+        this.maxBacklog = maxBacklog;
+        this.batchSize = batchSize;
+        executor.scheduleWithFixedDelay(this::flushSafely, windowMs, windowMs, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "Mantaro-WriteBehind-Shutdown"));
+    }
+
+    private static String key(String table, String id) {
+        return table + ':' + id;
+    }
+
+    private static ManagedObject copy(ManagedObject object) {
+        if(object instanceof DBGuild)
+            return ((DBGuild) object).copy();
+
+        return Mapifier.fromMap(object.getClass(), Mapifier.toMap(object));
+    }
+
+    public void enqueue(@Nonnull ManagedObject object) {
+        enqueued.incrementAndGet();
+        String key = key(object.getTableName(), object.getId());
+        //Coalescing into an already pending document doesn't grow the backlog, so that's always allowed.
+        if(pending.size() >= maxBacklog && !pending.containsKey(key)) {
+            drop("backlog_full", 1);
+            log.warn("Write-behind backlog is full ({} documents), dropped save of {}", maxBacklog, key);
+            requestFlush();
+            return;
+        }
+
+        //A new holder every time, so a flush only removes the version it actually wrote.
+        if(pending.put(key, new Pending(copy(object))) != null) {
+            coalesced.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops a pending save and runs the delete while no batch is being written, so a batch that's already in flight can't
+     * write the document back after it was deleted.
+     *
+     * @param object The object that's being deleted.
+     * @param delete Deletes the object from the database.
+     */
+    public void discard(@Nonnull ManagedObject object, @Nonnull Runnable delete) {
+        synchronized(flushLock) {
+            pending.remove(key(object.getTableName(), object.getId()));
+            delete.run();
+        }
+    }
+
+    /**
+     * Looks up a document that was saved but not yet written, so reads don't go back in time while the queue catches up.
+     *
+     * @param table The table the document belongs to.
+     * @param id    The id of the document.
+     * @return A copy of the pending document, or null if there's nothing pending for it.
+     */
+    @Nullable
+    public ManagedObject get(@Nonnull String table, @Nonnull String id) {
+        Pending p = pending.get(key(table, id));
+        return p == null ? null : copy(p.object);
+    }
+
+    public void flush() {
+        synchronized(flushLock) {
+            flushRequested.set(false);
+            if(pending.isEmpty())
+                return;
+
+            int depth = pending.size();
+            //Documents stay on pending until they're written, so reads keep seeing them while the write is in flight.
+            Map<String, List<Map.Entry<String, Pending>>> tables = new HashMap<>();
+            for(Map.Entry<String, Pending> entry : pending.entrySet()) {
+                Pending p = entry.getValue();
+                tables.computeIfAbsent(p.object.getTableName(), t -> new ArrayList<>()).add(new SimpleImmutableEntry<>(entry.getKey(), p));
+            }
+
+            tables.forEach((table, entries) -> {
+                for(int i = 0; i < entries.size(); i += batchSize) {
+                    List<Map.Entry<String, Pending>> batch = entries.subList(i, Math.min(i + batchSize, entries.size()));
+                    List<ManagedObject> objects = new ArrayList<>(batch.size());
+                    for(Map.Entry<String, Pending> entry : batch) {
+                        objects.add(entry.getValue().object);
+                    }
+
+                    try {
+                        writer.accept(table, objects);
+                        written.addAndGet(objects.size());
+                    } catch(Exception e) {
+                        log.error("Error writing {} documents to table {}", objects.size(), table, e);
+                        int gaveUp = 0;
+                        for(Map.Entry<String, Pending> entry : batch) {
+                            //Only give up on the version that kept failing, a newer save gets its own attempts.
+                            if(++entry.getValue().attempts >= MAX_ATTEMPTS && pending.remove(entry.getKey(), entry.getValue()))
+                                gaveUp++;
+                        }
+
+                        if(gaveUp > 0) {
+                            drop("write_failed", gaveUp);
+                            log.error("Gave up on {} documents of table {} after {} attempts", gaveUp, table, MAX_ATTEMPTS);
+                        }
+
+                        continue;
+                    }
+
+                    //Don't drop anything newer that might have been saved in the meantime.
+                    for(Map.Entry<String, Pending> entry : batch) {
+                        pending.remove(entry.getKey(), entry.getValue());
+                    }
+                }
+            });
+
+            StatsDClient statsClient = statsClient();
+            if(statsClient != null) {
+                statsClient.gauge("db_write_queue_depth", depth);
+                statsClient.gauge("db_write_coalescing_ratio", getCoalescingRatio());
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The fraction of saves that were folded into an already pending one, between 0 and 1.
+     */
+    public double getCoalescingRatio() {
+        long total = enqueued.get();
+        return total == 0 ? 0 : (double) coalesced.get() / total;
+    }
+
+    private void drop(String reason, int amount) {
+        dropped.addAndGet(amount);
+        StatsDClient statsClient = statsClient();
+        if(statsClient != null)
+            statsClient.count("db_write_dropped", amount, "reason:" + reason);
+    }
+
+    //Flushes early on the queue's own thread, without waiting for the window to pass.
+    private void requestFlush() {
+        if(flushRequested.compareAndSet(false, true))
+            executor.execute(this::flushSafely);
+    }
+
+    private StatsDClient statsClient() {
+        return MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getStatsClient();
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch(Exception e) {
+            log.error("Unexpected error flushing the write-behind queue", e);
+        }
+    }
+
+    private void shutdown() {
+        executor.shutdown();
+        log.info("Flushing {} pending documents before shutting down", pending.size());
+        flushSafely();
+
+        if(!pending.isEmpty())
+            log.error("{} documents couldn't be written before shutting down and were lost", pending.size());
+    }
+
+    private static class Pending {
+        private final ManagedObject object;
+        //Only touched while holding the flush lock.
+        private int attempts;
+
+        Pending(ManagedObject object) {
+            this.object = object;
+        }
+    }
+}
@@ -33,12 +33,23 @@ public class CustomCommand implements ManagedObject {
     public static final String DB_TABLE = "commands";
     private final String id;
     private final List<String> values;
+    //Stored separately from the id so lookups by guild or name can use the secondary indexes.
+    private final String guildId;
+    private final String name;
 
-    @ConstructorProperties({"id", "values"})
+    @ConstructorProperties({"id", "values", "guildId", "name"})
     @JsonCreator
-    public CustomCommand(@JsonProperty("id") String id, @JsonProperty("values") List<String> values) {
+    public CustomCommand(@JsonProperty("id") String id, @JsonProperty("values") List<String> values, @JsonProperty("guildId") String guildId, @JsonProperty("name") String name) {
         this.id = id;
         this.values = values.stream().map(URLEncoding::decode).collect(Collectors.toList());
+        //Older documents only have the id, so fill these in from it.
+        String[] parts = id.split(":", 2);
+        this.guildId = guildId == null ? parts[0] : guildId;
+        this.name = name == null ? parts[1] : name;
+    }
+
+    public CustomCommand(String id, List<String> values) {
+        this(id, values, null, null);
     }
 
     public static CustomCommand of(String guildId, String cmdName, List<String> responses) {
@@ -57,16 +68,6 @@ public class CustomCommand implements ManagedObject {
         return values.stream().map(URLEncoding::encode).collect(Collectors.toList());
     }
 
-    @JsonIgnore
-    public String getGuildId() {
-        return getId().split(":", 2)[0];
-    }
-
-    @JsonIgnore
-    public String getName() {
-        return getId().split(":", 2)[1];
-    }
-
     @JsonIgnore
     public List<String> getValues() {
         return values;
@@ -27,6 +27,8 @@ import net.dv8tion.jda.core.entities.Guild;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedObject;
 import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
+import net.kodehawa.mantarobot.db.entities.helpers.GuildPermissionIndex;
+import net.kodehawa.mantarobot.utils.Mapifier;
 
 import javax.annotation.Nonnull;
 import java.beans.ConstructorProperties;
@@ -36,13 +38,15 @@ import java.util.concurrent.TimeUnit;
 import static java.lang.System.currentTimeMillis;
 
 @Getter
-@ToString
-@EqualsAndHashCode
+@ToString(exclude = "permissionIndex")
+@EqualsAndHashCode(exclude = "permissionIndex")
 public class DBGuild implements ManagedObject {
     public static final String DB_TABLE = "guilds";
     private final GuildData data;
     private final String id;
     private long premiumUntil;
+    //Compiled from data, rebuilt lazily after the guild gets loaded or saved. Shared between copies.
+    private transient volatile GuildPermissionIndex permissionIndex;
 
     @JsonCreator
     @ConstructorProperties({"id", "premiumUntil", "data"})
@@ -67,6 +71,44 @@ public class DBGuild implements ManagedObject {
         return DB_TABLE;
     }
 
+    /**
+     * Deep copy of this guild. The guild cache only hands out copies, so changes made by one command aren't seen by anyone
+     * else before being saved, and nobody changes the data while the permission index is being compiled from it.
+     * The copy shares the compiled permission index, which is immutable.
+     *
+     * @return A copy of this guild.
+     */
+    public DBGuild copy() {
+        DBGuild copy = new DBGuild(id, premiumUntil, Mapifier.fromMap(GuildData.class, Mapifier.toMap(data)));
+        copy.permissionIndex = getPermissionIndex();
+        return copy;
+    }
+
+    /**
+     * @return The command restrictions of this guild, compiled from its data. Changes to the data show up on it after saving.
+     */
+    @JsonIgnore
+    public GuildPermissionIndex getPermissionIndex() {
+        GuildPermissionIndex index = permissionIndex;
+        if(index == null) {
+            index = GuildPermissionIndex.of(data);
+            permissionIndex = index;
+        }
+        return index;
+    }
+
+    @Override
+    public void save() {
+        permissionIndex = null;
+        ManagedObject.super.save();
+    }
+
+    @Override
+    public void saveAsync() {
+        permissionIndex = null;
+        ManagedObject.super.saveAsync();
+    }
+
     public Guild getGuild(JDA jda) {
         return jda.getGuildById(getId());
     }
@@ -18,19 +18,18 @@ package net.kodehawa.mantarobot.db.entities;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import net.kodehawa.mantarobot.db.ManagedObject;
-import net.kodehawa.mantarobot.utils.Pair;
 
 import javax.annotation.Nonnull;
 import java.beans.ConstructorProperties;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+//Mutes and temporary bans used to be saved here, they have their own tables now (see Mute and TempBan).
+@JsonIgnoreProperties({"mutes", "tempBans"})
 @Data
 public class MantaroObj implements ManagedObject {
     public static final String DB_TABLE = "mantaro";
@@ -38,25 +37,19 @@ public class MantaroObj implements ManagedObject {
     public List<String> blackListedGuilds = null;
     public List<String> blackListedUsers = null;
     public List<String> patreonUsers = null;
-    private Map<Long, Pair<String, Long>> mutes = null;
-    private Map<String, Long> tempBans = null;
 
-    @ConstructorProperties({"blackListedGuilds", "blackListedUsers", "patreonUsers", "tempbans", "mutes"})
+    @ConstructorProperties({"blackListedGuilds", "blackListedUsers", "patreonUsers"})
     @JsonCreator
     public MantaroObj(@JsonProperty("blackListedGuilds") List<String> blackListedGuilds,
                       @JsonProperty("blackListedUsers") List<String> blackListedUsers,
-                      @JsonProperty("patreonUsers") List<String> patreonUsers,
-                      @JsonProperty("tempBans") Map<String, Long> tempBans,
-                      @JsonProperty("mutes") Map<Long, Pair<String, Long>> mutes) {
+                      @JsonProperty("patreonUsers") List<String> patreonUsers) {
         this.blackListedGuilds = blackListedGuilds;
         this.blackListedUsers = blackListedUsers;
         this.patreonUsers = patreonUsers;
-        this.tempBans = tempBans;
-        this.mutes = mutes;
     }
 
     public static MantaroObj create() {
-        return new MantaroObj(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new HashMap<>(), new ConcurrentHashMap<>());
+        return new MantaroObj(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
     }
 
     @JsonIgnore
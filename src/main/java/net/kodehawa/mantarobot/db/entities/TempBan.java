@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db.entities;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import net.kodehawa.mantarobot.db.ManagedObject;
+
+import javax.annotation.Nonnull;
+import java.beans.ConstructorProperties;
+
+/**
+ * A temporary ban. Its timer is scheduled by {@link net.kodehawa.mantarobot.commands.moderation.TempBanManager}.
+ * Ids are guildId:userId, and the table has an index on the expiration time.
+ */
+@Getter
+public class TempBan implements ManagedObject {
+    public static final String DB_TABLE = "tempbans";
+    private final String id;
+    private final String guildId;
+    private final String userId;
+    private final long expiration;
+
+    @JsonCreator
+    @ConstructorProperties({"id", "guildId", "userId", "expiration"})
+    public TempBan(@JsonProperty("id") String id, @JsonProperty("guildId") String guildId,
+                   @JsonProperty("userId") String userId, @JsonProperty("expiration") long expiration) {
+        this.id = id;
+        this.guildId = guildId;
+        this.userId = userId;
+        this.expiration = expiration;
+    }
+
+    public static TempBan of(String guildId, String userId, long expiration) {
+        return new TempBan(guildId + ":" + userId, guildId, userId, expiration);
+    }
+
+    @JsonIgnore
+    @Override
+    @Nonnull
+    public String getTableName() {
+        return DB_TABLE;
+    }
+}
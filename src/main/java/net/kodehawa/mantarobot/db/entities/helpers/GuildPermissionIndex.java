@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db.entities.helpers;
+
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.dv8tion.jda.core.entities.Role;
+import net.kodehawa.mantarobot.core.modules.commands.base.Category;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiled, read-only view of the command restrictions stored on a {@link GuildData}.
+ * Commands are keyed by an interned id (see {@link #commandId(String)}) and categories by their ordinal, so every check
+ * done by the command registry is a couple of hash lookups instead of walking the guild's lists.
+ * Instances are never modified after being built, a new one has to be compiled every time the guild data changes.
+ */
+public class GuildPermissionIndex {
+    private static final Map<String, Integer> COMMAND_IDS = new ConcurrentHashMap<>();
+    private static final AtomicInteger COMMAND_ID_COUNTER = new AtomicInteger();
+
+    private final BitSet disabledCommands;
+    private final long disabledCategories;
+    private final TLongSet disabledChannels;
+    private final TLongSet disabledUsers;
+    private final TLongSet disabledRoles;
+    private final TLongObjectMap<BitSet> channelDisabledCommands;
+    private final TLongLongMap channelDisabledCategories;
+    private final TLongObjectMap<BitSet> roleDisabledCommands;
+    private final TLongLongMap roleDisabledCategories;
+
+    private GuildPermissionIndex(GuildData data) {
+        disabledCommands = commands(data.getDisabledCommands());
+        disabledCategories = categories(data.getDisabledCategories());
+        disabledChannels = ids(data.getDisabledChannels());
+        disabledUsers = ids(data.getDisabledUsers());
+        disabledRoles = ids(data.getDisabledRoles());
+
+        channelDisabledCommands = new TLongObjectHashMap<>();
+        data.getChannelSpecificDisabledCommands().forEach((id, list) -> {
+            long key = parseId(id);
+            if(key != -1 && list != null && !list.isEmpty())
+                channelDisabledCommands.put(key, commands(list));
+        });
+
+        channelDisabledCategories = new TLongLongHashMap();
+        data.getChannelSpecificDisabledCategories().forEach((id, list) -> {
+            long key = parseId(id);
+            if(key != -1 && list != null && !list.isEmpty())
+                channelDisabledCategories.put(key, categories(list));
+        });
+
+        roleDisabledCommands = new TLongObjectHashMap<>();
+        data.getRoleSpecificDisabledCommands().forEach((id, list) -> {
+            long key = parseId(id);
+            if(key != -1 && list != null && !list.isEmpty())
+                roleDisabledCommands.put(key, commands(list));
+        });
+
+        roleDisabledCategories = new TLongLongHashMap();
+        data.getRoleSpecificDisabledCategories().forEach((id, list) -> {
+            long key = parseId(id);
+            if(key != -1 && list != null && !list.isEmpty())
+                roleDisabledCategories.put(key, categories(list));
+        });
+    }
+
+    public static GuildPermissionIndex of(GuildData data) {
+        return new GuildPermissionIndex(data);
+    }
+
+    /**
+     * Returns the interned id of a command name, assigning a new one if it was never seen before.
+     *
+     * @param name The command name.
+     * @return The id used to key this command on every index.
+     */
+    public static int commandId(String name) {
+        return COMMAND_IDS.computeIfAbsent(name, n -> COMMAND_ID_COUNTER.getAndIncrement());
+    }
+
+    /**
+     * Looks up the interned id of a command name without assigning one.
+     * A command that has no id was never disabled anywhere, so every check will pass for it.
+     *
+     * @param name The command name.
+     * @return The id of the command, or -1 if it has none.
+     */
+    public static int lookupCommandId(String name) {
+        Integer id = COMMAND_IDS.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public boolean isCommandDisabled(int command) {
+        return command != -1 && disabledCommands.get(command);
+    }
+
+    public boolean isCommandDisabled(int command, long channelId) {
+        if(command == -1)
+            return false;
+
+        BitSet set = channelDisabledCommands.get(channelId);
+        return set != null && set.get(command);
+    }
+
+    public boolean isCategoryDisabled(Category category) {
+        return category != null && (disabledCategories & mask(category)) != 0;
+    }
+
+    public boolean isCategoryDisabled(Category category, long channelId) {
+        return category != null && (channelDisabledCategories.get(channelId) & mask(category)) != 0;
+    }
+
+    public boolean isChannelDisabled(long channelId) {
+        return disabledChannels.contains(channelId);
+    }
+
+    public boolean isUserDisabled(long userId) {
+        return disabledUsers.contains(userId);
+    }
+
+    public boolean hasRoleRestrictions() {
+        return !disabledRoles.isEmpty() || !roleDisabledCommands.isEmpty() || !roleDisabledCategories.isEmpty();
+    }
+
+    /**
+     * Checks the role-based restrictions (disabled roles, role-specific commands and categories) against the given roles.
+     *
+     * @param roles    The roles of the member that ran the command.
+     * @param command  The interned id of the command, -1 if it has none.
+     * @param category The category of the command, can be null.
+     * @return Whether any of the roles can't run this command.
+     */
+    public boolean isDisabledForRoles(List<Role> roles, int command, Category category) {
+        long categoryMask = category == null ? 0 : mask(category);
+
+        for(Role role : roles) {
+            long id = role.getIdLong();
+            if(disabledRoles.contains(id))
+                return true;
+
+            if(command != -1) {
+                BitSet set = roleDisabledCommands.get(id);
+                if(set != null && set.get(command))
+                    return true;
+            }
+
+            if((roleDisabledCategories.get(id) & categoryMask) != 0)
+                return true;
+        }
+
+        return false;
+    }
+
+    private static BitSet commands(Collection<String> names) {
+        BitSet set = new BitSet();
+        for(String name : names) {
+            if(name != null)
+                set.set(commandId(name));
+        }
+        return set;
+    }
+
+    private static long categories(Collection<Category> categories) {
+        long mask = 0;
+        for(Category category : categories) {
+            if(category != null)
+                mask |= mask(category);
+        }
+        return mask;
+    }
+
+    private static TLongSet ids(Collection<String> ids) {
+        TLongSet set = new TLongHashSet(Math.max(ids.size(), 1));
+        for(String id : ids) {
+            long parsed = parseId(id);
+            if(parsed != -1)
+                set.add(parsed);
+        }
+        return set;
+    }
+
+    private static long mask(Category category) {
+        return 1L << category.ordinal();
+    }
+
+    private static long parseId(String id) {
+        if(id == null)
+            return -1;
+
+        try {
+            return Long.parseUnsignedLong(id);
+        } catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+}
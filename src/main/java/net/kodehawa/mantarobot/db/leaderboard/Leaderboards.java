@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db.leaderboard;
+
+import com.rethinkdb.model.OptArgs;
+import com.rethinkdb.net.Connection;
+import com.rethinkdb.net.Cursor;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.utils.SentryHelper;
+import net.kodehawa.mantarobot.utils.Utils;
+import org.redisson.api.RTopic;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * In-memory materialized view of the global player leaderboards.
+ * It's filled from the players table on startup (see {@link #load()}) and then kept up to date from every player save,
+ * so top-N and rank lookups don't have to sort the whole players table anymore.
+ * Saves done on other nodes are received through redis when it's enabled, and the whole table is reloaded every
+ * {@link #RELOAD_INTERVAL} anyways, so whatever got missed doesn't drift forever.
+ * Players with a score of zero aren't indexed on that leaderboard, they all share the last position.
+ */
+@Slf4j
+public class Leaderboards {
+    private static final Map<Type, RankedIndex> boards = new EnumMap<>(Type.class);
+    //user id -> {money, level, experience, reputation, streak}. Used to find and remove the previous entries of a player.
+    private static final TLongObjectMap<long[]> scores = new TLongObjectHashMap<>();
+    //Players saved while the table was being loaded, as whatever the cursor has for them is older than what we have.
+    private static final TLongSet savedWhileLoading = new TLongHashSet();
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(5);
+    private static final long RELOAD_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    private static final String TOPIC = "leaderboards";
+    //Tells our own messages apart from the ones published by other nodes.
+    private static final String node = UUID.randomUUID().toString();
+    private static volatile RTopic<String> topic;
+    private static volatile boolean loaded = false;
+    private static boolean loading = false;
+
+    static {
+        for(Type type : Type.values()) {
+            boards.put(type, new RankedIndex());
+        }
+    }
+
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Starts listening for saves done on other nodes, loads the leaderboards with {@link #loadWithRetries()} and schedules
+     * the periodic reloads. Blocks until the first load is done.
+     */
+    public static void start() {
+        if(MantaroData.config().get().redis.enabled) {
+            RTopic<String> t = MantaroData.redisson().getTopic(TOPIC, StringCodec.INSTANCE);
+            t.addListener((channel, message) -> {
+                try {
+                    receive(message);
+                } catch(Exception e) {
+                    log.warn("Invalid leaderboard update: {}", message, e);
+                }
+            });
+            topic = t;
+        }
+
+        loadWithRetries();
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Mantaro-Leaderboards");
+            t.setDaemon(true);
+            return t;
+        }).scheduleWithFixedDelay(Leaderboards::reloadSafely, RELOAD_INTERVAL, RELOAD_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Calls {@link #load()} until it succeeds, backing off exponentially (up to {@link #MAX_RETRY_DELAY}) between attempts,
+     * so a database hiccup on startup doesn't leave the leaderboards unavailable until the next restart.
+     * Blocks until the leaderboards are loaded, or until the thread is interrupted.
+     */
+    public static void loadWithRetries() {
+        long delay = RETRY_DELAY;
+        for(int attempt = 1; ; attempt++) {
+            try {
+                load();
+                return;
+            } catch(Exception e) {
+                log.warn("Couldn't load the leaderboards (attempt {}), retrying in {}ms", attempt, delay, e);
+                if(attempt == 1)
+                    SentryHelper.captureException("Couldn't load the leaderboards", e, Leaderboards.class);
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch(InterruptedException e) {
+                return;
+            }
+
+            delay = Math.min(delay * 2, MAX_RETRY_DELAY);
+        }
+    }
+
+    /**
+     * Loads every global player into the leaderboards, streaming them from the database.
+     * Blocks until everything is loaded. A failed load can be retried, players already loaded just get replaced.
+     */
+    @SuppressWarnings("unchecked")
+    public static void load() {
+        synchronized(Leaderboards.class) {
+            loading = true;
+        }
+
+        long start = System.currentTimeMillis();
+        int count = 0;
+        boolean success = false;
+        try(Connection conn = Utils.newDbConnection()) {
+            Cursor<Map> cursor = r.table(Player.DB_TABLE)
+                    .getAll("g").optArg("index", "scope")
+                    .pluck("id", "money", "level", "reputation", r.hashMap("data", r.array("experience", "dailyStrike")))
+                    .run(conn, OptArgs.of("read_mode", "outdated"));
+
+            while(cursor.hasNext()) {
+                Map player = cursor.next();
+                String id = String.valueOf(player.get("id"));
+                Map data = player.get("data") instanceof Map ? (Map) player.get("data") : null;
+                long userId;
+                try {
+                    userId = Long.parseLong(id.substring(0, id.indexOf(':')));
+                } catch(Exception e) {
+                    continue;
+                }
+
+                long[] score = {
+                        number(player.get("money")),
+                        number(player.get("level")),
+                        data == null ? 0 : number(data.get("experience")),
+                        number(player.get("reputation")),
+                        data == null ? 0 : number(data.get("dailyStrike"))
+                };
+
+                synchronized(Leaderboards.class) {
+                    if(!savedWhileLoading.contains(userId))
+                        put(userId, score);
+                }
+
+                count++;
+            }
+
+            cursor.close();
+            success = true;
+        } finally {
+            //If it failed, keep tracking saves until a retry succeeds, as that one will read old data for them too.
+            if(success) {
+                synchronized(Leaderboards.class) {
+                    loading = false;
+                    savedWhileLoading.clear();
+                }
+            }
+        }
+
+        loaded = true;
+        log.info("Loaded {} players into the leaderboards in {}ms", count, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Updates the leaderboard entries of a player. Called every time a player is saved.
+     *
+     * @param player The player that was saved. Only global players are ranked.
+     */
+    public static void update(Player player) {
+        if(!player.isGlobal())
+            return;
+
+        long userId;
+        try {
+            userId = Long.parseLong(player.getUserId());
+        } catch(NumberFormatException e) {
+            return;
+        }
+
+        long[] score = {
+                player.getMoney(),
+                player.getLevel(),
+                player.getData().getExperience(),
+                player.getReputation(),
+                player.getData().getDailyStreak()
+        };
+
+        synchronized(Leaderboards.class) {
+            if(loading)
+                savedWhileLoading.add(userId);
+
+            //Nothing that's ranked changed (most saves), so there's nothing to do nor to tell anyone.
+            if(Arrays.equals(scores.get(userId), score))
+                return;
+
+            put(userId, score);
+        }
+
+        publish(userId + ":" + join(score));
+    }
+
+    /**
+     * Removes a player from every leaderboard. Called when a player is deleted.
+     *
+     * @param player The player that was deleted.
+     */
+    public static void remove(Player player) {
+        if(!player.isGlobal())
+            return;
+
+        try {
+            long userId = Long.parseLong(player.getUserId());
+            synchronized(Leaderboards.class) {
+                if(loading)
+                    savedWhileLoading.add(userId);
+                removeScore(userId);
+            }
+
+            publish(userId + ":-");
+        } catch(NumberFormatException ignored) { }
+    }
+
+    /**
+     * @return The best players of the given leaderboard, highest first.
+     */
+    public static synchronized List<Entry> top(Type type, int amount) {
+        List<Entry> result = new ArrayList<>();
+        for(long[] entry : boards.get(type).top(amount)) {
+            result.add(new Entry(String.valueOf(entry[2]), entry[0], entry[1]));
+        }
+        return result;
+    }
+
+    /**
+     * @return The one-based position of the user on the given leaderboard.
+     */
+    public static synchronized long rank(Type type, String userId) {
+        RankedIndex board = boards.get(type);
+        long[] score = scores.get(Long.parseLong(userId));
+        if(score == null || !type.isRanked(score))
+            return board.size() + 1;
+
+        return board.countBefore(type.primary(score), type.secondary(score), Long.parseLong(userId)) + 1;
+    }
+
+    /**
+     * @return How many players are known to the leaderboards.
+     */
+    public static synchronized int count() {
+        return scores.size();
+    }
+
+    //Must hold the lock.
+    private static void put(long userId, long[] score) {
+        long[] old = scores.put(userId, score);
+        for(Type type : Type.values()) {
+            //Most saves only change one or two of the scores, leave the rest of the boards alone.
+            if(old != null && type.primary(old) == type.primary(score) && type.secondary(old) == type.secondary(score))
+                continue;
+
+            RankedIndex board = boards.get(type);
+            if(old != null && type.isRanked(old))
+                board.remove(type.primary(old), type.secondary(old), userId);
+            if(type.isRanked(score))
+                board.insert(type.primary(score), type.secondary(score), userId);
+        }
+    }
+
+    //Must hold the lock.
+    private static void removeScore(long userId) {
+        long[] old = scores.remove(userId);
+        if(old != null) {
+            for(Type type : Type.values()) {
+                if(type.isRanked(old))
+                    boards.get(type).remove(type.primary(old), type.secondary(old), userId);
+            }
+        }
+    }
+
+    //node:userId:money,level,experience,reputation,streak, or node:userId:- when the player got deleted.
+    private static void publish(String update) {
+        RTopic<String> t = topic;
+        if(t != null)
+            t.publishAsync(node + ":" + update);
+    }
+
+    private static void receive(String message) {
+        String[] parts = message.split(":", 3);
+        if(parts.length != 3)
+            throw new IllegalArgumentException("Expected 3 parts, got " + parts.length);
+
+        if(node.equals(parts[0]))
+            return;
+
+        long userId = Long.parseLong(parts[1]);
+        long[] score = parts[2].equals("-") ? null : Arrays.stream(parts[2].split(",")).mapToLong(Long::parseLong).toArray();
+        if(score != null && score.length != Type.values().length + 1)
+            throw new IllegalArgumentException("Expected " + (Type.values().length + 1) + " scores, got " + score.length);
+
+        synchronized(Leaderboards.class) {
+            if(loading)
+                savedWhileLoading.add(userId);
+
+            if(score == null) {
+                removeScore(userId);
+            } else if(!Arrays.equals(scores.get(userId), score)) {
+                put(userId, score);
+            }
+        }
+    }
+
+    private static String join(long[] score) {
+        StringBuilder sb = new StringBuilder();
+        for(long l : score) {
+            if(sb.length() > 0)
+                sb.append(',');
+            sb.append(l);
+        }
+        return sb.toString();
+    }
+
+    private static void reloadSafely() {
+        try {
+            load();
+        } catch(Exception e) {
+            log.error("Error reloading the leaderboards, keeping what's loaded until the next reload", e);
+        }
+    }
+
+    private static long number(Object o) {
+        return o instanceof Number ? ((Number) o).longValue() : 0;
+    }
+
+    public enum Type {
+        MONEY(s -> s[0], s -> 0),
+        //Ties on level are broken by experience.
+        LEVEL(s -> s[1], s -> s[2]),
+        REPUTATION(s -> s[3], s -> 0),
+        STREAK(s -> s[4], s -> 0);
+
+        private final ToLongFunction<long[]> primary;
+        private final ToLongFunction<long[]> secondary;
+
+        Type(ToLongFunction<long[]> primary, ToLongFunction<long[]> secondary) {
+            this.primary = primary;
+            this.secondary = secondary;
+        }
+
+        long primary(long[] score) {
+            return primary.applyAsLong(score);
+        }
+
+        long secondary(long[] score) {
+            return secondary.applyAsLong(score);
+        }
+
+        boolean isRanked(long[] score) {
+            return primary(score) > 0 || secondary(score) > 0;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private final String userId;
+        private final long value;
+        //Only used by the level leaderboard, where it's the experience.
+        private final long secondary;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db.leaderboard;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Order-statistic treap: keeps entries sorted by score (highest first) and every node knows the size of its subtree,
+ * so inserting, removing and finding the position of an entry are all O(log n).
+ * Entries are ordered by primary score, then secondary score (both descending), then id (ascending) to break ties.
+ * Not thread-safe, {@link Leaderboards} guards every access.
+ */
+class RankedIndex {
+    private Node root;
+
+    private static int compare(long primary, long secondary, long id, Node node) {
+        int c = Long.compare(node.primary, primary);
+        if(c != 0) return c;
+        c = Long.compare(node.secondary, secondary);
+        if(c != 0) return c;
+        return Long.compare(id, node.id);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private static Node insert(Node node, Node inserted) {
+        if(node == null)
+            return inserted;
+
+        if(compare(inserted.primary, inserted.secondary, inserted.id, node) < 0) {
+            node.left = insert(node.left, inserted);
+            if(node.left.priority > node.priority)
+                return rotateRight(node);
+        } else {
+            node.right = insert(node.right, inserted);
+            if(node.right.priority > node.priority)
+                return rotateLeft(node);
+        }
+
+        update(node);
+        return node;
+    }
+
+    private static Node remove(Node node, long primary, long secondary, long id) {
+        if(node == null)
+            return null;
+
+        int c = compare(primary, secondary, id, node);
+        if(c == 0)
+            return merge(node.left, node.right);
+
+        if(c < 0) {
+            node.left = remove(node.left, primary, secondary, id);
+        } else {
+            node.right = remove(node.right, primary, secondary, id);
+        }
+
+        update(node);
+        return node;
+    }
+
+    //Every entry on left goes before every entry on right.
+    private static Node merge(Node left, Node right) {
+        if(left == null) return right;
+        if(right == null) return left;
+
+        if(left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    void insert(long primary, long secondary, long id) {
+        root = insert(root, new Node(primary, secondary, id));
+    }
+
+    void remove(long primary, long secondary, long id) {
+        root = remove(root, primary, secondary, id);
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    /**
+     * @return How many entries go before the given one (its zero-based position if it's on the index).
+     */
+    int countBefore(long primary, long secondary, long id) {
+        int before = 0;
+        Node node = root;
+        while(node != null) {
+            int c = compare(primary, secondary, id, node);
+            if(c < 0) {
+                node = node.left;
+            } else if(c > 0) {
+                before += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return before + size(node.left);
+            }
+        }
+
+        return before;
+    }
+
+    /**
+     * @return The first entries of the index, as {primary, secondary, id} arrays.
+     */
+    List<long[]> top(int amount) {
+        List<long[]> result = new ArrayList<>(Math.min(amount, size()));
+        Deque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        while((node != null || !stack.isEmpty()) && result.size() < amount) {
+            while(node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+
+            node = stack.pop();
+            result.add(new long[]{node.primary, node.secondary, node.id});
+            node = node.right;
+        }
+
+        return result;
+    }
+
+    private static class Node {
+        final long primary;
+        final long secondary;
+        final long id;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(long primary, long secondary, long id) {
+            this.primary = primary;
+            this.secondary = secondary;
+            this.id = id;
+        }
+    }
+}
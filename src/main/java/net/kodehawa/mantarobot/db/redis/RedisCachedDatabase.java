@@ -24,14 +24,15 @@ import net.kodehawa.mantarobot.db.ManagedObject;
 import net.kodehawa.mantarobot.db.entities.*;
 import net.kodehawa.mantarobot.utils.Utils;
 import org.redisson.api.RBucket;
+import org.redisson.api.RFuture;
 import org.redisson.api.RMap;
+import org.redisson.api.RTopic;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.function.Function;
 
 @Slf4j
 public class RedisCachedDatabase extends ManagedDatabase {
@@ -50,6 +51,10 @@ public class RedisCachedDatabase extends ManagedDatabase {
     private final Map<Class<? extends ManagedObject>, RMap<String, ManagedObject>> map;
     private final RMap<String, Player> playerMap;
     private final RMap<String, DBUser> userMap;
+    //Every node keeps its own guild cache in front of redis, so changes to a guild tell the other nodes to drop it.
+    private final RTopic<String> guildTopic;
+    //Tells our own messages apart from the ones published by other nodes.
+    private final String node = UUID.randomUUID().toString();
 
     public RedisCachedDatabase(@Nonnull Connection conn,
                                @Nonnull RMap<String, CustomCommand> ccMap,
@@ -57,7 +62,8 @@ public class RedisCachedDatabase extends ManagedDatabase {
                                @Nonnull RMap<String, Player> playerMap,
                                @Nonnull RMap<String, DBUser> userMap,
                                @Nonnull RMap<String, PremiumKey> keyMap,
-                               @Nonnull RBucket<MantaroObj> mantaroBucket) {
+                               @Nonnull RBucket<MantaroObj> mantaroBucket,
+                               @Nonnull RTopic<String> guildTopic) {
         super(conn);
         this.ccMap = ccMap;
         this.guildMap = guildMap;
@@ -72,6 +78,18 @@ public class RedisCachedDatabase extends ManagedDatabase {
                 DBUser.class, userMap,
                 PremiumKey.class, keyMap
         ));
+        this.guildTopic = guildTopic;
+        guildTopic.addListener((channel, message) -> {
+            //node:guildId
+            int separator = message.indexOf(':');
+            if(separator == -1) {
+                log.warn("Invalid guild cache message: {}", message);
+                return;
+            }
+
+            if(!node.equals(message.substring(0, separator)))
+                invalidateCachedGuild(message.substring(separator + 1));
+        });
     }
 
     private static void log(String message, Object... fmtArgs) {
@@ -128,9 +146,26 @@ public class RedisCachedDatabase extends ManagedDatabase {
     @Override
     @Nonnull
     @CheckReturnValue
-    public DBGuild getGuild(@Nonnull String guildId) {
+    public List<CustomCommand> getCustomCommandsMatching(@Nonnull String pattern) {
+        List<CustomCommand> list = super.getCustomCommandsMatching(pattern);
+        log("Caching all custom commands matching {}", pattern);
+        list.forEach(command -> ccMap.fastPutAsync(command.getId(), command));
+        return list;
+    }
+
+    @Override
+    @Nonnull
+    @CheckReturnValue
+    protected DBGuild fetchGuild(@Nonnull String guildId) {
         log("Getting guild {} from cache", guildId);
-        return guildMap.computeIfAbsent("guild:" + guildId, ignored -> super.getGuild(guildId));
+        return guildMap.computeIfAbsent("guild:" + guildId, ignored -> super.fetchGuild(guildId));
+    }
+
+    @Override
+    @Nonnull
+    @CheckReturnValue
+    protected Map<String, DBGuild> fetchGuilds(@Nonnull Collection<String> guildIds) {
+        return getAll(guildMap, "guild", guildIds, super::fetchGuilds);
     }
 
     @Override
@@ -165,6 +200,13 @@ public class RedisCachedDatabase extends ManagedDatabase {
         return playerMap.computeIfAbsent("player:" + userId, ignored -> super.getPlayer(userId));
     }
 
+    @Override
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, Player> getPlayers(@Nonnull Collection<String> userIds) {
+        return getAll(playerMap, "player", userIds, super::getPlayers);
+    }
+
     @Override
     @Nonnull
     @CheckReturnValue
@@ -205,34 +247,81 @@ public class RedisCachedDatabase extends ManagedDatabase {
     }
 
     @Override
-    public void save(@Nonnull ManagedObject object) {
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, DBUser> getUsers(@Nonnull Collection<String> userIds) {
+        return getAll(userMap, "user", userIds, super::getUsers);
+    }
+
+    //Gets everything that's cached with a single redis request, and loads the rest from rethink with another one.
+    private <T extends ManagedObject> Map<String, T> getAll(RMap<String, T> map, String prefix, Collection<String> ids, Function<Collection<String>, Map<String, T>> loader) {
+        Set<String> keys = new HashSet<>();
+        for(String id : ids) {
+            keys.add(prefix + ":" + id);
+        }
+
+        log("Getting {} {} objects from cache", keys.size(), prefix);
+        Map<String, T> cached = map.getAll(keys);
+        Map<String, T> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for(String id : ids) {
+            T object = cached.get(prefix + ":" + id);
+            if(object != null) {
+                result.put(id, object);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        if(!missing.isEmpty()) {
+            Map<String, T> loaded = loader.apply(missing);
+            Map<String, T> toCache = new HashMap<>();
+            loaded.forEach((id, object) -> toCache.put(prefix + ":" + id, object));
+            log("Caching {} {} objects", toCache.size(), prefix);
+            map.putAllAsync(toCache);
+            result.putAll(loaded);
+        }
+
+        return result;
+    }
+
+    @Override
+    protected void cache(@Nonnull ManagedObject object) {
         if(object instanceof MantaroObj) {
             mantaroBucket.setAsync((MantaroObj) object);
-        } else {
+        } else if(map.containsKey(object.getClass())) {
             Class<? extends ManagedObject> c = object.getClass();
             RMap<String, ManagedObject> m = map.get(c);
-            if(m == null) throw new IllegalStateException("No map configured for " + c);
             String prefix = PREFIXES.get(c);
             if(prefix == null) throw new IllegalStateException("No prefix configured for " + c);
             log("Caching {} {}:{}", c.getSimpleName(), prefix, object.getDatabaseId());
-            m.fastPutAsync(prefix + ":" + object.getDatabaseId(), object);
+            RFuture<Boolean> put = m.fastPutAsync(prefix + ":" + object.getDatabaseId(), object);
+            if(object instanceof DBGuild)
+                put.thenRun(() -> publishGuildChange(object.getId()));
         }
-        super.save(object);
+        //Anything else (mutes, temporary bans, reminders) is only read on startup, so it doesn't get a redis map.
+        super.cache(object);
     }
 
     @Override
-    public void delete(@Nonnull ManagedObject object) {
+    protected void uncache(@Nonnull ManagedObject object) {
         if(object instanceof MantaroObj) {
             mantaroBucket.deleteAsync();
-        } else {
+        } else if(map.containsKey(object.getClass())) {
             Class<? extends ManagedObject> c = object.getClass();
             RMap<String, ManagedObject> m = map.get(c);
-            if(m == null) throw new IllegalStateException("No map configured for " + c);
             String prefix = PREFIXES.get(c);
             if(prefix == null) throw new IllegalStateException("No prefix configured for " + c);
             log("Removing {} {}:{} from cache", c.getSimpleName(), prefix, object.getDatabaseId());
-            m.fastRemoveAsync(prefix + ":" + object.getDatabaseId());
+            RFuture<Long> remove = m.fastRemoveAsync(prefix + ":" + object.getDatabaseId());
+            if(object instanceof DBGuild)
+                remove.thenRun(() -> publishGuildChange(object.getId()));
         }
-        super.delete(object);
+        super.uncache(object);
+    }
+
+    //Only published once redis has the change, or other nodes could load the old guild again right away.
+    private void publishGuildChange(String guildId) {
+        guildTopic.publishAsync(node + ":" + guildId);
     }
 }
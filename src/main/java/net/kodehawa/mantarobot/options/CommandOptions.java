@@ -58,7 +58,7 @@ public class CommandOptions extends OptionHandler {
                 return;
             }
             String commandName = args[0];
-            if(DefaultCommandProcessor.REGISTRY.commands().get(commandName) == null) {
+            if(DefaultCommandProcessor.REGISTRY.getCommand(event.getGuild(), commandName) == null) {
                 event.getChannel().sendMessage(EmoteReference.ERROR + "No command called " + commandName).queue();
                 return;
             }
@@ -84,7 +84,7 @@ public class CommandOptions extends OptionHandler {
                 return;
             }
             String commandName = args[0];
-            if(DefaultCommandProcessor.REGISTRY.commands().get(commandName) == null) {
+            if(DefaultCommandProcessor.REGISTRY.getCommand(event.getGuild(), commandName) == null) {
                 event.getChannel().sendMessage(EmoteReference.ERROR + "No command called " + commandName).queue();
                 return;
             }
@@ -113,7 +113,7 @@ public class CommandOptions extends OptionHandler {
             String channelName = args[0];
             String commandName = args[1];
 
-            if(DefaultCommandProcessor.REGISTRY.commands().get(commandName) == null) {
+            if(DefaultCommandProcessor.REGISTRY.getCommand(event.getGuild(), commandName) == null) {
                 event.getChannel().sendMessage(EmoteReference.ERROR + "No command called " + commandName).queue();
                 return;
             }
@@ -155,7 +155,7 @@ public class CommandOptions extends OptionHandler {
             String channelName = args[0];
             String commandName = args[1];
 
-            if(DefaultCommandProcessor.REGISTRY.commands().get(commandName) == null) {
+            if(DefaultCommandProcessor.REGISTRY.getCommand(event.getGuild(), commandName) == null) {
                 event.getChannel().sendMessage(EmoteReference.ERROR + "No command called " + commandName).queue();
                 return;
             }
@@ -421,7 +421,7 @@ public class CommandOptions extends OptionHandler {
                 DBGuild dbGuild = MantaroData.db().getGuild(event.getGuild());
                 GuildData guildData = dbGuild.getData();
 
-                if(!DefaultCommandProcessor.REGISTRY.commands().containsKey(commandDisallow)) {
+                if(DefaultCommandProcessor.REGISTRY.getCommand(event.getGuild(), commandDisallow) == null) {
                     event.getChannel().sendMessage(EmoteReference.ERROR + "That command doesn't exist!").queue();
                     return;
                 }
@@ -470,7 +470,7 @@ public class CommandOptions extends OptionHandler {
                 DBGuild dbGuild = MantaroData.db().getGuild(event.getGuild());
                 GuildData guildData = dbGuild.getData();
 
-                if(!DefaultCommandProcessor.REGISTRY.commands().containsKey(commandAllow)) {
+                if(DefaultCommandProcessor.REGISTRY.getCommand(event.getGuild(), commandAllow) == null) {
                     event.getChannel().sendMessage(EmoteReference.ERROR + "That command doesn't exist!").queue();
                     return;
                 }
@@ -18,6 +18,7 @@ package net.kodehawa.mantarobot.services;
 
 import lombok.extern.slf4j.Slf4j;
 import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
 import okhttp3.*;
 
 import static net.kodehawa.mantarobot.data.MantaroData.config;
@@ -25,7 +26,7 @@ import static net.kodehawa.mantarobot.data.MantaroData.config;
 @Slf4j
 public class Carbonitex {
     private final String carbonToken = config().get().carbonToken;
-    private final OkHttpClient httpClient = new OkHttpClient();
+    private final OkHttpClient httpClient = AsyncHttp.getClient();
 
     public void handle() {
         if(carbonToken != null) {
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils;
+
+import com.timgroup.statsd.StatsDClient;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.MantaroBot;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hashed timing wheel used for everything that has to happen at a given point in time (mute expirations, temporary bans,
+ * reminders...).
+ * Timers are keyed, so scheduling something with a key that's already scheduled replaces the old timer, and they can be cancelled
+ * by key. Both scheduling and cancelling are O(1): they only queue the operation, and the wheel thread applies it on the next tick.
+ * Timers that are due get handed to a separate executor, so a slow task can't delay the ones that come after it.
+ * <p>
+ * The wheel doesn't persist anything by itself: whatever owns a timer keeps it saved and schedules it again on startup.
+ */
+@Slf4j
+public class TimerWheel {
+    //How many ticks between each time the pending timers get reported.
+    private static final int REPORT_INTERVAL_TICKS = 100;
+
+    private final String name;
+    private final long tickMs;
+    private final int mask;
+    private final Bucket[] wheel;
+    private final Queue<Timeout> additions = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancellations = new ConcurrentLinkedQueue<>();
+    private final Map<String, Timeout> timeouts = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final AtomicLong fired = new AtomicLong();
+    private final long startTime;
+    private long tick;
+
+    /**
+     * @param name      Name of the wheel, used for its threads.
+     * @param tickMs    Length of a tick, which is how precise timers are.
+     * @param wheelSize Amount of buckets on the wheel, rounded up to a power of two. Timers further away than a full turn wait for more rounds.
+     */
+    public TimerWheel(String name, long tickMs, int wheelSize) {
+        if(tickMs <= 0)
+            throw new IllegalArgumentException("Tick length must be positive");
+        if(wheelSize <= 0)
+            throw new IllegalArgumentException("Wheel size must be positive");
+
+        int size = Integer.highestOneBit(wheelSize);
+        if(size < wheelSize) size <<= 1;
+
+        this.name = name;
+        this.tickMs = tickMs;
+        this.mask = size - 1;
+        this.wheel = new Bucket[size];
+        for(int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, name + "-Executor-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.startTime = System.currentTimeMillis();
+
+        Thread worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedules a task to run at the given time, replacing whatever was scheduled with the same key.
+     * Tasks that are already due run on the next tick.
+     *
+     * @param key      Key of the timer, used to cancel or replace it later.
+     * @param deadline When to run the task, in epoch milliseconds.
+     * @param task     The task to run.
+     * @return The scheduled timer.
+     */
+    public Timeout schedule(@Nonnull String key, long deadline, @Nonnull Runnable task) {
+        Timeout timeout = new Timeout(key, deadline, task);
+        Timeout previous = timeouts.put(key, timeout);
+        if(previous != null)
+            previous.cancel();
+
+        additions.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Cancels the timer with the given key, if there's one.
+     *
+     * @param key Key of the timer.
+     * @return Whether there was a pending timer with this key.
+     */
+    public boolean cancel(@Nonnull String key) {
+        Timeout timeout = timeouts.get(key);
+        return timeout != null && timeout.cancel();
+    }
+
+    public Timeout get(@Nonnull String key) {
+        return timeouts.get(key);
+    }
+
+    public boolean isScheduled(@Nonnull String key) {
+        return timeouts.containsKey(key);
+    }
+
+    public int getPendingCount() {
+        return timeouts.size();
+    }
+
+    public long getFiredCount() {
+        return fired.get();
+    }
+
+    private void run() {
+        //noinspection InfiniteLoopStatement
+        while(true) {
+            try {
+                long nextTick = startTime + (tick + 1) * tickMs;
+                long sleep = nextTick - System.currentTimeMillis();
+                if(sleep > 0) {
+                    Thread.sleep(sleep);
+                }
+
+                processCancellations();
+                transferAdditions();
+                wheel[(int) (tick & mask)].expire(System.currentTimeMillis());
+                tick++;
+
+                if(tick % REPORT_INTERVAL_TICKS == 0) {
+                    report();
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch(Exception e) {
+                log.error("Unexpected error on timer wheel {}", name, e);
+            }
+        }
+    }
+
+    private void transferAdditions() {
+        Timeout timeout;
+        while((timeout = additions.poll()) != null) {
+            if(timeout.state.get() != Timeout.PENDING)
+                continue;
+
+            long ticks = Math.max(0, timeout.deadline - startTime) / tickMs;
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            //Anything already due goes on the current bucket, so it runs right away.
+            wheel[(int) (Math.max(ticks, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void processCancellations() {
+        Timeout timeout;
+        while((timeout = cancellations.poll()) != null) {
+            if(timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void report() {
+        StatsDClient statsClient = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getStatsClient();
+        if(statsClient == null)
+            return;
+
+        //Timer keys are type:id, so they get reported per type (mute, tempban, reminder...).
+        Map<String, Integer> types = new HashMap<>();
+        for(String key : timeouts.keySet()) {
+            int index = key.indexOf(':');
+            types.merge(index == -1 ? key : key.substring(0, index), 1, Integer::sum);
+        }
+
+        statsClient.gauge("timers_pending", timeouts.size());
+        types.forEach((type, count) -> statsClient.gauge("timers_pending", count, "type:" + type));
+        statsClient.gauge("timers_fired", fired.get());
+    }
+
+    public class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        @Getter
+        private final String key;
+        @Getter
+        private final long deadline;
+        private final Runnable task;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        //Only touched by the wheel thread.
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(String key, long deadline, Runnable task) {
+            this.key = key;
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * @return Whether the timer was cancelled by this call (false if it already ran or was cancelled).
+         */
+        public boolean cancel() {
+            if(!state.compareAndSet(PENDING, CANCELLED))
+                return false;
+
+            timeouts.remove(key, this);
+            cancellations.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if(!state.compareAndSet(PENDING, EXPIRED))
+                return;
+
+            timeouts.remove(key, this);
+            fired.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch(Exception e) {
+                    log.error("Error running timer {} on {}", key, name, e);
+                    SentryHelper.captureException("Error running timer " + key, e, TimerWheel.class);
+                }
+            });
+        }
+    }
+
+    //Doubly linked list, so removing a cancelled timer doesn't need to walk the bucket.
+    private class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if(head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if(timeout.prev != null) timeout.prev.next = timeout.next;
+            else head = timeout.next;
+
+            if(timeout.next != null) timeout.next.prev = timeout.prev;
+            else tail = timeout.prev;
+
+            timeout.next = timeout.prev = null;
+            timeout.bucket = null;
+        }
+
+        void expire(long now) {
+            Timeout timeout = head;
+            while(timeout != null) {
+                Timeout next = timeout.next;
+                if(timeout.state.get() != Timeout.PENDING) {
+                    remove(timeout);
+                } else if(timeout.remainingRounds <= 0 || timeout.deadline <= now) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -16,7 +16,6 @@
 
 package net.kodehawa.mantarobot.utils;
 
-import com.google.common.io.CharStreams;
 import com.jagrosh.jdautilities.utils.FinderUtil;
 import com.rethinkdb.net.Connection;
 import lombok.SneakyThrows;
@@ -31,19 +30,14 @@ import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.NewRateLimiter;
 import net.kodehawa.mantarobot.utils.commands.RateLimiter;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
 import okhttp3.*;
 import org.json.JSONObject;
-import us.monoid.web.Resty;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.reflect.Field;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -56,7 +50,7 @@ import static net.kodehawa.mantarobot.commands.OptsCmd.optsCmd;
 
 @Slf4j
 public class Utils {
-    public static final OkHttpClient httpClient = new OkHttpClient();
+    public static final OkHttpClient httpClient = AsyncHttp.getClient();
     private static final Pattern pattern = Pattern.compile("\\d+?[a-zA-Z]");
     private static final Config config = MantaroData.config().get();
 
@@ -222,52 +216,40 @@ public class Utils {
     }
 
     /**
-     * Fetches an Object from any given URL. Uses vanilla Java methods.
+     * Fetches an Object from any given URL.
      * Can retrieve text, JSON Objects, XML and probably more.
+     * This blocks the calling thread until the request is done (the request itself runs on {@link AsyncHttp}), prefer using
+     * {@link AsyncHttp} directly on anything new.
      *
      * @param url   The URL to get the object from.
      * @param event guild event
      * @return The object as a parsed UTF-8 string.
      */
     public static String wget(String url, GuildMessageReceivedEvent event) {
-        String webObject = null;
         try {
-            URL ur1 = new URL(url);
-            HttpURLConnection conn = (HttpURLConnection) ur1.openConnection();
-            conn.setRequestProperty("User-Agent", MantaroInfo.USER_AGENT);
-            InputStream ism = conn.getInputStream();
-            webObject = CharStreams.toString(new InputStreamReader(ism, StandardCharsets.UTF_8));
-        } catch(Exception e) {
-            if(e instanceof java.io.FileNotFoundException) return null;
-
-            log.warn(getFetchDataFailureResponse(url, null), e);
+            return AsyncHttp.getString(url).join();
+        } catch(CompletionException e) {
+            log.warn(getFetchDataFailureResponse(url, null), e.getCause());
             Optional.ofNullable(event).ifPresent((w) -> w.getChannel().sendMessage("\u274C I got an error while retrieving data from " + url).queue());
+            return null;
         }
-
-        return webObject;
     }
 
     /**
-     * Same than above, but using resty. Way easier tbh.
+     * Same than above. Used to be backed by resty, now both go through the shared {@link AsyncHttp} client.
      *
      * @param url   The URL to get the object from.
      * @param event JDA message event.
      * @return The object as a parsed string.
      */
     public static String wgetResty(String url, GuildMessageReceivedEvent event) {
-        String url2 = null;
-        Resty resty = new Resty();
-
         try {
-            resty.withHeader("User-Agent", MantaroInfo.USER_AGENT);
-            InputStream is = resty.text(url).stream();
-            url2 = CharStreams.toString(new InputStreamReader(is, StandardCharsets.UTF_8));
-        } catch(IOException e) {
-            log.warn(getFetchDataFailureResponse(url, "Resty"), e);
+            return AsyncHttp.getString(url).join();
+        } catch(CompletionException e) {
+            log.warn(getFetchDataFailureResponse(url, "Resty"), e.getCause());
             Optional.ofNullable(event).ifPresent((evt) -> evt.getChannel().sendMessage("\u274C Error retrieving data from URL [Resty]").queue());
+            return null;
         }
-
-        return url2;
     }
 
     public static String urlEncodeUTF8(Map<?, ?> map) {
@@ -19,12 +19,14 @@ package net.kodehawa.mantarobot.utils.cache;
 import com.google.common.base.Preconditions;
 import lombok.extern.slf4j.Slf4j;
 import net.kodehawa.mantarobot.utils.SentryHelper;
+import net.kodehawa.mantarobot.utils.http.AsyncHttp;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -33,7 +35,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public class URLCache {
     public static final File DEFAULT_CACHE_DIR = new File("urlcache_files");
     private static final Map<String, File> saved = new ConcurrentHashMap<>();
-    private static final OkHttpClient okHttp = new OkHttpClient();
+    private static final OkHttpClient okHttp = AsyncHttp.getClient();
     private final FileCache cache;
     private File cacheDir;
 
@@ -58,29 +60,53 @@ public class URLCache {
     public File getFile(String url) {
         File cachedFile = saved.get(Preconditions.checkNotNull(url, "url"));
         if(cachedFile != null) return cachedFile;
-        File file = null;
         try {
-            file = new File(cacheDir, url.replace('/', '_').replace(':', '_'));
-            Request r = new Request.Builder()
-                    .url(url)
-                    .build();
+            return download(url, false);
+        } catch(Exception e) {
+            e.printStackTrace();
+            SentryHelper.captureExceptionContext("Error caching", e, this.getClass(), "Cacher");
+            throw new InternalError();
+        }
+    }
+
+    /**
+     * Same as {@link #getFile(String)}, but failures are left to the caller instead of being reported.
+     * Meant for background downloads, where a failure isn't worth a stack trace (let alone a sentry report).
+     *
+     * @param url The url to download.
+     * @return The cached file.
+     * @throws IOException If the download failed.
+     */
+    public File prefetch(String url) throws IOException {
+        File cachedFile = saved.get(Preconditions.checkNotNull(url, "url"));
+        if(cachedFile != null) return cachedFile;
+        //Unlike command downloads, prefetched images aren't looked at by anyone before they're cached, so error pages are refused.
+        return download(url, true);
+    }
+
+    private File download(String url, boolean requireSuccess) throws IOException {
+        File file = new File(cacheDir, url.replace('/', '_').replace(':', '_'));
+        Request r = new Request.Builder()
+                .url(url)
+                .build();
+
+        try(Response response = okHttp.newCall(r).execute()) {
+            if(requireSuccess && !response.isSuccessful())
+                throw new IOException("Unexpected response code " + response.code() + " downloading " + url);
 
-            Response response = okHttp.newCall(r).execute();
             try(InputStream is = response.body().byteStream();
                 FileOutputStream fos = new FileOutputStream(file)) {
                 byte[] buffer = new byte[1024];
                 int read;
                 while((read = is.read(buffer)) != -1)
                     fos.write(buffer, 0, read);
-                saved.put(url, file);
-                response.close();
-                return file;
             }
-        } catch(Exception e) {
-            e.printStackTrace();
-            if(file != null) file.delete();
-            SentryHelper.captureExceptionContext("Error caching", e, this.getClass(), "Cacher");
-            throw new InternalError();
+
+            saved.put(url, file);
+            return file;
+        } catch(IOException | RuntimeException e) {
+            file.delete();
+            throw e;
         }
     }
 
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils.http;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.MantaroInfo;
+import net.kodehawa.mantarobot.data.Config;
+import net.kodehawa.mantarobot.data.MantaroData;
+import okhttp3.*;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.concurrent.*;
+
+/**
+ * Shared, non-blocking HTTP client.
+ * Every request goes through the same {@link OkHttpClient}, so they all share one connection pool, the same timeouts and the
+ * same concurrency limits (in total and per host, see {@link Config#httpMaxRequests} and {@link Config#httpMaxRequestsPerHost}).
+ * Requests run on OkHttp's dispatcher instead of on the calling thread, and results are delivered as {@link CompletableFuture}s.
+ * <p>
+ * Connection errors, 429s and 5xx responses are retried with exponential backoff plus jitter.
+ */
+@Slf4j
+public class AsyncHttp {
+    private static final long RETRY_BASE_DELAY_MS = 250;
+    private static final Config config = MantaroData.config().get();
+    private static final OkHttpClient client;
+    private static final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("AsyncHttp-Retry").setDaemon(true).build()
+    );
+
+    static {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.httpMaxRequests);
+        dispatcher.setMaxRequestsPerHost(config.httpMaxRequestsPerHost);
+
+        client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectTimeout(config.httpTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(config.httpTimeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(config.httpTimeoutMs, TimeUnit.MILLISECONDS)
+                .addInterceptor(chain -> {
+                    Request request = chain.request();
+                    if(request.header("User-Agent") == null) {
+                        request = request.newBuilder().header("User-Agent", MantaroInfo.USER_AGENT).build();
+                    }
+                    return chain.proceed(request);
+                })
+                .build();
+    }
+
+    /**
+     * @return The shared client, for whatever still needs to make blocking calls. Those share the connection pool and timeouts with
+     * everything else, but not the concurrency limits: the dispatcher only applies them to enqueued calls, not to {@link Call#execute()}.
+     */
+    public static OkHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Runs a request, retrying it if it fails.
+     * The response has to be closed by whoever gets it.
+     *
+     * @param request The request to run.
+     * @return A future that completes with the response, or exceptionally if every attempt failed.
+     */
+    public static CompletableFuture<Response> execute(@Nonnull Request request) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        execute(request, 0, future);
+        return future;
+    }
+
+    /**
+     * Gets the body of the given URL as a string.
+     *
+     * @param url The URL to get.
+     * @return A future that completes with the body, with null if the server answered with a 404, or exceptionally on any other error.
+     */
+    public static CompletableFuture<String> getString(@Nonnull String url) {
+        return getString(new Request.Builder().url(url).build());
+    }
+
+    public static CompletableFuture<String> getString(@Nonnull Request request) {
+        return execute(request).thenApply(response -> {
+            try(ResponseBody body = response.body()) {
+                if(response.code() == 404)
+                    return null;
+                if(!response.isSuccessful())
+                    throw new CompletionException(new IOException("Unexpected response code " + response.code() + " from " + request.url()));
+
+                return body == null ? null : body.string();
+            } catch(IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    public static CompletableFuture<JSONObject> getJson(@Nonnull String url) {
+        return getString(url).thenApply(body -> body == null ? null : new JSONObject(body));
+    }
+
+    public static CompletableFuture<byte[]> getBytes(@Nonnull Request request) {
+        return execute(request).thenApply(response -> {
+            try(ResponseBody body = response.body()) {
+                if(!response.isSuccessful() || body == null)
+                    throw new CompletionException(new IOException("Unexpected response code " + response.code() + " from " + request.url()));
+
+                return body.bytes();
+            } catch(IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private static void execute(Request request, int attempt, CompletableFuture<Response> future) {
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if(attempt < config.httpRetries) {
+                    retry(request, attempt, future);
+                } else {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                int code = response.code();
+                if((code == 429 || code >= 500) && attempt < config.httpRetries) {
+                    response.close();
+                    retry(request, attempt, future);
+                } else {
+                    future.complete(response);
+                }
+            }
+        });
+    }
+
+    private static void retry(Request request, int attempt, CompletableFuture<Response> future) {
+        //Exponential backoff, plus up to one base delay of jitter so requests that failed together don't all retry together.
+        long delay = (RETRY_BASE_DELAY_MS << attempt) + ThreadLocalRandom.current().nextLong(RETRY_BASE_DELAY_MS);
+        log.debug("Retrying request to {} in {}ms (attempt {})", request.url(), delay, attempt + 1);
+        retryExecutor.schedule(() -> execute(request, attempt + 1, future), delay, TimeUnit.MILLISECONDS);
+    }
+}
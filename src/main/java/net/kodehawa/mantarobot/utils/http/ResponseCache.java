@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2016-2018 David Alejandro Rubio Escares / Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils.http;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.timgroup.statsd.StatsDClient;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.data.MantaroData;
+import org.redisson.api.RMapCache;
+import org.redisson.client.codec.StringCodec;
+
+import javax.annotation.Nonnull;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the responses of a third-party API, keyed by the normalized query (see {@link #normalize(String)}).
+ * Entries are fresh for {@code ttl}. After that they're still served for up to {@code staleTtl}, but the first lookup that gets a
+ * stale entry refreshes it in the background. Concurrent lookups of a query that isn't cached share the same request.
+ * <p>
+ * When redis is enabled, entries are also written there, so they're shared between nodes and survive restarts.
+ * Only successful, non-null responses are cached: failures and 404s always go upstream again.
+ */
+@Slf4j
+public class ResponseCache {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Getter
+    private final String name;
+    private final long ttlMs;
+    private final long staleMs;
+    private final Cache<String, Entry> cache;
+    private final Map<String, CompletableFuture<String>> loading = new ConcurrentHashMap<>();
+    private final RMapCache<String, String> redis;
+
+    /**
+     * @param name     Name of the endpoint, used for the redis key and to tag the metrics.
+     * @param ttl      How long a response is fresh.
+     * @param staleTtl How long a response is still served (while being refreshed) after it stops being fresh.
+     * @param unit     Unit of both TTLs.
+     * @param maxSize  Maximum amount of responses kept in memory.
+     */
+    public ResponseCache(String name, long ttl, long staleTtl, TimeUnit unit, int maxSize) {
+        this.name = name;
+        this.ttlMs = unit.toMillis(ttl);
+        this.staleMs = unit.toMillis(staleTtl);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMs + staleMs, TimeUnit.MILLISECONDS)
+                .build();
+        this.redis = MantaroData.config().get().redis.enabled ?
+                MantaroData.redisson().getMapCache("response-cache:" + name, StringCodec.INSTANCE) : null;
+    }
+
+    /**
+     * Lower-cases the query and collapses whitespace, so "New  York" and "new york" hit the same entry.
+     */
+    public static String normalize(@Nonnull String query) {
+        return WHITESPACE.matcher(query.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+
+    /**
+     * Looks up a query, loading it if it isn't cached.
+     *
+     * @param query  The query. It's normalized before being used as the key.
+     * @param loader Requests the response from upstream. Only called on a miss or to refresh a stale entry.
+     * @return A future that completes with the (possibly stale) response.
+     */
+    public CompletableFuture<String> get(@Nonnull String query, @Nonnull Supplier<CompletableFuture<String>> loader) {
+        String key = normalize(query);
+        Entry entry = cache.getIfPresent(key);
+        if(entry != null && entry.isServable()) {
+            if(entry.isFresh()) {
+                count("hit");
+            } else {
+                count("stale");
+                load(key, loader);
+            }
+
+            return CompletableFuture.completedFuture(entry.value);
+        }
+
+        if(redis == null) {
+            count("miss");
+            return load(key, loader);
+        }
+
+        return redis.getAsync(key)
+                .exceptionally(e -> {
+                    log.warn("Error reading {} from the {} response cache", key, name, e);
+                    return null;
+                })
+                .thenCompose(persisted -> {
+                    Entry stored = decode(persisted);
+                    if(stored == null || !stored.isServable()) {
+                        count("miss");
+                        return load(key, loader);
+                    }
+
+                    cache.put(key, stored);
+                    if(stored.isFresh()) {
+                        count("hit");
+                    } else {
+                        count("stale");
+                        load(key, loader);
+                    }
+
+                    return CompletableFuture.completedFuture(stored.value);
+                })
+                .toCompletableFuture();
+    }
+
+    public void invalidate(@Nonnull String query) {
+        String key = normalize(query);
+        cache.invalidate(key);
+        if(redis != null)
+            redis.fastRemoveAsync(key);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private CompletableFuture<String> load(String key, Supplier<CompletableFuture<String>> loader) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = loading.putIfAbsent(key, future);
+        if(existing != null)
+            return existing;
+
+        CompletableFuture<String> request;
+        try {
+            request = loader.get();
+        } catch(Exception e) {
+            request = new CompletableFuture<>();
+            request.completeExceptionally(e);
+        }
+
+        request.whenComplete((value, error) -> {
+            loading.remove(key, future);
+            if(error != null) {
+                future.completeExceptionally(error);
+                return;
+            }
+
+            if(value != null) {
+                Entry entry = new Entry(value, System.currentTimeMillis());
+                cache.put(key, entry);
+                if(redis != null)
+                    redis.fastPutAsync(key, entry.encode(), ttlMs + staleMs, TimeUnit.MILLISECONDS);
+            }
+
+            future.complete(value);
+        });
+
+        return future;
+    }
+
+    private Entry decode(String stored) {
+        if(stored == null)
+            return null;
+
+        int separator = stored.indexOf(':');
+        try {
+            return new Entry(stored.substring(separator + 1), Long.parseLong(stored.substring(0, separator)));
+        } catch(NumberFormatException | StringIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private void count(String result) {
+        StatsDClient statsClient = MantaroBot.getInstance() == null ? null : MantaroBot.getInstance().getStatsClient();
+        if(statsClient != null)
+            statsClient.increment("response_cache", "endpoint:" + name, "result:" + result);
+    }
+
+    private class Entry {
+        private final String value;
+        private final long fetchedAt;
+
+        Entry(String value, long fetchedAt) {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() - fetchedAt < ttlMs;
+        }
+
+        //Expiry (in memory and on redis) isn't exact, don't serve anything past its stale window (or past its TTL if it has none).
+        boolean isServable() {
+            return System.currentTimeMillis() - fetchedAt < ttlMs + staleMs;
+        }
+
+        //Stored on redis as "<fetchedAt>:<value>", so entries loaded from there keep their age.
+        String encode() {
+            return fetchedAt + ":" + value;
+        }
+    }
+}